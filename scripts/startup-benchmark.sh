@@ -0,0 +1,44 @@
+#!/usr/bin/env bash
+# Measures time from `docker run` to the first accepted POST /upload-file, and the RSS of the
+# server process at that moment, for the regular image and the fast-start (AOT + CDS) image.
+#
+#   ./scripts/startup-benchmark.sh [runs]            (native image included if transcriber:native exists)
+#
+# The upload is a small non-media file: any HTTP status means the server has accepted the request.
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=18080
+IMAGES=(transcriber:jar transcriber:fast-start)
+
+cd "$(dirname "$0")/.."
+
+./mvnw -B -q -DskipTests package
+docker build -q -t transcriber:jar -f Dockerfile . > /dev/null
+./mvnw -B -q -DskipTests -Pfast-start package
+docker build -q -t transcriber:fast-start -f Dockerfile.fast-start . > /dev/null
+if docker image inspect transcriber:native > /dev/null 2>&1; then
+    IMAGES+=(transcriber:native)
+fi
+
+payload=$(mktemp)
+echo "startup benchmark" > "$payload"
+trap 'rm -f "$payload"' EXIT
+
+printf "%-24s %5s %22s %12s\n" image run first_upload_ms rss_kb
+for image in "${IMAGES[@]}"; do
+    for run in $(seq 1 "$RUNS"); do
+        start=$(date +%s%N)
+        container=$(docker run -d -p "$PORT:8080" -e SPRING_PROFILES_ACTIVE=prod -e OPENAI_API_KEY=benchmark "$image")
+        code=000
+        while [ "$code" = "000" ]; do
+            code=$(curl -s -o /dev/null -w '%{http_code}' -X POST -H 'username: benchmark' \
+                -F "file=@$payload;filename=benchmark.txt" "http://localhost:$PORT/upload-file" || true)
+            [ "$code" = "000" ] && sleep 0.02
+        done
+        elapsed=$(( ($(date +%s%N) - start) / 1000000 ))
+        rss=$(docker exec "$container" sh -c "grep VmRSS /proc/1/status" | awk '{print $2}')
+        printf "%-24s %5s %22s %12s\n" "$image" "$run" "$elapsed" "$rss"
+        docker rm -f "$container" > /dev/null
+    done
+done
@@ -1,13 +1,28 @@
 package com.example.transcriber;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 @SpringBootApplication
 public class TranscriberApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(TranscriberApplication.class, args);
+        SpringApplication application = new SpringApplication(TranscriberApplication.class);
+        Map<String, Object> defaults = new HashMap<>();
+        // Log lines of a task carry its ID, see TaskContextConfig
+        defaults.put("logging.pattern.level", "%5p [%X{taskId:-}]");
+        if (Arrays.stream(args).anyMatch(arg -> arg.startsWith("--batchInputDir="))) {
+            // Batch mode, see BatchTranscriptionRunner: no web server, and tasks of web users are left to the server
+            application.setWebApplicationType(WebApplicationType.NONE);
+            defaults.put("resumeOnStartup", "false");
+        }
+        application.setDefaultProperties(defaults);
+        application.run(args);
     }
 }
 
@@ -0,0 +1,69 @@
+package com.example.transcriber.cli;
+
+import com.example.transcriber.dto.BatchReport;
+import com.example.transcriber.service.BatchTranscriptionService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Headless entry point of the same jar, started without the web server:
+ * java -jar transcriber.jar --batchInputDir=/archive [--batchOutputDir=/archive/transcripts]
+ * [--batchParallelism=4] [--batchWatch=true]
+ * Without batchWatch the tree is transcribed once and the process exits, with status 1 if any file failed.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "batchInputDir")
+public class BatchTranscriptionRunner implements ApplicationRunner {
+
+    private final BatchTranscriptionService batchTranscriptionService;
+    private final ConfigurableApplicationContext context;
+
+    @Value("${batchInputDir}")
+    private String batchInputDir;
+
+    // Defaults to a "transcripts" directory inside the input, which is never scanned itself
+    @Value("${batchOutputDir:}")
+    private String batchOutputDir;
+
+    @Value("${batchWatch:false}")
+    private boolean batchWatch;
+
+    @Autowired
+    public BatchTranscriptionRunner(BatchTranscriptionService batchTranscriptionService,
+                                    ConfigurableApplicationContext context) {
+        this.batchTranscriptionService = batchTranscriptionService;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Path input = Paths.get(batchInputDir).toAbsolutePath().normalize();
+        if (!Files.isDirectory(input)) {
+            throw new IllegalArgumentException("batchInputDir is not a directory: " + input);
+        }
+        Path output = batchOutputDir.isBlank() ? input.resolve("transcripts") : Paths.get(batchOutputDir).toAbsolutePath().normalize();
+        if (output.equals(input)) {
+            throw new IllegalArgumentException("batchOutputDir must differ from batchInputDir");
+        }
+
+        if (batchWatch) {
+            batchTranscriptionService.watchDirectory(input, output).blockLast();
+            return;
+        }
+        BatchReport report = batchTranscriptionService.transcribeDirectory(input, output).block();
+        int exitCode = report != null && report.getFailed() == 0 ? 0 : 1;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+}
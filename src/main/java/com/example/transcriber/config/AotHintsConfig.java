@@ -0,0 +1,70 @@
+package com.example.transcriber.config;
+
+import com.example.transcriber.dto.BatchFileStatus;
+import com.example.transcriber.dto.BatchLedgerEntry;
+import com.example.transcriber.dto.BatchReport;
+import com.example.transcriber.dto.BatchStatus;
+import com.example.transcriber.dto.CostModelStats;
+import com.example.transcriber.dto.DispatchStats;
+import com.example.transcriber.dto.EngineEndpointStats;
+import com.example.transcriber.dto.ExtractionPlan;
+import com.example.transcriber.dto.FingerprintIndexStats;
+import com.example.transcriber.dto.FingerprintMatch;
+import com.example.transcriber.dto.HedgingStats;
+import com.example.transcriber.dto.IndexedText;
+import com.example.transcriber.dto.JobEstimate;
+import com.example.transcriber.dto.JobMetrics;
+import com.example.transcriber.dto.MediaInfo;
+import com.example.transcriber.dto.RateSummary;
+import com.example.transcriber.dto.SearchHit;
+import com.example.transcriber.dto.SearchResult;
+import com.example.transcriber.dto.SegmentInfo;
+import com.example.transcriber.dto.SpeechRegion;
+import com.example.transcriber.dto.TaskData;
+import com.example.transcriber.dto.TaskEvent;
+import com.example.transcriber.dto.TaskManifest;
+import com.example.transcriber.dto.TaskTimeline;
+import com.example.transcriber.dto.TimelineSpan;
+import com.example.transcriber.dto.TraceEvent;
+import com.example.transcriber.dto.TranscribedRange;
+import com.example.transcriber.dto.TranscriptionResponse;
+import com.example.transcriber.dto.UserWaitStats;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+
+// Types read and written with ObjectMapper directly, or returned behind ResponseEntity<?> and Mono, which AOT
+// processing cannot discover on its own. Every dto is listed; AotHintsConfigTest fails when one is missing.
+@Configuration
+@RegisterReflectionForBinding({
+        BatchFileStatus.class,
+        BatchLedgerEntry.class,
+        BatchReport.class,
+        BatchStatus.class,
+        CostModelStats.class,
+        DispatchStats.class,
+        EngineEndpointStats.class,
+        ExtractionPlan.class,
+        FingerprintIndexStats.class,
+        FingerprintMatch.class,
+        HedgingStats.class,
+        IndexedText.class,
+        JobEstimate.class,
+        JobMetrics.class,
+        MediaInfo.class,
+        RateSummary.class,
+        SearchHit.class,
+        SearchResult.class,
+        SegmentInfo.class,
+        SpeechRegion.class,
+        TaskData.class,
+        TaskEvent.class,
+        TaskManifest.class,
+        TaskTimeline.class,
+        TimelineSpan.class,
+        TraceEvent.class,
+        TranscribedRange.class,
+        TranscriptionResponse.class,
+        UserWaitStats.class
+})
+public class AotHintsConfig {
+}
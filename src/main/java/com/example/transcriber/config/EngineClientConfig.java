@@ -0,0 +1,70 @@
+package com.example.transcriber.config;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * HTTP client used only for transcription engine requests, so uploads of large chunks neither share a
+ * connection pool with nor inherit the defaults of the general {@code webClient}. The pool is sized to the
+ * requests that can be in flight at once: the dispatch slots plus the hedged duplicates on top of them.
+ */
+@Configuration
+@Slf4j
+public class EngineClientConfig {
+
+    public static final String ENGINE_WEB_CLIENT = "engineWebClient";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider engineConnectionProvider(@Value("${engineHttpMaxConnections:0}") int maxConnections,
+                                                       @Value("${engineMaxConcurrency:8}") int engineMaxConcurrency,
+                                                       @Value("${hedgingMaxBurst:5}") double hedgingMaxBurst,
+                                                       @Value("${engineHttpMaxIdleSeconds:30}") long maxIdleSeconds,
+                                                       @Value("${engineHttpMaxLifeSeconds:300}") long maxLifeSeconds) {
+        // 0 sizes the pool of every endpoint to the dispatch concurrency plus the hedging burst
+        int connections = maxConnections > 0 ? maxConnections : engineMaxConcurrency + (int) Math.ceil(hedgingMaxBurst);
+        log.info("Engine connection pool: {} connections per endpoint, idle {}s, lifetime {}s",
+                connections, maxIdleSeconds, maxLifeSeconds);
+        return ConnectionProvider.builder("engine")
+                .maxConnections(connections)
+                // Requests are already queued by the dispatcher, a wait here only covers connection churn
+                .pendingAcquireMaxCount(connections * 4)
+                .pendingAcquireTimeout(Duration.ofSeconds(60))
+                // Engine load balancers drop idle connections silently; close ours before they do
+                .maxIdleTime(Duration.ofSeconds(maxIdleSeconds))
+                // Recycled now and then, so DNS changes behind the endpoint are picked up
+                .maxLifeTime(Duration.ofSeconds(maxLifeSeconds))
+                .evictInBackground(Duration.ofSeconds(Math.max(1, maxIdleSeconds / 2)))
+                .lifo()
+                .build();
+    }
+
+    @Bean(ENGINE_WEB_CLIENT)
+    public WebClient engineWebClient(ConnectionProvider engineConnectionProvider,
+                                     @Value("${engineHttpConnectTimeoutSeconds:10}") int connectTimeoutSeconds,
+                                     // Longest silence allowed while the response is awaited; long chunks take minutes
+                                     @Value("${engineHttpResponseTimeoutSeconds:600}") long responseTimeoutSeconds,
+                                     // HTTP/2 is negotiated over TLS and falls back to HTTP/1.1
+                                     @Value("${engineHttp2Enabled:false}") boolean http2Enabled) {
+        HttpClient httpClient = HttpClient.create(engineConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutSeconds * 1000)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(Duration.ofSeconds(responseTimeoutSeconds));
+        if (http2Enabled) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
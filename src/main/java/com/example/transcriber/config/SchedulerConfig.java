@@ -0,0 +1,47 @@
+package com.example.transcriber.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@Slf4j
+public class SchedulerConfig {
+
+    public static final String MODE_BOUNDED_ELASTIC = "bounded-elastic";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    // Scheduler for blocking work: ffprobe/ffmpeg processes, directory walks and file I/O
+    @Bean(destroyMethod = "dispose")
+    public Scheduler blockingScheduler(@Value("${blockingSchedulerMode:" + MODE_BOUNDED_ELASTIC + "}") String mode) {
+        return createBlockingScheduler(mode);
+    }
+
+    public static Scheduler createBlockingScheduler(String mode) {
+        if (MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+            ExecutorService executor = newVirtualThreadPerTaskExecutor();
+            if (executor != null) {
+                log.info("Blocking work runs on virtual threads");
+                return Schedulers.fromExecutorService(executor, "blocking-virtual");
+            }
+            log.warn("Virtual threads need Java 21 (running {}), falling back to boundedElastic",
+                    System.getProperty("java.version"));
+        }
+        return Schedulers.boundedElastic();
+    }
+
+    // Looked up reflectively so the default build keeps targeting Java 17
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.transcriber.config;
+
+import io.micrometer.context.ContextRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.publisher.Hooks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+/**
+ * Carries the task ID from the Reactor context into the logging MDC on whichever thread runs an operator,
+ * so the log lines of one task can be told apart across Netty and blocking scheduler threads.
+ */
+@Configuration
+@Slf4j
+public class TaskContextConfig {
+
+    public static final String TASK_ID = "taskId";
+
+    @PostConstruct
+    void enableTaskIdPropagation() {
+        ContextRegistry.getInstance().registerThreadLocalAccessor(TASK_ID,
+                () -> MDC.get(TASK_ID),
+                taskId -> MDC.put(TASK_ID, taskId),
+                () -> MDC.remove(TASK_ID));
+        Hooks.enableAutomaticContextPropagation();
+
+        // Work handed straight to a scheduler, like the ffmpeg output readers, runs outside any operator
+        Schedulers.onScheduleHook(TASK_ID, task -> {
+            String taskId = MDC.get(TASK_ID);
+            if (taskId == null) {
+                return task;
+            }
+            return () -> {
+                String previous = MDC.get(TASK_ID);
+                MDC.put(TASK_ID, taskId);
+                try {
+                    task.run();
+                } finally {
+                    if (previous == null) {
+                        MDC.remove(TASK_ID);
+                    } else {
+                        MDC.put(TASK_ID, previous);
+                    }
+                }
+            };
+        });
+        log.info("Task ID propagation into the logging MDC enabled");
+    }
+
+    // For contextWrite at the entry points of a task's processing chain
+    public static Context taskContext(String taskId) {
+        return Context.of(TASK_ID, taskId);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.transcriber.controller;
+
+import com.example.transcriber.dto.BatchStatus;
+import com.example.transcriber.service.BatchSubmissionService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+// Progress of a batch comes as events of the batch id: /tasks/{batchId}/events
+@RestController
+@Slf4j
+public class BatchController {
+
+    private static final String ZIP = "application/zip";
+
+    private final BatchSubmissionService batchSubmissionService;
+
+    @Autowired
+    public BatchController(BatchSubmissionService batchSubmissionService) {
+        this.batchSubmissionService = batchSubmissionService;
+    }
+
+    // Any number of "file" parts; a part named .zip, .tar, .tar.gz or .tgz is unpacked into the batch
+    @PostMapping(value = "/batches", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<BatchStatus>> submitFiles(@RequestPart("file") Flux<FilePart> fileParts,
+                                                         @RequestHeader("username") String username) {
+        return batchSubmissionService.submitFiles(username, fileParts).map(this::accepted);
+    }
+
+    // A zip or (gzipped) tar as the request body, unpacked while it streams in
+    @PostMapping(value = "/batches", consumes = {ZIP, "application/x-tar", "application/gzip", "application/x-gzip"})
+    public Mono<ResponseEntity<BatchStatus>> submitArchive(@RequestBody Flux<DataBuffer> archive,
+                                                           @RequestHeader("username") String username) {
+        return batchSubmissionService.submitArchive(username, archive).map(this::accepted);
+    }
+
+    @GetMapping("/batches/{batchId}")
+    public Mono<ResponseEntity<BatchStatus>> getBatchStatus(@PathVariable String batchId) {
+        return Mono.justOrEmpty(batchSubmissionService.getStatus(batchId))
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    // Can be requested right after the submission; transcripts are sent as the files finish
+    @GetMapping(value = "/batches/{batchId}/transcripts", produces = ZIP)
+    public ResponseEntity<Flux<DataBuffer>> downloadTranscripts(@PathVariable String batchId) {
+        return batchSubmissionService.streamTranscripts(batchId)
+                .map(body -> ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + batchId + "-transcripts.zip\"")
+                        .contentType(MediaType.parseMediaType(ZIP))
+                        .body(body))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private ResponseEntity<BatchStatus> accepted(BatchStatus status) {
+        log.info("Accepted batch {} of {} with {} files", status.getBatchId(), status.getUsername(), status.getTotalFiles());
+        return ResponseEntity.accepted()
+                .location(URI.create("/batches/" + status.getBatchId()))
+                .body(status);
+    }
+}
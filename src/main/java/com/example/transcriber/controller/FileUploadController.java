@@ -1,5 +1,8 @@
 package com.example.transcriber.controller;
 
+import com.example.transcriber.config.TaskContextConfig;
+import com.example.transcriber.service.JobCostModel;
+import com.example.transcriber.service.TaskTimelineService;
 import com.example.transcriber.service.TranscribingService;
 import com.example.transcriber.service.StatusService;
 import com.example.transcriber.service.UploadService;
@@ -9,13 +12,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -30,45 +38,122 @@ public class FileUploadController {
     private final StatusService statusService;
     private final TranscribingService transcribingService;
     private final WebSocketService webSocketService;
+    private final TaskTimelineService taskTimelineService;
+    private final JobCostModel jobCostModel;
+    private final Scheduler blockingScheduler;
 
     @Value("${tempDirPath}")
     private String tempDirPath;
 
+    // New uploads are refused while the predicted work of running jobs exceeds this many seconds, 0 disables the check
+    @Value("${admissionMaxBacklogSeconds:0}")
+    private double admissionMaxBacklogSeconds;
+
     @Autowired
     public FileUploadController(UploadService uploadService, StatusService statusService,
                                 TranscribingService transcribingService,
-                                WebSocketService webSocketService) {
+                                WebSocketService webSocketService,
+                                TaskTimelineService taskTimelineService,
+                                JobCostModel jobCostModel,
+                                Scheduler blockingScheduler) {
         this.uploadService = uploadService;
         this.statusService = statusService;
         this.transcribingService = transcribingService;
         this.webSocketService = webSocketService;
+        this.taskTimelineService = taskTimelineService;
+        this.jobCostModel = jobCostModel;
+        this.blockingScheduler = blockingScheduler;
     }
 
     @PostMapping("/upload-file")
     public Mono<ResponseEntity<Void>> handleFileUpload(@RequestPart("file") FilePart filePart,
                                                        @RequestHeader("username") String username) { // передаем username через заголовок)
+        if (isOverloaded()) {
+            return Mono.just(busyResponse());
+        }
         String taskId = UUID.randomUUID().toString();
         log.info("Received request to create transcription document. Task ID: {}, File: {}", taskId, filePart.filename());
-        return Mono.when(webSocketService.sendMessage(username, "STATUS: Uploading file..."),
+        return Mono.when(webSocketService.sendMessage(username, taskId, "STATUS: Uploading file..."),
                         statusService.updateTaskStatus(taskId, "Uploading file"))
-                .then(uploadService.saveUploadedFile(filePart, username, taskId))
+                .then(taskTimelineService.span(taskId, TaskTimelineService.STAGE, "upload",
+                        uploadService.saveUploadedFile(filePart, username, taskId)))
                 .flatMap(sourceFilePath ->
                         transcribingService.createTranscriptionDoc(sourceFilePath, taskId, username)
                 )
                 .flatMap(docPath ->
                         Mono.when(
-                                webSocketService.sendMessage(username, "DOWNLOAD:" + docPath),
+                                webSocketService.sendMessage(username, taskId, "DOWNLOAD:" + docPath),
                                 statusService.updateTaskStatus(taskId, "Completed")
                         )
                 )
                 .doOnSuccess(unused ->
                         log.info("Creating transcription document completed successfully for Task ID: {}", taskId)
                 )
+                .transform(task -> taskTimelineService.span(taskId, TaskTimelineService.TASK, "transcription", task))
+                .doFinally(signal -> jobCostModel.finishJob(taskId))
                 .then(Mono.just(new ResponseEntity<Void>(HttpStatus.OK)))
                 .onErrorResume(e -> {
                     log.error("Error creating transcription document for Task ID: {}", taskId, e);
                     return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
-                });
+                })
+                .contextWrite(TaskContextConfig.taskContext(taskId));
+    }
+
+    // Streaming ingest: the file part is read as raw part events, because a FilePart argument is only resolved
+    // once the whole part has arrived, and processing starts with the first bytes
+    @PostMapping(value = "/upload-file/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<Void>> handleStreamingFileUpload(@RequestBody Flux<PartEvent> partEvents,
+                                                                @RequestHeader("username") String username) {
+        if (isOverloaded()) {
+            return partEvents.doOnNext(event -> DataBufferUtils.release(event.content())).then(Mono.just(busyResponse()));
+        }
+        String taskId = UUID.randomUUID().toString();
+        return partEvents
+                .windowUntil(PartEvent::isLast)
+                .concatMap(partEventFlux -> partEventFlux.switchOnFirst((signal, events) -> {
+                    if (signal.get() instanceof FilePartEvent filePartEvent && "file".equals(filePartEvent.name())) {
+                        log.info("Received request to create transcription document from a stream. Task ID: {}, File: {}",
+                                taskId, filePartEvent.filename());
+                        return Mono.when(webSocketService.sendMessage(username, taskId, "STATUS: Uploading file..."),
+                                        statusService.updateTaskStatus(taskId, "Uploading file"))
+                                .then(transcribingService.createTranscriptionDocStreaming(filePartEvent.filename(),
+                                        events.map(PartEvent::content), taskId, username));
+                    }
+                    // Other form fields are not used
+                    return events.doOnNext(event -> DataBufferUtils.release(event.content())).then();
+                }))
+                .then()
+                .doOnSuccess(unused ->
+                        log.info("Creating transcription document completed successfully for Task ID: {}", taskId)
+                )
+                .transform(task -> taskTimelineService.span(taskId, TaskTimelineService.TASK, "transcription", task))
+                .doFinally(signal -> jobCostModel.finishJob(taskId))
+                .then(Mono.just(new ResponseEntity<Void>(HttpStatus.OK)))
+                .onErrorResume(e -> {
+                    log.error("Error creating transcription document for Task ID: {}", taskId, e);
+                    return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+                })
+                .contextWrite(TaskContextConfig.taskContext(taskId));
+    }
+
+    private boolean isOverloaded() {
+        if (admissionMaxBacklogSeconds <= 0) {
+            return false;
+        }
+        double backlog = jobCostModel.getPredictedBacklogSeconds();
+        if (backlog <= admissionMaxBacklogSeconds) {
+            return false;
+        }
+        log.warn("Refusing upload: predicted backlog {}s exceeds {}s", Math.round(backlog), Math.round(admissionMaxBacklogSeconds));
+        return true;
+    }
+
+    // Retry after the part of the backlog above the limit should have drained
+    private ResponseEntity<Void> busyResponse() {
+        long retryAfter = Math.max(1, Math.round(jobCostModel.getPredictedBacklogSeconds() - admissionMaxBacklogSeconds));
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                .build();
     }
 
     @GetMapping("/download-transcription/{sourceDirectory}/{taskId}/{filename}")
@@ -103,7 +188,7 @@ public class FileUploadController {
                             taskId, filename, e.getMessage());
                     return Mono.just(ResponseEntity.notFound().build());
                 })
-                .subscribeOn(Schedulers.boundedElastic());
+                .subscribeOn(blockingScheduler);
     }
 }
 
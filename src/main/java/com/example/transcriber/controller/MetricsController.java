@@ -0,0 +1,81 @@
+package com.example.transcriber.controller;
+
+import com.example.transcriber.dto.CostModelStats;
+import com.example.transcriber.dto.DispatchStats;
+import com.example.transcriber.dto.EngineEndpointStats;
+import com.example.transcriber.dto.FingerprintIndexStats;
+import com.example.transcriber.dto.HedgingStats;
+import com.example.transcriber.dto.UserWaitStats;
+import com.example.transcriber.service.AudioFingerprintIndex;
+import com.example.transcriber.service.EngineDispatchService;
+import com.example.transcriber.service.EnginePoolService;
+import com.example.transcriber.service.EngineThroughputModel;
+import com.example.transcriber.service.HedgingService;
+import com.example.transcriber.service.JobCostModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@RestController
+@Slf4j
+public class MetricsController {
+
+    private final HedgingService hedgingService;
+    private final EngineDispatchService engineDispatchService;
+    private final EngineThroughputModel engineThroughputModel;
+    private final JobCostModel jobCostModel;
+    private final EnginePoolService enginePoolService;
+    private final AudioFingerprintIndex audioFingerprintIndex;
+
+    @Autowired
+    public MetricsController(HedgingService hedgingService, EngineDispatchService engineDispatchService,
+                             EngineThroughputModel engineThroughputModel, JobCostModel jobCostModel,
+                             EnginePoolService enginePoolService, AudioFingerprintIndex audioFingerprintIndex) {
+        this.hedgingService = hedgingService;
+        this.engineDispatchService = engineDispatchService;
+        this.engineThroughputModel = engineThroughputModel;
+        this.jobCostModel = jobCostModel;
+        this.enginePoolService = enginePoolService;
+        this.audioFingerprintIndex = audioFingerprintIndex;
+    }
+
+    @GetMapping("/metrics/hedging")
+    public Mono<HedgingStats> getHedgingStats() {
+        return Mono.fromSupplier(hedgingService::getStats);
+    }
+
+    @GetMapping("/metrics/dispatch")
+    public Mono<DispatchStats> getDispatchStats() {
+        return Mono.fromSupplier(() -> new DispatchStats(
+                engineDispatchService.getMaxConcurrency(),
+                engineDispatchService.getInFlight(),
+                engineDispatchService.getQueued(),
+                engineThroughputModel.getOverheadSeconds(),
+                engineThroughputModel.getSecondsPerAudioSecond(),
+                engineThroughputModel.getSamples()));
+    }
+
+    @GetMapping("/metrics/engines")
+    public Mono<List<EngineEndpointStats>> getEngineEndpointStats() {
+        return Mono.fromSupplier(enginePoolService::getStats);
+    }
+
+    @GetMapping("/metrics/fingerprints")
+    public Mono<FingerprintIndexStats> getFingerprintIndexStats() {
+        return Mono.fromSupplier(audioFingerprintIndex::getStats);
+    }
+
+    @GetMapping("/metrics/cost")
+    public Mono<CostModelStats> getCostModelStats() {
+        return Mono.fromSupplier(jobCostModel::getStats);
+    }
+
+    @GetMapping("/metrics/users")
+    public Mono<List<UserWaitStats>> getUserWaitStats() {
+        return Mono.fromSupplier(engineDispatchService::getUserWaitStats);
+    }
+}
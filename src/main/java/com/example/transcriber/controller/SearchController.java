@@ -0,0 +1,37 @@
+package com.example.transcriber.controller;
+
+import com.example.transcriber.dto.SearchResult;
+import com.example.transcriber.service.TranscriptSearchService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+@RestController
+@Slf4j
+public class SearchController {
+
+    private static final int MAX_LIMIT = 100;
+
+    private final TranscriptSearchService transcriptSearchService;
+
+    @Autowired
+    public SearchController(TranscriptSearchService transcriptSearchService) {
+        this.transcriptSearchService = transcriptSearchService;
+    }
+
+    // Ranked transcripts matching the query, optionally only those of one user
+    @GetMapping("/search")
+    public Mono<SearchResult> search(@RequestParam("q") String query,
+                                     @RequestParam(value = "username", required = false) String username,
+                                     @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        if (query.isBlank()) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Search query is empty"));
+        }
+        return transcriptSearchService.search(query, username, Math.max(1, Math.min(limit, MAX_LIMIT)));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.transcriber.controller;
+
+import com.example.transcriber.dto.JobMetrics;
+import com.example.transcriber.dto.TaskEvent;
+import com.example.transcriber.dto.TaskTimeline;
+import com.example.transcriber.service.JobMetricsService;
+import com.example.transcriber.service.TaskEventService;
+import com.example.transcriber.service.TaskTimelineService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+@RestController
+@Slf4j
+public class TaskController {
+
+    // Comment lines keep proxies from closing an idle event stream
+    private static final Duration SSE_KEEP_ALIVE = Duration.ofSeconds(15);
+
+    private final JobMetricsService jobMetricsService;
+    private final TaskEventService taskEventService;
+    private final TaskTimelineService taskTimelineService;
+
+    @Autowired
+    public TaskController(JobMetricsService jobMetricsService, TaskEventService taskEventService,
+                          TaskTimelineService taskTimelineService) {
+        this.jobMetricsService = jobMetricsService;
+        this.taskEventService = taskEventService;
+        this.taskTimelineService = taskTimelineService;
+    }
+
+    @GetMapping("/tasks/{taskId}/metrics")
+    public Mono<ResponseEntity<JobMetrics>> getTaskMetrics(@PathVariable String taskId) {
+        return Mono.justOrEmpty(jobMetricsService.getMetrics(taskId))
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    // Stage, chunk and engine spans of the task; with format=chrome as a trace for chrome://tracing or Perfetto
+    @GetMapping("/tasks/{taskId}/timeline")
+    public Mono<ResponseEntity<?>> getTaskTimeline(@PathVariable String taskId,
+                                                   @RequestParam(value = "format", required = false) String format) {
+        if ("chrome".equalsIgnoreCase(format)) {
+            return Mono.justOrEmpty(taskTimelineService.getChromeTrace(taskId))
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .defaultIfEmpty(ResponseEntity.notFound().build());
+        }
+        return Mono.justOrEmpty(taskTimelineService.getTimeline(taskId))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    // Replays the task's buffered events after the cursor (all of them without one), follows live events
+    // and completes once the download link has been sent
+    @GetMapping(value = "/tasks/{taskId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<TaskEvent>> getTaskEvents(@PathVariable String taskId,
+                                                          @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                                          @RequestParam(value = "since", required = false) Long since) {
+        long cursor = lastEventId != null ? lastEventId : since != null ? since : 0;
+        return withKeepAlive(taskEventService.subscribeToTask(taskId, cursor)
+                .takeUntil(TaskEvent::isDownload));
+    }
+
+    // All events of one user's tasks; without a cursor only new events are sent
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<TaskEvent>> getUserEvents(@RequestParam("username") String username,
+                                                          @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                                          @RequestParam(value = "since", required = false) Long since) {
+        long cursor = lastEventId != null ? lastEventId : since != null ? since : taskEventService.getLastEventId();
+        return withKeepAlive(taskEventService.subscribeToUser(username, cursor));
+    }
+
+    private Flux<ServerSentEvent<TaskEvent>> withKeepAlive(Flux<TaskEvent> events) {
+        Flux<ServerSentEvent<TaskEvent>> keepAlive = Flux.interval(SSE_KEEP_ALIVE)
+                .map(tick -> ServerSentEvent.<TaskEvent>builder().comment("keep-alive").build());
+        return events
+                .map(event -> ServerSentEvent.builder(event)
+                        .id(String.valueOf(event.getId()))
+                        .build())
+                .publish(shared -> Flux.merge(shared, keepAlive.takeUntilOther(shared.then())));
+    }
+}
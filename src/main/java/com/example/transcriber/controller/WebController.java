@@ -1,5 +1,6 @@
 package com.example.transcriber.controller;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -9,10 +10,14 @@ import java.util.UUID;
 @Controller
 public class WebController {
 
+    @Value("${streamingIngestEnabled:false}")
+    private boolean streamingIngestEnabled;
+
     @GetMapping("/")
     public String showVideoConverterForm(Model model) {
         String username = "user_" + UUID.randomUUID();
         model.addAttribute("username", username);
+        model.addAttribute("uploadUrl", streamingIngestEnabled ? "/upload-file/stream" : "/upload-file");
         return "videoConverter";
     }
 }
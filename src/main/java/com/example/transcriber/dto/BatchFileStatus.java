@@ -0,0 +1,20 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchFileStatus {
+
+    public enum State { QUEUED, TRANSCRIBING, DONE, FAILED }
+
+    private String name;              // path inside the uploaded archive, or the file name of the part
+    private State state;
+    private double durationSeconds;
+    private boolean packed;           // transcribed in a combined request with other short files
+    private String taskId;
+    private String error;
+}
@@ -0,0 +1,25 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchLedgerEntry {
+
+    public enum Status { IN_PROGRESS, DONE, FAILED }
+
+    private String path;            // relative to the input directory
+    private long sizeBytes;
+    private long lastModified;      // with the size, tells whether the file changed since it was transcribed
+    private Status status;
+    private String taskId;
+    private String taskDirectory;   // kept while in progress, so an interrupted file resumes from its checkpoints
+    private String outputPath;
+    private double audioSeconds;
+    private double elapsedSeconds;
+    private String error;
+    private long recordedAt;
+}
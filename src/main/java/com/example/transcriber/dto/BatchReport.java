@@ -0,0 +1,16 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BatchReport {
+
+    private int transcribed;
+    private int skipped;
+    private int failed;
+    private double audioHours;
+    private double wallHours;          // from the first file started to the last one finished
+    private double audioHoursPerHour;
+}
@@ -0,0 +1,24 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class BatchStatus {
+
+    public enum State { PROBING, TRANSCRIBING, COMPLETED }
+
+    private String batchId;
+    private String username;
+    private State state;
+    private int totalFiles;
+    private int transcribedFiles;
+    private int failedFiles;
+    private int packedRequests;       // combined engine requests made for the packed files
+    private double audioSeconds;
+    private String transcriptsUrl;    // zip of all transcripts, streamed as the files finish
+    private List<BatchFileStatus> files;
+}
@@ -0,0 +1,16 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+public class CostModelStats {
+
+    private Map<String, RateSummary> extractionSecondsPerMediaSecond;   // by "MODE:codec"
+    private Map<String, RateSummary> engineSecondsPerAudioSecond;       // by chunk length bucket, e.g. "<=300s"
+    private int activeJobs;
+    private double predictedBacklogSeconds;
+}
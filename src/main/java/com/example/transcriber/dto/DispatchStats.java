@@ -0,0 +1,16 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class DispatchStats {
+
+    private int maxConcurrency;
+    private int inFlight;
+    private int queued;
+    private double engineOverheadSeconds;
+    private double engineSecondsPerAudioSecond;
+    private long engineSamples;
+}
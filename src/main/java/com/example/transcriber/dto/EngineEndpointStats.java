@@ -0,0 +1,19 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class EngineEndpointStats {
+
+    private String url;
+    private String state;              // CLOSED, OPEN or HALF_OPEN
+    private int inFlight;
+    private int maxInFlight;
+    private long requests;
+    private long failures;
+    private int consecutiveFailures;
+    private Double latencyEwmaMillisPerAudioSecond;  // null until the endpoint has answered once
+    private String lastError;
+}
@@ -0,0 +1,19 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ExtractionPlan {
+
+    public enum Mode {
+        DIRECT,    // the source is sent to the engine as is
+        REMUX,     // the audio stream is copied into an engine-friendly container (-c:a copy)
+        TRANSCODE  // the audio stream is re-encoded with libmp3lame
+    }
+
+    private final Mode mode;
+    private final String outputExtension;
+    private final String audioCodec;
+}
@@ -0,0 +1,16 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class FingerprintIndexStats {
+
+    private int recordings;
+    private double indexedHours;
+    private long lookups;
+    private long fullMatches;
+    private long partialMatches;
+    private double reusedAudioSeconds;
+}
@@ -0,0 +1,21 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class FingerprintMatch {
+
+    private String referenceTaskId;
+    private boolean full;                    // the whole recording matched, transcript can be reused as is
+    private double startSeconds;             // matched part of the new recording
+    private double endSeconds;
+    private double offsetSeconds;            // position in the reference = position in the new recording + offset
+    private double bitErrorRate;
+    private String transcript;               // set for a full match
+    private List<TranscribedRange> reusedRanges; // chunks of the reference inside the match, on the new recording's timeline
+    private double referenceOverlapSeconds;  // overlap the reference chunks were transcribed with
+}
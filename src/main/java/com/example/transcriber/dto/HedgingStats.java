@@ -0,0 +1,18 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class HedgingStats {
+
+    private boolean enabled;
+    private long requests;
+    private long hedgesIssued;
+    private long hedgesWon;
+    private long hedgesSkippedForBudget;
+    private double hedgeWinRate;
+    private Double hedgeDelayMillisPerAudioSecond; // null until enough latencies have been observed
+    private double budgetTokens;
+}
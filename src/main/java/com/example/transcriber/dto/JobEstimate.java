@@ -0,0 +1,19 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class JobEstimate {
+
+    private double extractionSeconds;
+    private double transcriptionSeconds;
+    private int segmentLengthSeconds;
+    private int chunks;
+    private boolean learned;    // false while the model still relies on default rates
+
+    public double getTotalSeconds() {
+        return extractionSeconds + transcriptionSeconds;
+    }
+}
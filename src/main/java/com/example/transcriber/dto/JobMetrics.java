@@ -0,0 +1,26 @@
+package com.example.transcriber.dto;
+
+import lombok.Data;
+
+@Data
+public class JobMetrics {
+
+    private final String taskId;
+    private ExtractionPlan.Mode extractionMode;
+    private String audioCodec;
+    private double mediaDurationSeconds;
+    private double predictedSeconds;    // latest prediction of the time remaining when it was made
+    private double extractionSeconds;
+    private int extractionProcesses;
+    private double extractionSecondsSaved;
+    private double silenceSecondsRemoved;
+    private double reusedAudioSeconds;  // taken from an earlier transcript of the same recording
+    private int segmentLengthSeconds;
+    private int segmentCount;
+    private int hedgedRequests;
+    private int hedgesWon;
+
+    public JobMetrics(String taskId) {
+        this.taskId = taskId;
+    }
+}
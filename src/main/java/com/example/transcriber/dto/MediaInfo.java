@@ -0,0 +1,22 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MediaInfo {
+
+    private String formatName;
+    private double durationSeconds;
+    private long bitRate;
+    private String audioCodec; // null if the file has no audio stream
+    private int sampleRate;
+    private int channels;
+
+    public boolean hasAudio() {
+        return audioCodec != null && !audioCodec.isEmpty();
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Distribution of a cost rate, e.g. extraction seconds per media second
+@Data
+@AllArgsConstructor
+public class RateSummary {
+
+    private long observations;
+    private double p50;
+    private double p90;
+}
@@ -0,0 +1,17 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class SearchHit {
+
+    private String taskId;
+    private String username;
+    private String fileName;
+    private String downloadUrl; // valid while the task directory has not been cleaned up
+    private long savedAt;
+    private float score;
+    private String snippet;     // best matching passage, matches wrapped in <b>
+}
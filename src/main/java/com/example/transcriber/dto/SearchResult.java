@@ -0,0 +1,16 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class SearchResult {
+
+    private String query;
+    private long totalHits;
+    private long tookMillis;
+    private List<SearchHit> hits;
+}
@@ -0,0 +1,17 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SegmentInfo {
+
+    private int index;
+    private String fileName;
+    private double startSeconds;
+    private double endSeconds;
+    private long sizeBytes;
+}
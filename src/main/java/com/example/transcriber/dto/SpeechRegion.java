@@ -0,0 +1,16 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One span of speech that was kept, in original time and at its start in the stripped audio
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpeechRegion {
+
+    private double originalStartSeconds;
+    private double originalEndSeconds;
+    private double strippedStartSeconds;
+}
@@ -0,0 +1,21 @@
+package com.example.transcriber.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class TaskEvent {
+
+    private long id;          // global sequence number, usable as a resume cursor across tasks
+    private String taskId;
+    private String username;
+    private String data;      // the message as the page understands it: "STATUS: ...", "ERROR: ...", "DOWNLOAD:..."
+    private long timestamp;
+
+    @JsonIgnore
+    public boolean isDownload() {
+        return data.startsWith("DOWNLOAD:");
+    }
+}
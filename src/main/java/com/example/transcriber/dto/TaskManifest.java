@@ -0,0 +1,29 @@
+package com.example.transcriber.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class TaskManifest {
+
+    private String taskId;
+    private String username;
+    private String sourceFilePath;   // the uploaded file
+    private String audioFilePath;    // set once extraction has finished
+    private List<SpeechRegion> speechRegions; // set when silence was stripped, maps the audio file back to the source timeline
+    private int segmentLengthSeconds;
+    private double segmentOverlapSeconds; // neighbouring segments share this much audio, their transcripts are stitched
+    private List<SegmentInfo> segments = new ArrayList<>(); // empty until the file has been split
+    private boolean completed;
+    private boolean failed; // the pipeline reported an error, so the task is not resumed
+
+    public TaskManifest(String taskId, String username, String sourceFilePath) {
+        this.taskId = taskId;
+        this.username = username;
+        this.sourceFilePath = sourceFilePath;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class TaskTimeline {
+
+    private String taskId;
+    private long startedAt;     // epoch millis of the timeline origin
+    private int droppedSpans;
+    private List<TimelineSpan> spans;
+}
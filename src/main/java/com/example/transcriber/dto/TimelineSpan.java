@@ -0,0 +1,17 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class TimelineSpan {
+
+    private String category;    // "task", "stage", "chunk", "engine" or "wait"
+    private String name;
+    private long startMicros;   // relative to the start of the task's timeline
+    private long durationMicros;
+    private String startThread;
+    private String endThread;
+    private String outcome;     // onComplete, onError or cancel
+}
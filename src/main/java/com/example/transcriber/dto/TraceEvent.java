@@ -0,0 +1,23 @@
+package com.example.transcriber.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+// One event of the Chrome trace event format, as loaded by chrome://tracing and Perfetto
+@Data
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TraceEvent {
+
+    private String name;
+    private String cat;
+    private String ph;          // "X" for a complete event, "M" for metadata
+    private Long ts;            // microseconds
+    private Long dur;
+    private int pid;
+    private int tid;
+    private Map<String, Object> args;
+}
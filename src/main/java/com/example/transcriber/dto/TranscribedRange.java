@@ -0,0 +1,13 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class TranscribedRange {
+
+    private double startSeconds;
+    private double endSeconds;
+    private String text;
+}
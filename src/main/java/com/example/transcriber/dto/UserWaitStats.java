@@ -0,0 +1,18 @@
+package com.example.transcriber.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class UserWaitStats {
+
+    private String username;
+    private String tier;
+    private double weight;
+    private long dispatched;
+    private int queued;
+    private double averageWaitMillis;
+    private long maxWaitMillis;
+    private long lastWaitMillis;
+}
@@ -0,0 +1,26 @@
+package com.example.transcriber.exception;
+
+import java.io.IOException;
+
+/**
+ * ffmpeg or ffprobe exited with an error. Unless the process was stopped by a signal, the same input
+ * fails the same way again, so the task is not worth resuming.
+ */
+public class MediaProcessingException extends IOException {
+
+    private final int exitCode;
+
+    public MediaProcessingException(String message, int exitCode) {
+        super(message);
+        this.exitCode = exitCode;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    // ffmpeg exits with 255 when it receives a signal; 128 + n is a process killed by SIGKILL or SIGTERM
+    public boolean isStoppedBySignal() {
+        return exitCode == 255 || exitCode == 128 + 9 || exitCode == 128 + 15;
+    }
+}
@@ -1,31 +1,44 @@
 package com.example.transcriber.handler;
 
 
-import com.example.transcriber.service.WebSocketService;
+import com.example.transcriber.service.TaskEventService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.reactive.socket.CloseStatus;
 import org.springframework.web.reactive.socket.WebSocketHandler;
 import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
 
 @Component
 @Slf4j
 public class FileUploadWebSocketHandler implements WebSocketHandler {
-    private final WebSocketService webSocketService;
+    private final TaskEventService taskEventService;
+    private final ObjectMapper objectMapper;
 
 
     @Autowired
-    public FileUploadWebSocketHandler(WebSocketService webSocketService) {
-        this.webSocketService = webSocketService;
+    public FileUploadWebSocketHandler(TaskEventService taskEventService, ObjectMapper objectMapper) {
+        this.taskEventService = taskEventService;
+        this.objectMapper = objectMapper;
     }
 
     @Override
     public Mono<Void> handle(WebSocketSession session) {
-        String query = session.getHandshakeInfo().getUri().getQuery();
-        String username = query != null && query.startsWith("username=") ? query.substring("username=".length()) : null;
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(session.getHandshakeInfo().getUri())
+                .build()
+                .getQueryParams();
+        String username = decode(params.getFirst("username"));
         log.info("User connected: " + username);
 
         if (username == null || username.isEmpty()) {
@@ -33,15 +46,34 @@ public class FileUploadWebSocketHandler implements WebSocketHandler {
             return session.close(CloseStatus.BAD_DATA.withReason("User information is missing"));
         }
 
-        // Сохраняем сессию
-        webSocketService.addSession(username, session);
+        // Курсор последнего полученного события: всё, что клиент пропустил, будет отправлено повторно.
+        // Без курсора клиент получает только новые события
+        long sinceId;
+        try {
+            sinceId = params.containsKey("since") ? Long.parseLong(params.getFirst("since")) : taskEventService.getLastEventId();
+        } catch (NumberFormatException e) {
+            return session.close(CloseStatus.BAD_DATA.withReason("Invalid event cursor"));
+        }
+
+        // The first frame only carries the cursor, so a client that has not received an event yet can still resume
+        Flux<String> frames = Flux.concat(
+                Mono.fromCallable(() -> objectMapper.writeValueAsString(Map.of("id", sinceId))),
+                taskEventService.subscribeToUser(username, sinceId)
+                        .map(event -> {
+                            try {
+                                return objectMapper.writeValueAsString(event);
+                            } catch (JsonProcessingException e) {
+                                throw new IllegalStateException("Error serializing task event " + event.getId(), e);
+                            }
+                        }));
+        Mono<Void> output = session.send(frames.map(session::textMessage));
 
-        return session.receive()
-                .doFinally(signalType -> {
-                    // Удаляем сессию при завершении
-                    webSocketService.removeSession(username);
-                    log.info("User disconnected: " + username);
-                })
+        return Mono.zip(output, session.receive().then())
+                .doFinally(signalType -> log.info("User disconnected: " + username))
                 .then(); // Завершаем всю цепочку
     }
+
+    private String decode(String value) {
+        return value == null ? null : URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
 }
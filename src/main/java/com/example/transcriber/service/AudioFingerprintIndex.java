@@ -0,0 +1,308 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.FingerprintIndexStats;
+import com.example.transcriber.dto.FingerprintMatch;
+import com.example.transcriber.dto.TranscribedRange;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of the acoustic fingerprints of finished transcriptions, so a recording that comes back
+ * in another container, encoding or trimmed is recognised without byte equality. Sub-fingerprints of the
+ * indexed recordings point back to their frames; the frames of a new recording vote for an alignment, and
+ * the best alignments are checked block by block by bit error rate. A match covering both recordings reuses
+ * the whole transcript, a partial one the reference chunks that lie inside the matched range. Every user has
+ * an index of their own, so a recording only matches what the same user transcribed before and a transcript
+ * never reaches another user.
+ */
+@Service
+@Slf4j
+public class AudioFingerprintIndex {
+
+    // Every 4th frame of a reference is indexed; all frames of a query vote, so a true alignment still gets a quarter of them
+    private static final int INDEX_STRIDE = 4;
+    // Sub-fingerprints this common (tones, hum) say nothing about the alignment
+    private static final int MAX_POSTINGS = 2000;
+    private static final int MIN_VOTES = 3;
+    private static final int CANDIDATES = 5;
+    // About 2s, long enough for a reliable bit error rate
+    private static final int BLOCK_FRAMES = 32;
+    // A reused chunk may end this far outside the verified blocks
+    private static final double RANGE_TOLERANCE_SECONDS = 0.5;
+
+    // Off unless enabled: every upload is decoded a second time for its fingerprint
+    @Getter
+    @Value("${fingerprintDedupeEnabled:false}")
+    private boolean fingerprintDedupeEnabled;
+
+    // Unrelated audio differs in about half of the bits, the same recording after lossy re-encoding in far fewer
+    @Value("${fingerprintMaxBitErrorRate:0.35}")
+    private double fingerprintMaxBitErrorRate;
+
+    @Value("${fingerprintMinMatchSeconds:20}")
+    private double fingerprintMinMatchSeconds;
+
+    // Share of both recordings the match has to cover for the transcript to be reused as a whole
+    @Value("${fingerprintFullMatchRatio:0.95}")
+    private double fingerprintFullMatchRatio;
+
+    // Oldest recordings are dropped beyond this much indexed audio
+    @Value("${fingerprintIndexMaxHours:50}")
+    private double fingerprintIndexMaxHours;
+
+    // Fingerprints of running tasks, indexed once their transcript is known
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    private final LinkedHashMap<Integer, Recording> recordings = new LinkedHashMap<>();
+    // Sub-fingerprint postings by username
+    private final Map<String, Map<Integer, Postings>> postingsByUser = new HashMap<>();
+    private int nextRecordingId;
+    private long indexedFrames;
+    private long lookups;
+    private long fullMatches;
+    private long partialMatches;
+    private double reusedAudioSeconds;
+
+    public void attach(String taskId, String username, int[] fingerprint) {
+        pending.put(taskId, new Pending(username, fingerprint));
+    }
+
+    public void detach(String taskId) {
+        pending.remove(taskId);
+    }
+
+    public Optional<FingerprintMatch> lookup(String taskId) {
+        Pending task = pending.get(taskId);
+        if (!fingerprintDedupeEnabled || task == null) {
+            return Optional.empty();
+        }
+        int[] query = task.fingerprint();
+        FingerprintMatch match;
+        synchronized (this) {
+            lookups++;
+            match = findMatch(task.username(), query);
+            if (match != null) {
+                if (match.isFull()) {
+                    fullMatches++;
+                    reusedAudioSeconds += query.length * AudioFingerprinter.FRAME_SECONDS;
+                } else {
+                    partialMatches++;
+                    reusedAudioSeconds += match.getReusedRanges().stream()
+                            .mapToDouble(r -> r.getEndSeconds() - r.getStartSeconds())
+                            .sum();
+                }
+            }
+        }
+        if (match != null) {
+            log.info("Task ID {} matches the audio of Task ID {} ({}, {}s-{}s, offset {}s, bit error rate {})", taskId,
+                    match.getReferenceTaskId(), match.isFull() ? "full" : match.getReusedRanges().size() + " chunks",
+                    String.format(Locale.ROOT, "%.1f", match.getStartSeconds()), String.format(Locale.ROOT, "%.1f", match.getEndSeconds()),
+                    String.format(Locale.ROOT, "%.2f", match.getOffsetSeconds()), String.format(Locale.ROOT, "%.3f", match.getBitErrorRate()));
+        }
+        return Optional.ofNullable(match);
+    }
+
+    // Ranges are on the timeline of the fingerprinted audio and may be empty, then only full matches reuse the transcript
+    public void register(String taskId, String transcript, List<TranscribedRange> ranges, double overlapSeconds) {
+        Pending task = pending.get(taskId);
+        if (!fingerprintDedupeEnabled || task == null || task.fingerprint().length == 0) {
+            return;
+        }
+        int[] fingerprint = task.fingerprint();
+        synchronized (this) {
+            int id = nextRecordingId++;
+            recordings.put(id, new Recording(taskId, task.username(), fingerprint, transcript, List.copyOf(ranges), overlapSeconds));
+            Map<Integer, Postings> postings = postingsByUser.computeIfAbsent(task.username(), user -> new HashMap<>());
+            for (int frame = 0; frame < fingerprint.length; frame += INDEX_STRIDE) {
+                if (fingerprint[frame] != 0) {
+                    postings.computeIfAbsent(fingerprint[frame], key -> new Postings()).add(((long) id << 32) | frame);
+                }
+            }
+            indexedFrames += fingerprint.length;
+
+            long maxFrames = (long) (fingerprintIndexMaxHours * 3600 / AudioFingerprinter.FRAME_SECONDS);
+            Iterator<Map.Entry<Integer, Recording>> oldest = recordings.entrySet().iterator();
+            while (indexedFrames > maxFrames && recordings.size() > 1) {
+                Map.Entry<Integer, Recording> evicted = oldest.next();
+                oldest.remove();
+                unindex(evicted.getKey(), evicted.getValue());
+            }
+        }
+        log.debug("Indexed the fingerprint of Task ID {}: {} frames, {} chunks", taskId, fingerprint.length, ranges.size());
+    }
+
+    public synchronized FingerprintIndexStats getStats() {
+        return new FingerprintIndexStats(recordings.size(), indexedFrames * AudioFingerprinter.FRAME_SECONDS / 3600,
+                lookups, fullMatches, partialMatches, reusedAudioSeconds);
+    }
+
+    private FingerprintMatch findMatch(String username, int[] query) {
+        Map<Integer, Postings> postings = postingsByUser.get(username);
+        if (postings == null) {
+            return null;
+        }
+        Map<Long, Integer> votes = new HashMap<>();
+        for (int i = 0; i < query.length; i++) {
+            Postings candidates = query[i] == 0 ? null : postings.get(query[i]);
+            if (candidates == null || candidates.size > MAX_POSTINGS) {
+                continue;
+            }
+            for (int p = 0; p < candidates.size; p++) {
+                long posting = candidates.items[p];
+                int offset = (int) posting - i;
+                votes.merge((posting & 0xffffffff00000000L) | (offset & 0xffffffffL), 1, Integer::sum);
+            }
+        }
+
+        FingerprintMatch best = null;
+        List<Map.Entry<Long, Integer>> ranked = votes.entrySet().stream()
+                .filter(vote -> vote.getValue() >= MIN_VOTES)
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed())
+                .limit(CANDIDATES)
+                .toList();
+        for (Map.Entry<Long, Integer> candidate : ranked) {
+            Recording reference = recordings.get((int) (candidate.getKey() >>> 32));
+            FingerprintMatch match = verify(query, reference, (int) (long) candidate.getKey());
+            if (match != null && (best == null || match.getEndSeconds() - match.getStartSeconds() > best.getEndSeconds() - best.getStartSeconds())) {
+                best = match;
+            }
+        }
+        return best;
+    }
+
+    // Finds the longest run of blocks within the error threshold; blocks without comparable frames neither break nor end it.
+    // The match is full if the recordings overlap almost entirely and almost no block there differs.
+    private FingerprintMatch verify(int[] query, Recording reference, int offset) {
+        int[] frames = reference.frames();
+        int from = Math.max(0, -offset);
+        int to = Math.min(query.length, frames.length - offset);
+
+        int runStart = -1;
+        int runEnd = -1;
+        int bestStart = -1;
+        int bestEnd = -1;
+        double errorSum = 0;
+        int errorBlocks = 0;
+        double bestError = 0;
+        int matchedBlocks = 0;
+        int missedBlocks = 0;
+        for (int block = from; block < to; block += BLOCK_FRAMES) {
+            int length = Math.min(BLOCK_FRAMES, to - block);
+            double error = AudioFingerprinter.bitErrorRate(query, block, frames, block + offset, length);
+            if (Double.isNaN(error)) {
+                continue;
+            }
+            if (error <= fingerprintMaxBitErrorRate) {
+                matchedBlocks++;
+                if (runStart < 0) {
+                    runStart = block;
+                    errorSum = 0;
+                    errorBlocks = 0;
+                }
+                runEnd = block + length;
+                errorSum += error;
+                errorBlocks++;
+                if (runEnd - runStart > bestEnd - bestStart) {
+                    bestStart = runStart;
+                    bestEnd = runEnd;
+                    bestError = errorSum / errorBlocks;
+                }
+            } else {
+                missedBlocks++;
+                runStart = -1;
+            }
+        }
+        double frameSeconds = AudioFingerprinter.FRAME_SECONDS;
+        if (bestStart < 0 || (bestEnd - bestStart) * frameSeconds < fingerprintMinMatchSeconds) {
+            return null;
+        }
+
+        double startSeconds = bestStart * frameSeconds;
+        double endSeconds = bestEnd * frameSeconds;
+        double offsetSeconds = offset * frameSeconds;
+        int overlap = to - from;
+        if (overlap >= fingerprintFullMatchRatio * query.length && overlap >= fingerprintFullMatchRatio * frames.length
+                && missedBlocks <= (1 - fingerprintFullMatchRatio) * (matchedBlocks + missedBlocks)) {
+            return new FingerprintMatch(reference.taskId(), true, from * frameSeconds, to * frameSeconds, offsetSeconds, bestError,
+                    reference.transcript(), List.of(), reference.overlapSeconds());
+        }
+
+        // The longest run of consecutive reference chunks inside the match, moved onto the new recording's timeline
+        double queryDuration = query.length * frameSeconds;
+        List<TranscribedRange> best = List.of();
+        List<TranscribedRange> run = new ArrayList<>();
+        for (TranscribedRange range : reference.ranges()) {
+            double start = range.getStartSeconds() - offsetSeconds;
+            double end = range.getEndSeconds() - offsetSeconds;
+            boolean inside = start >= startSeconds - RANGE_TOLERANCE_SECONDS && end <= endSeconds + RANGE_TOLERANCE_SECONDS;
+            if (inside) {
+                run.add(new TranscribedRange(Math.max(0, start), Math.min(queryDuration, end), range.getText()));
+                if (reusedSeconds(run) > reusedSeconds(best)) {
+                    best = List.copyOf(run);
+                }
+            } else {
+                run.clear();
+            }
+        }
+        if (reusedSeconds(best) < fingerprintMinMatchSeconds) {
+            return null;
+        }
+        return new FingerprintMatch(reference.taskId(), false, startSeconds, endSeconds, offsetSeconds, bestError,
+                null, best, reference.overlapSeconds());
+    }
+
+    private static double reusedSeconds(List<TranscribedRange> ranges) {
+        return ranges.isEmpty() ? 0 : ranges.get(ranges.size() - 1).getEndSeconds() - ranges.get(0).getStartSeconds();
+    }
+
+    private void unindex(int id, Recording recording) {
+        int[] fingerprint = recording.frames();
+        Map<Integer, Postings> postings = postingsByUser.get(recording.username());
+        for (int frame = 0; frame < fingerprint.length; frame += INDEX_STRIDE) {
+            Postings list = fingerprint[frame] == 0 ? null : postings.get(fingerprint[frame]);
+            if (list != null && list.removeRecording(id) == 0) {
+                postings.remove(fingerprint[frame]);
+            }
+        }
+        if (postings.isEmpty()) {
+            postingsByUser.remove(recording.username());
+        }
+        indexedFrames -= fingerprint.length;
+    }
+
+    private record Pending(String username, int[] fingerprint) {
+    }
+
+    private record Recording(String taskId, String username, int[] frames, String transcript, List<TranscribedRange> ranges,
+                             double overlapSeconds) {
+    }
+
+    // Growable list of (recording id << 32 | frame) entries
+    private static final class Postings {
+        private long[] items = new long[2];
+        private int size;
+
+        void add(long posting) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = posting;
+        }
+
+        int removeRecording(int id) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if ((int) (items[i] >>> 32) != id) {
+                    items[kept++] = items[i];
+                }
+            }
+            size = kept;
+            return size;
+        }
+    }
+}
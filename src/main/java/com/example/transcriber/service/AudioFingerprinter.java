@@ -0,0 +1,175 @@
+package com.example.transcriber.service;
+
+/**
+ * Computes a compact acoustic fingerprint from mono 16-bit PCM at {@link #SAMPLE_RATE}, fed in any block sizes.
+ * Every {@link #FRAME_SECONDS} a 32-bit sub-fingerprint is taken from 33 log-spaced bands between 300 and
+ * 2000 Hz: a bit is set when the energy difference of two neighbouring bands grew since the previous frame.
+ * The signs of such differences survive re-encoding, resampling and remuxing, so the same recording gives
+ * nearly the same bits in any container; comparing aligned frames by bit error rate finds it again.
+ * Frames too quiet to carry a reliable pattern are 0 and are left out of matching.
+ */
+public final class AudioFingerprinter {
+
+    public static final int SAMPLE_RATE = 8000;
+    static final int FRAME_SIZE = 2048;
+    static final int HOP_SIZE = 512;
+    public static final double FRAME_SECONDS = (double) HOP_SIZE / SAMPLE_RATE;
+
+    private static final int BANDS = 33;
+    private static final double MIN_FREQUENCY = 300;
+    private static final double MAX_FREQUENCY = 2000;
+    // About -60 dBFS of mean power per sample, digital silence and hiss below it carry no pattern
+    private static final double SILENCE_POWER = 1e-6;
+
+    private static final double[] WINDOW = new double[FRAME_SIZE];
+    private static final int[] BAND_EDGES = new int[BANDS + 1];
+
+    static {
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            WINDOW[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (FRAME_SIZE - 1));
+        }
+        for (int b = 0; b <= BANDS; b++) {
+            double frequency = MIN_FREQUENCY * Math.pow(MAX_FREQUENCY / MIN_FREQUENCY, (double) b / BANDS);
+            BAND_EDGES[b] = (int) Math.round(frequency * FRAME_SIZE / SAMPLE_RATE);
+        }
+    }
+
+    private final double[] ring = new double[FRAME_SIZE];
+    private final double[] real = new double[FRAME_SIZE];
+    private final double[] imaginary = new double[FRAME_SIZE];
+    private double[] previousEnergies;
+    private long samples;
+    private int sinceLastFrame;
+    private int[] frames = new int[1024];
+    private int frameCount;
+    private int pendingByte = -1;
+
+    // Little-endian samples as ffmpeg writes them with -f s16le; a sample split between two calls is kept
+    public void accept(byte[] data, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        if (pendingByte >= 0 && i < end) {
+            acceptSample((short) (pendingByte | (data[i++] << 8)));
+            pendingByte = -1;
+        }
+        for (; i + 1 < end; i += 2) {
+            acceptSample((short) ((data[i] & 0xff) | (data[i + 1] << 8)));
+        }
+        if (i < end) {
+            pendingByte = data[i] & 0xff;
+        }
+    }
+
+    public void acceptSample(short sample) {
+        ring[(int) (samples % FRAME_SIZE)] = sample / 32768.0;
+        samples++;
+        sinceLastFrame++;
+        if (samples >= FRAME_SIZE && (samples == FRAME_SIZE || sinceLastFrame >= HOP_SIZE)) {
+            sinceLastFrame = 0;
+            addFrame();
+        }
+    }
+
+    public int[] finish() {
+        int[] result = new int[frameCount];
+        System.arraycopy(frames, 0, result, 0, frameCount);
+        return result;
+    }
+
+    private void addFrame() {
+        int start = (int) (samples % FRAME_SIZE);
+        double power = 0;
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            double value = ring[(start + i) % FRAME_SIZE];
+            power += value * value;
+            real[i] = value * WINDOW[i];
+            imaginary[i] = 0;
+        }
+        fft(real, imaginary);
+
+        double[] energies = new double[BANDS];
+        for (int b = 0; b < BANDS; b++) {
+            double energy = 0;
+            for (int k = BAND_EDGES[b]; k < Math.max(BAND_EDGES[b + 1], BAND_EDGES[b] + 1); k++) {
+                energy += real[k] * real[k] + imaginary[k] * imaginary[k];
+            }
+            energies[b] = energy;
+        }
+
+        int bits = 0;
+        if (previousEnergies != null && power / FRAME_SIZE > SILENCE_POWER) {
+            for (int b = 0; b < BANDS - 1; b++) {
+                double delta = (energies[b] - energies[b + 1]) - (previousEnergies[b] - previousEnergies[b + 1]);
+                if (delta > 0) {
+                    bits |= 1 << b;
+                }
+            }
+        }
+        previousEnergies = energies;
+
+        if (frameCount == frames.length) {
+            int[] grown = new int[frames.length * 2];
+            System.arraycopy(frames, 0, grown, 0, frameCount);
+            frames = grown;
+        }
+        frames[frameCount++] = bits;
+    }
+
+    // Share of differing bits over the aligned frames where both sides carry a pattern; NaN if there are none
+    public static double bitErrorRate(int[] a, int aFrom, int[] b, int bFrom, int length) {
+        long errors = 0;
+        int compared = 0;
+        for (int i = 0; i < length; i++) {
+            int x = a[aFrom + i];
+            int y = b[bFrom + i];
+            if (x == 0 || y == 0) {
+                continue;
+            }
+            errors += Integer.bitCount(x ^ y);
+            compared++;
+        }
+        return compared == 0 ? Double.NaN : errors / (32.0 * compared);
+    }
+
+    // In-place iterative radix-2 FFT
+    private static void fft(double[] re, double[] im) {
+        int n = re.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int length = 2; length <= n; length <<= 1) {
+            double angle = -2 * Math.PI / length;
+            double stepRe = Math.cos(angle);
+            double stepIm = Math.sin(angle);
+            for (int i = 0; i < n; i += length) {
+                double wRe = 1;
+                double wIm = 0;
+                for (int k = 0; k < length / 2; k++) {
+                    int u = i + k;
+                    int v = u + length / 2;
+                    double vRe = re[v] * wRe - im[v] * wIm;
+                    double vIm = re[v] * wIm + im[v] * wRe;
+                    re[v] = re[u] - vRe;
+                    im[v] = im[u] - vIm;
+                    re[u] += vRe;
+                    im[u] += vIm;
+                    double nextRe = wRe * stepRe - wIm * stepIm;
+                    wIm = wRe * stepIm + wIm * stepRe;
+                    wRe = nextRe;
+                }
+            }
+        }
+    }
+}
@@ -1,33 +1,44 @@
 package com.example.transcriber.service;
 
+import com.example.transcriber.config.EngineClientConfig;
+import com.example.transcriber.dto.FingerprintMatch;
 import com.example.transcriber.dto.IndexedText;
-import com.example.transcriber.dto.TranscriptionResponse;
+import com.example.transcriber.dto.JobEstimate;
+import com.example.transcriber.dto.MediaInfo;
+import com.example.transcriber.dto.SegmentInfo;
+import com.example.transcriber.dto.SpeechRegion;
+import com.example.transcriber.dto.TaskManifest;
+import com.example.transcriber.dto.TranscribedRange;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.http.*;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.function.Tuple2;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static com.example.transcriber.dto.IndexedText.getIndexFromFileName;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 
 @Service
@@ -35,75 +46,337 @@ import static com.example.transcriber.dto.IndexedText.getIndexFromFileName;
 @Slf4j
 public class AudioToTextService {
 
+    private static final double MIN_ENGINE_AUDIO_SECONDS = 0.1;
+
     private final WebClient webClient;
     private final WebSocketService webSocketService;
 
     private final StatusService statusService;
-    private final String openAiApiKey;
+    private final EnginePoolService enginePoolService;
     private final ObjectMapper objectMapper;
     private final FileProcessingService fileProcessingService;
+    private final CheckpointService checkpointService;
+    private final HedgingService hedgingService;
+    private final EngineDispatchService engineDispatchService;
+    private final EngineThroughputModel engineThroughputModel;
+    private final ChunkSizePlanner chunkSizePlanner;
+    private final JobMetricsService jobMetricsService;
+    private final TaskTimelineService taskTimelineService;
+    private final JobCostModel jobCostModel;
+    private final AudioFingerprintIndex audioFingerprintIndex;
+    private final Scheduler blockingScheduler;
+
+    @Value("${chunkStreamingEnabled:false}")
+    private boolean chunkStreamingEnabled;
+
+    // Seconds of audio shared by neighbouring chunks, 0 cuts them back to back; see TranscriptStitcher
+    @Value("${segmentOverlapSeconds:0}")
+    private double segmentOverlapSeconds;
 
 
     @Autowired
-    public AudioToTextService(WebClient webClient, WebSocketService webSocketService,
+    public AudioToTextService(@Qualifier(EngineClientConfig.ENGINE_WEB_CLIENT) WebClient webClient,
+                              WebSocketService webSocketService,
                               StatusService statusService,
-                              @Value("${OPENAI_API_KEY}") String openAiApiKey,
+                              EnginePoolService enginePoolService,
                               ObjectMapper objectMapper,
-                              FileProcessingService fileProcessingService) {
+                              FileProcessingService fileProcessingService,
+                              CheckpointService checkpointService,
+                              HedgingService hedgingService,
+                              EngineDispatchService engineDispatchService,
+                              EngineThroughputModel engineThroughputModel,
+                              ChunkSizePlanner chunkSizePlanner,
+                              JobMetricsService jobMetricsService,
+                              TaskTimelineService taskTimelineService,
+                              JobCostModel jobCostModel,
+                              AudioFingerprintIndex audioFingerprintIndex,
+                              Scheduler blockingScheduler) {
         this.webClient = webClient;
         this.webSocketService = webSocketService;
         this.statusService = statusService;
-        this.openAiApiKey = openAiApiKey;
+        this.enginePoolService = enginePoolService;
         this.objectMapper = objectMapper;
         this.fileProcessingService = fileProcessingService;
+        this.checkpointService = checkpointService;
+        this.hedgingService = hedgingService;
+        this.engineDispatchService = engineDispatchService;
+        this.engineThroughputModel = engineThroughputModel;
+        this.chunkSizePlanner = chunkSizePlanner;
+        this.jobMetricsService = jobMetricsService;
+        this.taskTimelineService = taskTimelineService;
+        this.jobCostModel = jobCostModel;
+        this.audioFingerprintIndex = audioFingerprintIndex;
+        this.blockingScheduler = blockingScheduler;
     }
 
     public Mono<String> convertSpeechToText(String fullFilePath, String taskId, String username) {
         log.info("Transcribing audio from file: {}", fullFilePath);
         Path filePath = Paths.get(fullFilePath);
-        return Mono.fromCallable(() -> Files.size(filePath))
-                .subscribeOn(Schedulers.boundedElastic()) // Using a scheduler for blocking operations
-                .flatMap(fileSizeInBytes -> {
-                    long maxSizeInBytes = 25 * 1024 * 1024; // 25 MB
+        return taskTimelineService.span(taskId, TaskTimelineService.STAGE, "probe",
+                        Mono.fromCallable(() -> Files.size(filePath))
+                                .zipWith(Mono.fromCallable(() -> fileProcessingService.probeMedia(fullFilePath)))
+                                .subscribeOn(blockingScheduler)) // Using a scheduler for blocking operations
+                .zipWith(checkpointService.loadManifest(filePath.getParent())
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty()))
+                .flatMap(tuple -> {
+                    long fileSizeInBytes = tuple.getT1().getT1();
+                    MediaInfo audioInfo = tuple.getT1().getT2();
+                    boolean alreadySplit = tuple.getT2().map(manifest -> !manifest.getSegments().isEmpty()).orElse(false);
+                    // Stripped audio no longer has the timeline of the fingerprinted source; the regions map it back
+                    List<SpeechRegion> speechRegions = tuple.getT2().map(TaskManifest::getSpeechRegions).orElse(null);
+                    boolean stripped = speechRegions != null;
+
+                    FingerprintMatch match = alreadySplit ? null : audioFingerprintIndex.lookup(taskId).orElse(null);
+                    if (match != null && match.isFull()) {
+                        return reuseTranscript(match, audioInfo.getDurationSeconds(), taskId, username);
+                    }
+                    if (match != null && (stripped || audioInfo.getDurationSeconds() <= 0)) {
+                        match = null;
+                    }
+
+                    int segmentLength = chunkSizePlanner.planSegmentLength(fileSizeInBytes, planningInfo(fullFilePath, audioInfo));
+                    JobEstimate estimate = jobCostModel.estimateTranscription(audioInfo.getDurationSeconds(), segmentLength);
+                    engineDispatchService.registerJob(taskId, estimate.getTranscriptionSeconds());
+                    Mono<Void> eta = jobCostModel.publishEstimate(taskId, username, estimate.getTranscriptionSeconds());
 
-                    if (fileSizeInBytes <= maxSizeInBytes) {
-                        return processSmallFile(filePath, taskId, username);
+                    if (match == null && !alreadySplit && fileSizeInBytes <= ChunkSizePlanner.MAX_ENGINE_FILE_BYTES
+                            && segmentLength >= audioInfo.getDurationSeconds()) {
+                        recordChunkPlan(taskId, segmentLength, 1);
+                        double duration = audioInfo.getDurationSeconds();
+                        return eta.then(processSmallFile(filePath, duration, taskId, username))
+                                .doOnNext(text -> audioFingerprintIndex.register(taskId, text,
+                                        List.of(originalRange(speechRegions, 0, duration, text)), 0));
                     } else {
-                        return processLargeFile(fullFilePath, filePath, taskId, username);
+                        return eta.then(processLargeFile(fullFilePath, filePath, audioInfo.getDurationSeconds(), segmentLength,
+                                        match, taskId, username))
+                                .flatMap(text -> rememberTranscript(filePath.getParent(), text, speechRegions, taskId).thenReturn(text));
                     }
                 })
                 .doOnNext(text -> log.info("Transcription completed for Task ID: {}", taskId))
+                .doFinally(signal -> {
+                    engineDispatchService.unregisterJob(taskId);
+                    audioFingerprintIndex.detach(taskId);
+                })
                 .onErrorResume(e -> {
                     log.error("Failed to convert audio from file: {}", fullFilePath, e);
-                    return webSocketService.sendErrorMessage(username, "Error converting audio file. Please try again.")
+                    return webSocketService.sendErrorMessage(username, taskId, "Error converting audio file. Please try again.")
                             .then(statusService.updateTaskStatus(taskId, "Error"))
                             .then(Mono.error(e));
                 });
     }
 
-    public Mono<String> processSmallFile(Path filePath, String taskId, String username) {
-        return sendFileToOpenAI(filePath, taskId, username)
-                .flatMap(jsonResponse -> Mono.fromCallable(() ->
-                                objectMapper.readValue(jsonResponse, TranscriptionResponse.class).getText())
-                        .onErrorMap(IOException.class, e -> new RuntimeException("Failed to parse response from OpenAI", e)))
+    public Mono<String> processSmallFile(Path filePath, double audioSeconds, String taskId, String username) {
+        return sendFileToOpenAI(filePath, audioSeconds, taskId, username);
+    }
+
+    // Transcribes one time range of the audio file, streamed from ffmpeg without a segment file
+    public Mono<String> processSegmentStream(String fullFilePath, SegmentInfo segment, String taskId, String username) {
+        String label = String.format("%s [%.1fs-%.1fs]", fullFilePath, segment.getStartSeconds(), segment.getEndSeconds());
+        return streamSegmentToOpenAI(fullFilePath, segment, label, taskId, username);
+    }
+
+
+    public Mono<String> processLargeFile(String fullFilePath, Path filePath, double durationSeconds,
+                                         int splitLengthInSeconds, String taskId, String username) {
+        return processLargeFile(fullFilePath, filePath, durationSeconds, splitLengthInSeconds, null, taskId, username);
+    }
+
+    // With a partial fingerprint match the matched chunks are checkpointed up front and only the rest is sent to the engine
+    private Mono<String> processLargeFile(String fullFilePath, Path filePath, double durationSeconds,
+                                          int splitLengthInSeconds, FingerprintMatch match, String taskId, String username) {
+        Path taskDirectory = filePath.getParent();
+        String tempDirPath = taskDirectory.toString();
+
+        return checkpointService.loadManifest(taskDirectory)
+                .defaultIfEmpty(new TaskManifest(taskId, username, fullFilePath))
+                .flatMap(manifest -> {
+                    if (!manifest.getSegments().isEmpty()) {
+                        log.info("Reusing segment plan of {} chunks for Task ID: {}", manifest.getSegments().size(), taskId);
+                        return Mono.just(manifest);
+                    }
+                    if (match != null) {
+                        return planReusedSegments(manifest, taskDirectory, durationSeconds, splitLengthInSeconds, match, taskId, username);
+                    }
+                    // The segment muxer cannot cut overlapping files, overlapping chunks are streamed as time ranges
+                    boolean timeRanges = streamsTimeRanges() && durationSeconds > 0;
+                    double overlapSeconds = timeRanges ? Math.min(segmentOverlapSeconds, splitLengthInSeconds / 2.0) : 0;
+                    Mono<List<SegmentInfo>> segments = timeRanges
+                            ? Mono.just(planTimeSegments(durationSeconds, splitLengthInSeconds, overlapSeconds))
+                            : taskTimelineService.span(taskId, TaskTimelineService.STAGE, "split",
+                                    splitIntoSegments(fullFilePath, tempDirPath, splitLengthInSeconds));
+                    return segments
+                            .flatMap(plannedSegments -> {
+                                manifest.setSegmentLengthSeconds(splitLengthInSeconds);
+                                manifest.setSegmentOverlapSeconds(overlapSeconds);
+                                manifest.setSegments(plannedSegments);
+                                return checkpointService.saveManifest(taskDirectory, manifest).thenReturn(manifest);
+                            });
+                })
+                .doOnNext(manifest -> recordChunkPlan(taskId, manifest.getSegmentLengthSeconds(), manifest.getSegments().size()))
+                .flatMap(manifest -> transcribeSegments(Flux.fromIterable(manifest.getSegments()),
+                        fullFilePath, taskDirectory, manifest.getSegmentOverlapSeconds(), taskId, username))
+                .doOnSuccess(text -> log.info("File splitting and transcription completed for Task ID: {}", taskId))
                 .onErrorResume(e -> {
-                    String errorMessage = "Error parsing response from OpenAI. Please try again.";
-                    log.error("Failed to parse response from OpenAI for file: {}", filePath, e);
-                    return webSocketService.sendErrorMessage(username, errorMessage)
+                    log.error("Error during file splitting and transcription for Task ID: {}", taskId, e);
+                    return webSocketService.sendErrorMessage(username, taskId, "Error processing large audio file. Please try again.")
                             .then(statusService.updateTaskStatus(taskId, "Error"))
                             .then(Mono.error(e));
                 });
     }
 
+    public Mono<String> transcribeSegments(Flux<SegmentInfo> segments, String fullFilePath, Path taskDirectory,
+                                           String taskId, String username) {
+        return transcribeSegments(segments, fullFilePath, taskDirectory, 0, taskId, username);
+    }
+
+    // Transcribes segments as they are emitted, reusing checkpointed chunks, and joins the texts in segment order
+    public Mono<String> transcribeSegments(Flux<SegmentInfo> segments, String fullFilePath, Path taskDirectory,
+                                           double overlapSeconds, String taskId, String username) {
+        return segments
+                .flatMap(segment -> {
+                    final int index = segment.getIndex();
+                    return taskTimelineService.span(taskId, TaskTimelineService.CHUNK, String.format("chunk %03d", index),
+                                    checkpointService.loadChunk(taskDirectory, index)
+                                            .switchIfEmpty(Mono.defer(() -> transcribeSegment(fullFilePath, taskDirectory, segment, taskId, username)
+                                                    .flatMap(text -> checkpointService.saveChunk(taskDirectory, index, text).thenReturn(text)))))
+                            .map(text -> new IndexedText(index, text));
+                })
+                .collectSortedList(Comparator.comparing(IndexedText::getIndex))
+                .map(sortedList -> TranscriptStitcher.stitch(sortedList.stream()
+                        .map(IndexedText::getText)
+                        .toList(), overlapSeconds));
+    }
+
+    // Segments without a file name are time ranges that are streamed from ffmpeg
+    private Mono<String> transcribeSegment(String fullFilePath, Path taskDirectory, SegmentInfo segment,
+                                           String taskId, String username) {
+        if (segment.getFileName() == null) {
+            log.debug("Streaming segment with index {}: {}s-{}s", segment.getIndex(), segment.getStartSeconds(), segment.getEndSeconds());
+            return processSegmentStream(fullFilePath, segment, taskId, username);
+        }
+        if (segment.getEndSeconds() - segment.getStartSeconds() < MIN_ENGINE_AUDIO_SECONDS) {
+            // The engine rejects audio this short; such a tail is left by the segmenter when the input ends just after a cut
+            log.debug("Skipping segment with index {} of {}s", segment.getIndex(), segment.getEndSeconds() - segment.getStartSeconds());
+            return Mono.just("");
+        }
+        Path path = taskDirectory.resolve(segment.getFileName());
+        log.debug("Processing split file with index {}: {}", segment.getIndex(), path);
+        return processSmallFile(path, segment.getEndSeconds() - segment.getStartSeconds(), taskId, username);
+    }
+
+    static List<SegmentInfo> planTimeSegments(double durationSeconds, int segmentLengthSeconds, double overlapSeconds) {
+        List<SegmentInfo> segments = new ArrayList<>();
+        planTimeSegments(segments, 0, durationSeconds, segmentLengthSeconds, overlapSeconds);
+        return segments;
+    }
+
+    // Appends equal segments for [from, to], each overlapping the next; the overlap is counted in the segment length,
+    // so no segment is longer than planned (overlapSeconds is at most half of it)
+    private static void planTimeSegments(List<SegmentInfo> segments, double from, double to, int segmentLengthSeconds,
+                                         double overlapSeconds) {
+        int count = (int) Math.max(1, Math.ceil((to - from - overlapSeconds) / (segmentLengthSeconds - overlapSeconds)));
+        double step = (to - from - overlapSeconds) / count;
+        for (int i = 0; i < count; i++) {
+            double start = from + i * step;
+            segments.add(new SegmentInfo(segments.size(), null, start, Math.min(to, start + step + overlapSeconds), 0));
+        }
+    }
+
+    // The reused chunks become segments of their own with a checkpointed transcript; the audio before and after
+    // them is planned as time ranges reaching into the reused part by the overlap, so the stitcher joins them
+    private Mono<TaskManifest> planReusedSegments(TaskManifest manifest, Path taskDirectory, double durationSeconds,
+                                                  int splitLengthInSeconds, FingerprintMatch match,
+                                                  String taskId, String username) {
+        List<TranscribedRange> reused = match.getReusedRanges();
+        double overlapSeconds = Math.min(segmentOverlapSeconds, splitLengthInSeconds / 2.0);
+        double reusedStart = reused.get(0).getStartSeconds();
+        double reusedEnd = reused.get(reused.size() - 1).getEndSeconds();
+
+        List<SegmentInfo> segments = new ArrayList<>();
+        if (reusedStart >= MIN_ENGINE_AUDIO_SECONDS) {
+            double end = Math.min(durationSeconds, reusedStart + Math.min(overlapSeconds, reusedStart / 2));
+            planTimeSegments(segments, 0, end, splitLengthInSeconds, Math.min(overlapSeconds, end / 2));
+        }
+        int firstReused = segments.size();
+        for (TranscribedRange range : reused) {
+            segments.add(new SegmentInfo(segments.size(), null, range.getStartSeconds(), range.getEndSeconds(), 0));
+        }
+        if (durationSeconds - reusedEnd >= MIN_ENGINE_AUDIO_SECONDS) {
+            double tail = durationSeconds - reusedEnd;
+            double start = Math.max(0, reusedEnd - Math.min(overlapSeconds, tail / 2));
+            planTimeSegments(segments, start, durationSeconds, splitLengthInSeconds, Math.min(overlapSeconds, (durationSeconds - start) / 2));
+        }
+
+        double reusedSeconds = reusedEnd - reusedStart;
+        jobMetricsService.update(taskId, m -> m.setReusedAudioSeconds(reusedSeconds));
+        manifest.setSegmentLengthSeconds(splitLengthInSeconds);
+        manifest.setSegmentOverlapSeconds(Math.max(overlapSeconds, match.getReferenceOverlapSeconds()));
+        manifest.setSegments(segments);
+        return webSocketService.sendMessage(username, taskId, String.format(Locale.ROOT,
+                        "STATUS: Reusing %.0fs of an earlier transcript of the same recording...", reusedSeconds))
+                .then(Flux.range(0, reused.size())
+                        .concatMap(i -> checkpointService.saveChunk(taskDirectory, firstReused + i, reused.get(i).getText()))
+                        .then())
+                .then(checkpointService.saveManifest(taskDirectory, manifest))
+                .thenReturn(manifest);
+    }
+
+    private Mono<String> reuseTranscript(FingerprintMatch match, double durationSeconds, String taskId, String username) {
+        recordChunkPlan(taskId, 0, 0);
+        jobMetricsService.update(taskId, m -> m.setReusedAudioSeconds(durationSeconds));
+        return webSocketService.sendMessage(username, taskId, "STATUS: Reusing the transcript of the same recording...")
+                .thenReturn(match.getTranscript());
+    }
+
+    // Indexes the fingerprint with the chunk transcripts, so later copies of this recording can reuse them
+    private Mono<Void> rememberTranscript(Path taskDirectory, String transcript, List<SpeechRegion> speechRegions,
+                                          String taskId) {
+        if (!audioFingerprintIndex.isFingerprintDedupeEnabled()) {
+            return Mono.empty();
+        }
+        return checkpointService.loadManifest(taskDirectory)
+                .flatMap(manifest -> Flux.fromIterable(manifest.getSegments())
+                        .concatMap(segment -> checkpointService.loadChunk(taskDirectory, segment.getIndex())
+                                .map(text -> originalRange(speechRegions, segment.getStartSeconds(), segment.getEndSeconds(), text)))
+                        .collectList()
+                        .doOnNext(ranges -> audioFingerprintIndex.register(taskId, transcript,
+                                ranges.size() == manifest.getSegments().size() ? ranges : List.of(),
+                                manifest.getSegmentOverlapSeconds())))
+                .onErrorResume(e -> {
+                    log.warn("Could not index the transcript of Task ID {}: {}", taskId, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    // The fingerprint is of the original audio; a chunk of stripped audio covers the silences cut out of it as well
+    private static TranscribedRange originalRange(List<SpeechRegion> speechRegions, double startSeconds, double endSeconds,
+                                                  String text) {
+        return new TranscribedRange(SilenceStripService.toOriginalSeconds(speechRegions, startSeconds),
+                SilenceStripService.toOriginalSeconds(speechRegions, endSeconds), text);
+    }
 
-    public Mono<String> processLargeFile(String fullFilePath, Path filePath, String taskId, String username) {
-        String tempDirPath = filePath.getParent().toString();
-        int splitLengthInSeconds = 20 * 60; // TODO 10 minutes можно ставить 20 минут
+    // Streamed segments that cannot be stream-copied are re-encoded, so their size follows the encoder bitrate
+    private MediaInfo planningInfo(String fullFilePath, MediaInfo audioInfo) {
+        if (!streamsTimeRanges() || fileProcessingService.canStreamCopy(fullFilePath)) {
+            return audioInfo;
+        }
+        return new MediaInfo(audioInfo.getFormatName(), audioInfo.getDurationSeconds(),
+                Math.max(audioInfo.getBitRate(), FileProcessingService.STREAM_TRANSCODE_BIT_RATE),
+                audioInfo.getAudioCodec(), audioInfo.getSampleRate(), audioInfo.getChannels());
+    }
 
-        return Mono.fromRunnable(() -> {
+    private boolean streamsTimeRanges() {
+        return chunkStreamingEnabled || segmentOverlapSeconds > 0;
+    }
+
+    private Mono<List<SegmentInfo>> splitIntoSegments(String fullFilePath, String tempDirPath, int splitLengthInSeconds) {
+        return Mono.fromCallable(() -> {
                     try {
-                        fileProcessingService.splitFile(fullFilePath, tempDirPath, splitLengthInSeconds);
-                        log.info("File splitting completed successfully.");
+                        List<SegmentInfo> segments = fileProcessingService.splitFile(fullFilePath, tempDirPath, splitLengthInSeconds);
+                        log.info("File splitting completed successfully: {} segments.", segments.size());
+                        return segments;
                     } catch (IOException | InterruptedException e) {
                         if (e instanceof InterruptedException) {
                             Thread.currentThread().interrupt(); // Restoring the interrupt status
@@ -111,70 +384,106 @@ public class AudioToTextService {
                         throw new RuntimeException("Error during file splitting", e);
                     }
                 })
-                .subscribeOn(Schedulers.boundedElastic())
-                .thenMany(Flux.defer(() ->
-                        // Using Flux.defer in combination with Flux.using to dynamically and lazily create a Flux from a list of files in the specified directory
-                        Flux.using(() -> Files.list(Paths.get(tempDirPath)),
-                                        paths -> Flux.fromStream(paths
-                                                .filter(path -> !Files.isDirectory(path) && !path.getFileName().toString().startsWith("file"))),
-                                        Stream::close) // Closing the Stream to avoid resource leaks
-                                .subscribeOn(Schedulers.boundedElastic()) // Blocking operation to perform file reading on the boundedElastic scheduler
-                ))
-                .flatMap(path -> {
-                    final int index;
-                    try {
-                        index = getIndexFromFileName(path);  // Получаем индекс файла заранее
-                    } catch (IllegalArgumentException e) {
-                        log.warn("Failed to extract index from filename: {}. Defaulting to 0.", path.getFileName(), e);
-                        return Mono.just(new IndexedText(0, ""));
-                    }
-                    log.debug("Processing split file with index {}: {}", index, path);
-                    return processSmallFile(path, taskId, username)
-                            .map(text -> new IndexedText(index, text)); // Используем полученный индекс
+                .subscribeOn(blockingScheduler);
+    }
+
+
+    public Mono<String> sendFileToOpenAI(Path filePath, double audioSeconds, String taskId, String username) {
+        log.info("Sending a file to OpenAI: {}", filePath);
+        return sendToOpenAI(() -> {
+            MultipartBodyBuilder bodyBuilder = new MultipartBodyBuilder();
+            bodyBuilder.part("file", new FileSystemResource(filePath.toFile()));
+            return bodyBuilder;
+        }, audioSeconds, filePath.toString(), taskId, username, this::parseText);
+    }
+
+    // Transcript segments with their times in the file, for audio that holds several recordings back to back
+    public Mono<List<TranscribedRange>> sendFileForSegments(Path filePath, double audioSeconds, String taskId, String username) {
+        log.info("Sending a file to OpenAI for timed segments: {}", filePath);
+        return sendToOpenAI(() -> {
+            MultipartBodyBuilder bodyBuilder = new MultipartBodyBuilder();
+            bodyBuilder.part("file", new FileSystemResource(filePath.toFile()));
+            bodyBuilder.part("response_format", "verbose_json");
+            return bodyBuilder;
+        }, audioSeconds, filePath.toString(), taskId, username,
+                body -> EngineResponseParser.parseSegments(body, objectMapper.getFactory()));
+    }
+
+    public Mono<String> streamSegmentToOpenAI(String fullFilePath, SegmentInfo segment, String label,
+                                              String taskId, String username) {
+        log.info("Streaming a segment to OpenAI: {}", label);
+        String format = fileProcessingService.getStreamFormat(fullFilePath);
+        double duration = segment.getEndSeconds() - segment.getStartSeconds();
+        return sendToOpenAI(() -> {
+            // Every attempt, including a hedged duplicate, gets its own ffmpeg process
+            MultipartBodyBuilder bodyBuilder = new MultipartBodyBuilder();
+            bodyBuilder.asyncPart("file",
+                            fileProcessingService.streamSegment(fullFilePath, segment.getStartSeconds(), duration),
+                            DataBuffer.class)
+                    .filename(String.format("segment%03d.%s", segment.getIndex(), format))
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM);
+            return bodyBuilder;
+        }, duration, label, taskId, username, this::parseText);
+    }
+
+    private <T> Mono<T> sendToOpenAI(Supplier<MultipartBodyBuilder> bodySupplier, double audioSeconds, String label,
+                                     String taskId, String username, Function<Flux<DataBuffer>, Mono<T>> responseParser) {
+        String spanName = label.substring(label.lastIndexOf('/') + 1);
+        // The dispatch slot is held by the original request; hedged duplicates are bounded by their own budget
+        return Mono.defer(() -> {
+                    long queuedAt = System.nanoTime();
+                    return engineDispatchService.dispatch(username, taskId, () -> {
+                        taskTimelineService.record(taskId, TaskTimelineService.WAIT, "engine slot " + spanName, queuedAt, System.nanoTime());
+                        return hedgingService.withHedging(taskId, audioSeconds, () -> taskTimelineService.span(taskId, TaskTimelineService.ENGINE, spanName,
+                                enginePoolService.execute(audioSeconds, endpoint -> requestTranscription(endpoint, bodySupplier.get(), responseParser))
+                                        .elapsed()
+                                        .doOnNext(result -> {
+                                            engineThroughputModel.observe(audioSeconds, result.getT1() / 1000.0);
+                                            jobCostModel.observeEngine(audioSeconds, result.getT1() / 1000.0);
+                                        })
+                                        .map(Tuple2::getT2)));
+                    });
                 })
-                .collectSortedList(Comparator.comparing(IndexedText::getIndex))
-                .map(sortedList -> sortedList.stream()
-                        .map(IndexedText::getText)
-                        .collect(Collectors.joining(" ")))
-                .doOnSuccess(text -> log.info("File splitting and transcription completed for Task ID: {}", taskId))
+                .doOnSuccess(response -> log.info("Successful audio file transcription: {}", label))
                 .onErrorResume(e -> {
-                    log.error("Error during file splitting and transcription for Task ID: {}", taskId, e);
-                    return webSocketService.sendErrorMessage(username, "Error processing large audio file. Please try again.")
+                    log.error("Error transcribing audio file from OpenAI: {}", label, e);
+                    return webSocketService.sendErrorMessage(username, taskId, "Error transcribing audio file from OpenAI. Please try again.")
                             .then(statusService.updateTaskStatus(taskId, "Error"))
                             .then(Mono.error(e));
                 });
     }
 
+    private void recordChunkPlan(String taskId, int segmentLengthSeconds, int segmentCount) {
+        jobMetricsService.update(taskId, m -> {
+            m.setSegmentLengthSeconds(segmentLengthSeconds);
+            m.setSegmentCount(segmentCount);
+        });
+    }
 
-    public Mono<String> sendFileToOpenAI(Path filePath, String taskId, String username) {
-        log.info("Sending a file to OpenAI: {}", filePath);
-        Resource fileResource = new FileSystemResource(filePath.toFile());
-        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-        body.add("file", fileResource);
-        body.add("model", "whisper-1");
+    // A single engine request without side effects, so that it can be duplicated by hedging and retried on another endpoint.
+    // Emits what the parser reads from the response as it streams in, by default the transcript text.
+    private <T> Mono<T> requestTranscription(EnginePoolService.Endpoint endpoint, MultipartBodyBuilder bodyBuilder,
+                                             Function<Flux<DataBuffer>, Mono<T>> responseParser) {
+        bodyBuilder.part("model", "whisper-1");
 
-        return webClient.post()
-                .uri("https://api.openai.com/v1/audio/transcriptions")
+        Flux<DataBuffer> body = webClient.post()
+                .uri(endpoint.getUrl())
                 .contentType(MediaType.MULTIPART_FORM_DATA)
-                .header(HttpHeaders.AUTHORIZATION, "Bearer " + openAiApiKey)
-                .body(BodyInserters.fromMultipartData(body))
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + endpoint.getApiKey())
+                .body(BodyInserters.fromMultipartData(bodyBuilder.build()))
                 .retrieve()
                 .onStatus(HttpStatusCode::isError, response -> {
-                    String errorMessage = "Failed to transcribe audio with status code: " + response.statusCode();
-                    log.error(errorMessage);
-
-                    return webSocketService.sendErrorMessage(username, "Error transcribing audio file from OpenAI. Please try again.")
-                            .then(statusService.updateTaskStatus(taskId, "Error"))
-                            .then(Mono.error(new RuntimeException(errorMessage)));
+                    log.error("Failed to transcribe audio with status code: {} from {}", response.statusCode(), endpoint.getUrl());
+                    // The status tells the engine pool whether the endpoint or the request is at fault
+                    return response.createException();
                 })
-                .bodyToMono(String.class)
-                .doOnSuccess(response -> log.info("Successful audio file transcription: {}", filePath))
-                .onErrorResume(e -> {
-                    log.error("Error transcribing audio file from OpenAI: {}", filePath, e);
-                    return webSocketService.sendErrorMessage(username, "Error transcribing audio file from OpenAI. Please try again.")
-                            .then(statusService.updateTaskStatus(taskId, "Error"))
-                            .then(Mono.error(e));
-                });
+                .bodyToFlux(DataBuffer.class);
+        return responseParser.apply(body)
+                .onErrorMap(e -> e instanceof IOException || e instanceof UncheckedIOException,
+                        e -> new RuntimeException("Failed to parse response from OpenAI", e));
     }
-}
 
+    private Mono<String> parseText(Flux<DataBuffer> body) {
+        return EngineResponseParser.parseText(body, objectMapper.getFactory());
+    }
+}
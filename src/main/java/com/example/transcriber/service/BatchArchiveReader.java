@@ -0,0 +1,230 @@
+package com.example.transcriber.service;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the regular files of a zip, tar or gzipped tar archive in one pass over a stream, so an upload is
+ * unpacked while it arrives. The format is told by the first bytes, not by the name. Tar is read by hand:
+ * ustar and GNU headers, long names and pax paths are enough for the archives clients send.
+ */
+final class BatchArchiveReader {
+
+    private static final int BLOCK = 512;
+
+    interface EntryConsumer {
+        // The stream holds the entry's content only during the call and must not be closed
+        void accept(String name, InputStream content) throws IOException;
+    }
+
+    private BatchArchiveReader() {
+    }
+
+    static void read(InputStream input, EntryConsumer consumer) throws IOException {
+        InputStream in = new BufferedInputStream(input, 64 * 1024);
+        byte[] head = peek(in, BLOCK);
+        if (head.length >= 4 && head[0] == 'P' && head[1] == 'K' && head[2] == 3 && head[3] == 4) {
+            readZip(in, consumer);
+        } else if (head.length >= 2 && (head[0] & 0xff) == 0x1f && (head[1] & 0xff) == 0x8b) {
+            InputStream tar = new BufferedInputStream(new GZIPInputStream(in, 64 * 1024), 64 * 1024);
+            if (!isTar(peek(tar, BLOCK))) {
+                throw new IOException("The gzip stream does not hold a tar archive");
+            }
+            readTar(tar, consumer);
+        } else if (isTar(head)) {
+            readTar(in, consumer);
+        } else {
+            throw new IOException("Not a zip or tar archive");
+        }
+    }
+
+    private static void readZip(InputStream in, EntryConsumer consumer) throws IOException {
+        ZipInputStream zip = new ZipInputStream(in, StandardCharsets.UTF_8);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (!entry.isDirectory()) {
+                consumer.accept(entry.getName(), new EntryStream(zip, -1));
+            }
+            zip.closeEntry();
+        }
+    }
+
+    private static void readTar(InputStream in, EntryConsumer consumer) throws IOException {
+        byte[] header = new byte[BLOCK];
+        String longName = null;
+        while (readBlock(in, header) && !isZero(header)) {
+            long size = parseSize(header);
+            byte type = header[156];
+            String name = longName != null ? longName : headerName(header);
+            longName = null;
+
+            EntryStream content = new EntryStream(in, size);
+            if (type == 'L') {
+                longName = trimNul(new String(content.readAllBytes(), StandardCharsets.UTF_8));
+            } else if (type == 'x') {
+                longName = paxPath(new String(content.readAllBytes(), StandardCharsets.UTF_8));
+            } else if (type == '0' || type == 0 || type == '7') {
+                consumer.accept(name, content);
+            }
+            content.skipRest();
+            skipFully(in, (BLOCK - size % BLOCK) % BLOCK);
+        }
+    }
+
+    private static boolean isTar(byte[] header) {
+        return header.length == BLOCK && new String(header, 257, 5, StandardCharsets.US_ASCII).equals("ustar");
+    }
+
+    // ustar splits long paths into a prefix and a name
+    private static String headerName(byte[] header) {
+        String name = field(header, 0, 100);
+        String prefix = field(header, 345, 155);
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    // Octal digits, or a big-endian binary number when the high bit is set (GNU, files over 8 GB)
+    private static long parseSize(byte[] header) throws IOException {
+        if ((header[124] & 0x80) != 0) {
+            long size = 0;
+            for (int i = 125; i < 136; i++) {
+                size = (size << 8) | (header[i] & 0xff);
+            }
+            return size;
+        }
+        String octal = field(header, 124, 12).trim();
+        try {
+            return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad tar entry size: " + octal);
+        }
+    }
+
+    // Records are "<length> <key>=<value>\n"; only the path is of interest
+    private static String paxPath(String records) {
+        String path = null;
+        for (String record : records.split("\n")) {
+            int space = record.indexOf(' ');
+            if (space > 0 && record.startsWith("path=", space + 1)) {
+                path = record.substring(space + 1 + "path=".length());
+            }
+        }
+        return path;
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        return trimNul(new String(header, offset, length, StandardCharsets.UTF_8));
+    }
+
+    private static String trimNul(String value) {
+        int end = value.indexOf('\0');
+        return end < 0 ? value : value.substring(0, end);
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] peek(InputStream in, int length) throws IOException {
+        in.mark(length);
+        byte[] head = in.readNBytes(length);
+        in.reset();
+        return head;
+    }
+
+    private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+        int read = in.readNBytes(block, 0, block.length);
+        if (read == 0) {
+            return false;
+        }
+        if (read < block.length) {
+            throw new IOException("Truncated tar archive");
+        }
+        return true;
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        if (length > 0 && in.readNBytes((int) length).length < length) {
+            throw new IOException("Truncated tar archive");
+        }
+    }
+
+    // The entry's bytes of the archive stream; closing it leaves the archive open.
+    // A negative size reads up to the end the underlying stream reports, as a zip entry does.
+    private static final class EntryStream extends FilterInputStream {
+        private final boolean bounded;
+        private long remaining;
+
+        private EntryStream(InputStream in, long size) {
+            super(in);
+            this.bounded = size >= 0;
+            this.remaining = bounded ? size : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read < 0) {
+                if (bounded) {
+                    throw new IOException("Truncated archive entry");
+                }
+                remaining = 0;
+                return -1;
+            }
+            if (bounded) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[8192];
+            long skipped = 0;
+            int read;
+            while (skipped < n && (read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) > 0) {
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void skipRest() throws IOException {
+            if (bounded) {
+                skip(remaining);
+            }
+        }
+    }
+}
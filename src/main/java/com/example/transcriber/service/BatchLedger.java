@@ -0,0 +1,73 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.BatchLedgerEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only progress log of a batch run, one JSON entry per line; the last entry of a file wins.
+ * Every entry is forced to disk before the next step, so after a crash the ledger shows which files
+ * are done and which were in progress. A torn last line is ignored.
+ */
+@Slf4j
+final class BatchLedger implements AutoCloseable {
+
+    private final ObjectMapper objectMapper;
+    private final FileChannel channel;
+    private final Map<String, BatchLedgerEntry> entries = new HashMap<>();
+
+    BatchLedger(Path ledgerFile, ObjectMapper objectMapper) throws IOException {
+        this.objectMapper = objectMapper;
+        Files.createDirectories(ledgerFile.getParent());
+        boolean tornTail = false;
+        if (Files.exists(ledgerFile)) {
+            String content = Files.readString(ledgerFile, StandardCharsets.UTF_8);
+            tornTail = !content.isEmpty() && !content.endsWith("\n");
+            for (String line : content.split("\n")) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    BatchLedgerEntry entry = objectMapper.readValue(line, BatchLedgerEntry.class);
+                    entries.put(entry.getPath(), entry);
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable ledger line in {}: {}", ledgerFile, line);
+                }
+            }
+        }
+        this.channel = FileChannel.open(ledgerFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (tornTail) {
+            channel.write(ByteBuffer.wrap("\n".getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    synchronized BatchLedgerEntry get(String path) {
+        return entries.get(path);
+    }
+
+    synchronized void append(BatchLedgerEntry entry) throws IOException {
+        entry.setRecordedAt(System.currentTimeMillis());
+        ByteBuffer buffer = ByteBuffer.wrap((objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        entries.put(entry.getPath(), entry);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
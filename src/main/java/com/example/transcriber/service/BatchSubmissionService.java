@@ -0,0 +1,553 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.config.TaskContextConfig;
+import com.example.transcriber.dto.BatchFileStatus;
+import com.example.transcriber.dto.BatchStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Transcribes many uploaded files, or the files of an uploaded zip or tar, as one batch. All files are probed
+ * up front; the short ones are laid back to back into combined engine requests (see {@link ClipPacker}) and
+ * the rest go through the usual pipeline, longest first, so one slow file does not hold back the end of the
+ * batch. Progress is published under the batch id, and all transcripts come back as one zip, streamed as
+ * the files finish.
+ */
+@Service
+@Slf4j
+public class BatchSubmissionService {
+
+    private static final String FILE_PREFIX = "file-";
+    private static final String STATUS_ENTRY = "batch-status.json";
+    // Upload buffers waiting for the archive reader; netty hands them over at up to 64 KB each
+    private static final int ARCHIVE_QUEUE_CHUNKS = 32;
+    private static final int PROBE_CONCURRENCY = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final TranscribingService transcribingService;
+    private final AudioToTextService audioToTextService;
+    private final FileProcessingService fileProcessingService;
+    private final TranscriptionSaveService transcriptionSaveService;
+    private final UploadService uploadService;
+    private final WebSocketService webSocketService;
+    private final StatusService statusService;
+    private final EngineDispatchService engineDispatchService;
+    private final JobCostModel jobCostModel;
+    private final TaskTimelineService taskTimelineService;
+    private final ObjectMapper objectMapper;
+    private final Scheduler blockingScheduler;
+
+    // Work units of one batch in flight at the same time, a combined request counting as one
+    @Value("${batchParallelism:2}")
+    private int batchParallelism;
+
+    @Value("${batchExtensions:mp3,m4a,wav,ogg,oga,opus,flac,aac,wma,mp4,m4v,mkv,mov,avi,webm,mpeg,mpg,3gp}")
+    private List<String> batchExtensions;
+
+    @Value("${batchMaxFiles:1000}")
+    private int batchMaxFiles;
+
+    // Files up to this long share combined engine requests, 0 sends every file on its own
+    @Value("${batchPackMaxClipSeconds:60}")
+    private double batchPackMaxClipSeconds;
+
+    // Audio in one combined request; at 48 kbps far below the engine's upload limit
+    @Value("${batchPackMaxSeconds:600}")
+    private double batchPackMaxSeconds;
+
+    // Silence between packed files, so the engine ends its segments there
+    @Value("${batchPackGapSeconds:2}")
+    private double batchPackGapSeconds;
+
+    // Finished batches are forgotten after this long; their directories go with the daily cleanup
+    @Value("${batchRetentionHours:24}")
+    private double batchRetentionHours;
+
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BatchSubmissionService(TranscribingService transcribingService, AudioToTextService audioToTextService,
+                                  FileProcessingService fileProcessingService,
+                                  TranscriptionSaveService transcriptionSaveService, UploadService uploadService,
+                                  WebSocketService webSocketService, StatusService statusService,
+                                  EngineDispatchService engineDispatchService, JobCostModel jobCostModel,
+                                  TaskTimelineService taskTimelineService, ObjectMapper objectMapper,
+                                  Scheduler blockingScheduler) {
+        this.transcribingService = transcribingService;
+        this.audioToTextService = audioToTextService;
+        this.fileProcessingService = fileProcessingService;
+        this.transcriptionSaveService = transcriptionSaveService;
+        this.uploadService = uploadService;
+        this.webSocketService = webSocketService;
+        this.statusService = statusService;
+        this.engineDispatchService = engineDispatchService;
+        this.jobCostModel = jobCostModel;
+        this.taskTimelineService = taskTimelineService;
+        this.objectMapper = objectMapper;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    // Every part is a media file, except parts named like an archive, which are unpacked into the batch
+    public Mono<BatchStatus> submitFiles(String username, Flux<FilePart> fileParts) {
+        return submit(username, batch -> fileParts
+                .concatMap(part -> isArchiveName(part.filename())
+                        ? readArchive(batch, part.content())
+                        : saveFile(batch, part.filename(), part.content()))
+                .then());
+    }
+
+    public Mono<BatchStatus> submitArchive(String username, Flux<DataBuffer> archive) {
+        return submit(username, batch -> readArchive(batch, archive));
+    }
+
+    public Optional<BatchStatus> getStatus(String batchId) {
+        return Optional.ofNullable(batches.get(batchId)).map(this::status);
+    }
+
+    // A zip of the transcripts in the order the files finish; the stream waits for files still being
+    // transcribed and ends with the batch status, which also lists the files that failed
+    public Optional<Flux<DataBuffer>> streamTranscripts(String batchId) {
+        return Optional.ofNullable(batches.get(batchId))
+                .map(this::writeTranscripts);
+    }
+
+    private Mono<BatchStatus> submit(String username, Function<Batch, Mono<Void>> upload) {
+        String batchId = UUID.randomUUID().toString();
+        forgetOldBatches();
+        return uploadService.createTaskDirectory(username + "-batch-" + batchId.substring(0, 8))
+                .flatMap(directory -> {
+                    Batch batch = new Batch(batchId, username, directory);
+                    batches.put(batchId, batch);
+                    return taskTimelineService.span(batchId, TaskTimelineService.STAGE, "upload", upload.apply(batch))
+                            .then(Mono.fromCallable(() -> start(batch)))
+                            .doOnError(e -> batches.remove(batchId));
+                });
+    }
+
+    private Mono<Void> saveFile(Batch batch, String fileName, Flux<DataBuffer> content) {
+        return Mono.fromCallable(() -> batch.add(fileName))
+                .flatMap(file -> DataBufferUtils.write(content, file.path));
+    }
+
+    // The upload is queued in chunks for a reader on a blocking thread, so entries are written out as they arrive
+    private Mono<Void> readArchive(Batch batch, Flux<DataBuffer> content) {
+        return Mono.using(
+                () -> new ChunkQueueInputStream(ARCHIVE_QUEUE_CHUNKS),
+                in -> Mono.when(
+                        content.publishOn(blockingScheduler)
+                                .doOnNext(buffer -> {
+                                    byte[] chunk = new byte[buffer.readableByteCount()];
+                                    buffer.read(chunk);
+                                    DataBufferUtils.release(buffer);
+                                    try {
+                                        in.write(chunk);
+                                    } catch (IOException e) {
+                                        throw new UncheckedIOException(e);
+                                    }
+                                })
+                                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                                .then(Mono.fromCallable(() -> {
+                                    in.complete();
+                                    return true;
+                                }))
+                                // The reader stops on a broken upload instead of taking it for the end of the archive
+                                .doOnError(in::fail)
+                                .then(),
+                        Mono.fromRunnable(() -> {
+                                    try {
+                                        BatchArchiveReader.read(in, (name, entry) -> {
+                                            if (isMediaEntry(name)) {
+                                                Files.copy(entry, batch.add(name).path);
+                                            } else {
+                                                log.debug("Skipping {} in the archive of batch {}", name, batch.id);
+                                            }
+                                        });
+                                    } catch (IOException e) {
+                                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cannot read the archive: " + e.getMessage(), e);
+                                    } finally {
+                                        // A zip's central directory is not read; the rest of the upload is dropped as it arrives
+                                        in.close();
+                                    }
+                                })
+                                .subscribeOn(blockingScheduler)),
+                ChunkQueueInputStream::close);
+    }
+
+    private BatchStatus start(Batch batch) {
+        if (batch.files.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The batch has no media files");
+        }
+        log.info("Batch {} of {}: {} files", batch.id, batch.username, batch.files.size());
+        process(batch)
+                .transform(task -> taskTimelineService.span(batch.id, TaskTimelineService.TASK, "batch", task))
+                .onErrorResume(e -> {
+                    log.error("Batch {} failed", batch.id, e);
+                    return complete(batch);
+                })
+                .contextWrite(TaskContextConfig.taskContext(batch.id))
+                .subscribe();
+        return status(batch);
+    }
+
+    private Mono<Void> process(Batch batch) {
+        return Mono.when(webSocketService.sendMessage(batch.username, batch.id, "STATUS: Probing " + batch.files.size() + " files..."),
+                        statusService.updateTaskStatus(batch.id, "Probing"))
+                .then(taskTimelineService.span(batch.id, TaskTimelineService.STAGE, "probe", probeFiles(batch)))
+                .thenMany(Flux.defer(() -> {
+                    batch.state = BatchStatus.State.TRANSCRIBING;
+                    return Flux.fromIterable(planWork(batch));
+                }))
+                .flatMap(work -> work, batchParallelism)
+                .then(Mono.defer(() -> complete(batch)));
+    }
+
+    // One pass over the whole batch before anything is scheduled, so the plan sees every duration
+    private Mono<Void> probeFiles(Batch batch) {
+        return Flux.fromIterable(batch.files)
+                .flatMap(file -> Mono.fromCallable(() -> fileProcessingService.probeMedia(file.path.toString()))
+                                .subscribeOn(blockingScheduler)
+                                .flatMap(mediaInfo -> {
+                                    file.durationSeconds = mediaInfo.getDurationSeconds();
+                                    return mediaInfo.hasAudio() ? Mono.<Void>empty() : failed(batch, file, "No audio track");
+                                })
+                                .onErrorResume(e -> failed(batch, file, e.getMessage())),
+                        PROBE_CONCURRENCY)
+                .then();
+    }
+
+    // Combined requests for the short files and one task per long file, the longest work first
+    private List<Mono<Void>> planWork(Batch batch) {
+        List<BatchFile> clips = new ArrayList<>();
+        List<Map.Entry<Double, Mono<Void>>> work = new ArrayList<>();
+        for (BatchFile file : batch.files) {
+            if (file.state != BatchFileStatus.State.QUEUED) {
+                continue;
+            }
+            if (file.durationSeconds > 0 && file.durationSeconds <= batchPackMaxClipSeconds) {
+                clips.add(file);
+            } else {
+                work.add(Map.entry(file.durationSeconds, transcribeFile(batch, file)));
+            }
+        }
+
+        double[] durations = clips.stream().mapToDouble(file -> file.durationSeconds).toArray();
+        List<List<Integer>> packs = ClipPacker.pack(durations, batchPackGapSeconds, batchPackMaxSeconds);
+        for (int number = 0; number < packs.size(); number++) {
+            List<BatchFile> packed = packs.get(number).stream().map(clips::get).toList();
+            double seconds = packed.stream().mapToDouble(file -> ClipPacker.slotSeconds(file.durationSeconds, batchPackGapSeconds)).sum();
+            work.add(Map.entry(seconds, transcribePack(batch, packed, number)));
+        }
+        log.info("Batch {}: {} files in {} combined requests, {} files on their own", batch.id, clips.size(), packs.size(),
+                work.size() - packs.size());
+
+        work.sort(Map.Entry.<Double, Mono<Void>>comparingByKey().reversed());
+        return work.stream().map(Map.Entry::getValue).toList();
+    }
+
+    // The files' audio back to back in one request; if it fails, the files are transcribed one by one
+    private Mono<Void> transcribePack(Batch batch, List<BatchFile> files, int number) {
+        String taskId = UUID.randomUUID().toString();
+        List<Double> slots = files.stream().map(file -> ClipPacker.slotSeconds(file.durationSeconds, batchPackGapSeconds)).toList();
+        double[] offsets = ClipPacker.slotOffsets(slots);
+        double seconds = offsets[offsets.length - 1];
+        Path packPath = batch.directory.resolve(String.format("pack%03d.mp3", number));
+
+        return Mono.defer(() -> {
+                    files.forEach(file -> {
+                        file.state = BatchFileStatus.State.TRANSCRIBING;
+                        file.packed = true;
+                        file.taskId = UUID.randomUUID().toString();
+                    });
+                    engineDispatchService.registerJob(taskId, jobCostModel.estimateTranscription(seconds, (int) Math.ceil(seconds))
+                            .getTranscriptionSeconds());
+                    return taskTimelineService.span(taskId, TaskTimelineService.STAGE, "pack",
+                            Mono.fromCallable(() -> {
+                                        fileProcessingService.concatenateClips(files.stream().map(file -> file.path.toString()).toList(),
+                                                slots, packPath.toString());
+                                        return packPath;
+                                    })
+                                    .subscribeOn(blockingScheduler));
+                })
+                .flatMap(path -> taskTimelineService.span(taskId, TaskTimelineService.STAGE, "transcribe",
+                        audioToTextService.sendFileForSegments(path, seconds, taskId, batch.username)))
+                .flatMap(segments -> {
+                    batch.packedRequests.incrementAndGet();
+                    List<String> texts = ClipPacker.split(segments, offsets, batchPackGapSeconds);
+                    long crossed = texts.stream().filter(Objects::isNull).count();
+                    log.info("Batch {}: {} files transcribed in one request of {}s, {} of them again on their own",
+                            batch.id, files.size(), Math.round(seconds), crossed);
+                    return Flux.range(0, files.size())
+                            .concatMap(i -> texts.get(i) != null
+                                    ? saveTranscript(batch, files.get(i), texts.get(i))
+                                    : transcribeUnpacked(batch, files.get(i)))
+                            .then();
+                })
+                .onErrorResume(e -> {
+                    log.warn("Combined request of batch {} failed, transcribing its {} files one by one", batch.id, files.size(), e);
+                    return Flux.fromIterable(files)
+                            .filter(file -> file.state == BatchFileStatus.State.TRANSCRIBING)
+                            .concatMap(file -> transcribeUnpacked(batch, file))
+                            .then();
+                })
+                .transform(task -> taskTimelineService.span(taskId, TaskTimelineService.TASK, "batch pack", task))
+                .doFinally(signal -> engineDispatchService.unregisterJob(taskId))
+                .contextWrite(TaskContextConfig.taskContext(taskId));
+    }
+
+    private Mono<Void> transcribeUnpacked(Batch batch, BatchFile file) {
+        file.packed = false;
+        return transcribeFile(batch, file);
+    }
+
+    private Mono<Void> saveTranscript(Batch batch, BatchFile file, String text) {
+        return transcriptionSaveService.saveTranscriptionToDoc(text, file.path.getFileName().toString(), file.taskId,
+                        batch.username, batch.directory)
+                .flatMap(docFileName -> done(batch, file, batch.directory.resolve(docFileName)));
+    }
+
+    // The usual pipeline in a task directory of its own, as for an upload
+    private Mono<Void> transcribeFile(Batch batch, BatchFile file) {
+        String taskId = UUID.randomUUID().toString();
+        return Mono.defer(() -> {
+                    file.state = BatchFileStatus.State.TRANSCRIBING;
+                    file.taskId = taskId;
+                    return uploadService.createTaskDirectory(batch.username + "-batch-" + batch.id.substring(0, 8) + "-" + file.index);
+                })
+                .flatMap(taskDirectory -> Mono.fromCallable(() -> Files.move(file.path, taskDirectory.resolve(file.path.getFileName())))
+                        .subscribeOn(blockingScheduler))
+                .flatMap(targetPath -> {
+                    file.path = targetPath;
+                    return transcribingService.createTranscriptionDoc(targetPath.toString(), taskId, batch.username)
+                            .then(Mono.defer(() -> done(batch, file,
+                                    targetPath.resolveSibling(TranscriptionSaveService.docFileName(targetPath.getFileName().toString())))));
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to transcribe {} of batch {}", file.name, batch.id, e);
+                    return failed(batch, file, e.getMessage());
+                })
+                .transform(task -> taskTimelineService.span(taskId, TaskTimelineService.TASK, "transcription", task))
+                .doFinally(signal -> jobCostModel.finishJob(taskId))
+                .contextWrite(TaskContextConfig.taskContext(taskId));
+    }
+
+    private Mono<Void> done(Batch batch, BatchFile file, Path transcript) {
+        file.transcript = transcript;
+        file.state = BatchFileStatus.State.DONE;
+        batch.transcribed.incrementAndGet();
+        batch.finished(file);
+        return publishProgress(batch);
+    }
+
+    private Mono<Void> failed(Batch batch, BatchFile file, String error) {
+        file.error = error;
+        file.state = BatchFileStatus.State.FAILED;
+        batch.failed.incrementAndGet();
+        batch.finished(file);
+        return publishProgress(batch);
+    }
+
+    private Mono<Void> publishProgress(Batch batch) {
+        String progress = (batch.transcribed.get() + batch.failed.get()) + "/" + batch.files.size();
+        return Mono.when(webSocketService.sendMessage(batch.username, batch.id, "STATUS: " + progress + " files transcribed"),
+                statusService.updateTaskStatus(batch.id, "Transcribing " + progress));
+    }
+
+    private Mono<Void> complete(Batch batch) {
+        return Mono.defer(() -> {
+            batch.complete();
+            log.info("Batch {} completed: {} transcribed, {} failed, {} combined requests", batch.id,
+                    batch.transcribed.get(), batch.failed.get(), batch.packedRequests.get());
+            return Mono.when(webSocketService.sendMessage(batch.username, batch.id, "DOWNLOAD:" + transcriptsUrl(batch)),
+                    statusService.updateTaskStatus(batch.id, "Completed"));
+        });
+    }
+
+    // Every entry is compressed and sent as soon as its file finishes; waiting for the next one holds no thread
+    private Flux<DataBuffer> writeTranscripts(Batch batch) {
+        return Flux.using(TranscriptZip::new,
+                zip -> batch.finishedFiles.asFlux()
+                        .filter(file -> file.state == BatchFileStatus.State.DONE)
+                        .concatMap(file -> Mono.fromCallable(() ->
+                                        zip.entry(TranscriptionSaveService.docFileName(file.name), Files.readAllBytes(file.transcript)))
+                                .subscribeOn(blockingScheduler))
+                        .concatWith(Mono.fromCallable(() -> zip.finish(STATUS_ENTRY,
+                                objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(status(batch))))),
+                TranscriptZip::close);
+    }
+
+    private BatchStatus status(Batch batch) {
+        List<BatchFileStatus> files = batch.files.stream()
+                .map(file -> new BatchFileStatus(file.name, file.state, file.durationSeconds, file.packed, file.taskId, file.error))
+                .toList();
+        double audioSeconds = batch.files.stream().mapToDouble(file -> file.durationSeconds).sum();
+        return new BatchStatus(batch.id, batch.username, batch.state, files.size(), batch.transcribed.get(), batch.failed.get(),
+                batch.packedRequests.get(), audioSeconds, transcriptsUrl(batch), files);
+    }
+
+    private static String transcriptsUrl(Batch batch) {
+        return "/batches/" + batch.id + "/transcripts";
+    }
+
+    private void forgetOldBatches() {
+        long threshold = System.currentTimeMillis() - Math.round(batchRetentionHours * 3_600_000);
+        batches.values().removeIf(batch -> batch.completedAt > 0 && batch.completedAt < threshold);
+    }
+
+    private static boolean isArchiveName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        return name.endsWith(".zip") || name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+
+    // Directories and files that archivers add (__MACOSX, .DS_Store) are left out, as is anything not media
+    private boolean isMediaEntry(String name) {
+        for (String part : name.split("[/\\\\]")) {
+            if (part.startsWith(".") || part.equals("__MACOSX")) {
+                return false;
+            }
+        }
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && batchExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private final class Batch {
+        private final String id;
+        private final String username;
+        private final Path directory;
+        private final List<BatchFile> files = new CopyOnWriteArrayList<>();
+        private final Set<String> names = new HashSet<>();
+        private final AtomicInteger transcribed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger packedRequests = new AtomicInteger();
+        // Replayed to every download of the transcripts, so a download started early gets all of them
+        private final Sinks.Many<BatchFile> finishedFiles = Sinks.many().replay().all();
+        private volatile BatchStatus.State state = BatchStatus.State.PROBING;
+        private volatile long completedAt;
+
+        private Batch(String id, String username, Path directory) {
+            this.id = id;
+            this.username = username;
+            this.directory = directory;
+        }
+
+        // Stored under its index, so neither the client's name nor a path inside an archive decides where it lands
+        private synchronized BatchFile add(String name) {
+            if (files.size() >= batchMaxFiles) {
+                throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "A batch holds at most " + batchMaxFiles + " files");
+            }
+            int index = files.size();
+            String fileName = Paths.get(name.replace('\\', '/')).getFileName().toString();
+            BatchFile file = new BatchFile(index, uniqueName(name, index), directory.resolve(FILE_PREFIX + index + "-" + fileName));
+            files.add(file);
+            return file;
+        }
+
+        // The relative path without "." or ".." parts; a name already taken gets the index
+        private String uniqueName(String name, int index) {
+            StringJoiner path = new StringJoiner("/");
+            for (String part : name.split("[/\\\\]")) {
+                if (!part.isEmpty() && !part.equals(".") && !part.equals("..")) {
+                    path.add(part);
+                }
+            }
+            String unique = path.length() > 0 ? path.toString() : "file";
+            if (!names.add(unique)) {
+                int dot = unique.lastIndexOf('.');
+                unique = dot > unique.lastIndexOf('/') + 1
+                        ? unique.substring(0, dot) + "-" + index + unique.substring(dot)
+                        : unique + "-" + index;
+                names.add(unique);
+            }
+            return unique;
+        }
+
+        private synchronized void finished(BatchFile file) {
+            finishedFiles.tryEmitNext(file);
+        }
+
+        private synchronized void complete() {
+            state = BatchStatus.State.COMPLETED;
+            completedAt = System.currentTimeMillis();
+            finishedFiles.tryEmitComplete();
+        }
+    }
+
+    // A zip written into a buffer that is handed out after every entry; the stream keeps the offsets itself
+    private static final class TranscriptZip {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final ZipOutputStream zip = new ZipOutputStream(bytes);
+
+        private DataBuffer entry(String name, byte[] content) throws IOException {
+            zip.putNextEntry(new ZipEntry(name));
+            zip.write(content);
+            zip.closeEntry();
+            return take();
+        }
+
+        // The last entry and the central directory
+        private DataBuffer finish(String name, byte[] content) throws IOException {
+            zip.putNextEntry(new ZipEntry(name));
+            zip.write(content);
+            zip.closeEntry();
+            zip.finish();
+            return take();
+        }
+
+        private DataBuffer take() {
+            DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(bytes.toByteArray());
+            bytes.reset();
+            return buffer;
+        }
+
+        private void close() {
+            try {
+                zip.close();
+            } catch (IOException e) {
+                // only memory behind it
+            }
+        }
+    }
+
+    private static final class BatchFile {
+        private final int index;
+        private final String name;
+        private volatile Path path;
+        private volatile double durationSeconds;
+        private volatile BatchFileStatus.State state = BatchFileStatus.State.QUEUED;
+        private volatile boolean packed;
+        private volatile String taskId;
+        private volatile String error;
+        private volatile Path transcript;
+
+        private BatchFile(int index, String name, Path path) {
+            this.index = index;
+            this.name = name;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.config.TaskContextConfig;
+import com.example.transcriber.dto.BatchLedgerEntry;
+import com.example.transcriber.dto.BatchReport;
+import com.example.transcriber.dto.JobMetrics;
+import com.example.transcriber.dto.SegmentInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.stream.Stream;
+
+/**
+ * Transcribes every media file of a directory tree, or of a hot folder as files arrive, with the same
+ * pipeline as an upload. Each file gets its own task directory holding a link to the source; the transcript
+ * is copied next to the mirrored path in the output directory and progress goes to a ledger there, so
+ * a rerun skips finished files and resumes interrupted ones from their chunk checkpoints.
+ */
+@Service
+@Slf4j
+public class BatchTranscriptionService {
+
+    public static final String BATCH_USERNAME = "batch";
+    private static final String LEDGER_FILE = "batch-ledger.jsonl";
+    private static final String REPORT_FILE = "batch-report.json";
+
+    private final TranscribingService transcribingService;
+    private final UploadService uploadService;
+    private final CheckpointService checkpointService;
+    private final JobMetricsService jobMetricsService;
+    private final JobCostModel jobCostModel;
+    private final TaskTimelineService taskTimelineService;
+    private final ObjectMapper objectMapper;
+    private final Scheduler blockingScheduler;
+
+    // Files transcribed at the same time; every one of them competes for the same engine slots
+    @Value("${batchParallelism:2}")
+    private int batchParallelism;
+
+    @Value("${batchExtensions:mp3,m4a,wav,ogg,oga,opus,flac,aac,wma,mp4,m4v,mkv,mov,avi,webm,mpeg,mpg,3gp}")
+    private List<String> batchExtensions;
+
+    // A file in the hot folder is picked up once its size has not changed for this long
+    @Value("${batchSettleSeconds:5}")
+    private int batchSettleSeconds;
+
+    @Value("${batchRetryFailed:true}")
+    private boolean batchRetryFailed;
+
+    @Value("${batchKeepTaskFiles:false}")
+    private boolean batchKeepTaskFiles;
+
+    @Autowired
+    public BatchTranscriptionService(TranscribingService transcribingService, UploadService uploadService,
+                                     CheckpointService checkpointService, JobMetricsService jobMetricsService,
+                                     JobCostModel jobCostModel, TaskTimelineService taskTimelineService,
+                                     ObjectMapper objectMapper, Scheduler blockingScheduler) {
+        this.transcribingService = transcribingService;
+        this.uploadService = uploadService;
+        this.checkpointService = checkpointService;
+        this.jobMetricsService = jobMetricsService;
+        this.jobCostModel = jobCostModel;
+        this.taskTimelineService = taskTimelineService;
+        this.objectMapper = objectMapper;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    public Mono<BatchReport> transcribeDirectory(Path inputDirectory, Path outputDirectory) {
+        return Mono.using(
+                () -> new BatchRun(inputDirectory, outputDirectory),
+                run -> Mono.fromCallable(() -> listMediaFiles(run))
+                        .subscribeOn(blockingScheduler)
+                        .doOnNext(files -> log.info("Found {} media files in {}", files.size(), inputDirectory))
+                        .flatMapMany(Flux::fromIterable)
+                        .filter(run.inFlight::add)
+                        .flatMap(file -> transcribeFile(run, file), batchParallelism)
+                        .then(writeReport(run)),
+                BatchRun::close);
+    }
+
+    // Runs until cancelled; a report is written every time the queue has drained
+    public Flux<BatchReport> watchDirectory(Path inputDirectory, Path outputDirectory) {
+        return Flux.using(
+                () -> new BatchRun(inputDirectory, outputDirectory),
+                run -> watchFiles(run)
+                        .flatMap(file -> transcribeFile(run, file)
+                                .then(Mono.defer(() -> run.inFlight.isEmpty() ? writeReport(run) : Mono.empty())),
+                                batchParallelism),
+                BatchRun::close);
+    }
+
+    private Mono<Void> transcribeFile(BatchRun run, Path file) {
+        String relativePath = run.input.relativize(file).toString();
+        return Mono.fromCallable(() -> {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    return ledgerEntry(relativePath, attributes.size(), attributes.lastModifiedTime().toMillis());
+                })
+                .subscribeOn(blockingScheduler)
+                .flatMap(version -> {
+                    BatchLedgerEntry previous = run.ledger.get(relativePath);
+                    if (isFinished(run, previous, version)) {
+                        run.skipped.incrementAndGet();
+                        log.debug("Skipping {}, already {}", relativePath, previous.getStatus());
+                        return Mono.empty();
+                    }
+                    boolean interrupted = previous != null && previous.getStatus() == BatchLedgerEntry.Status.IN_PROGRESS
+                            && sameVersion(previous, version) && previous.getTaskDirectory() != null;
+                    String taskId = interrupted ? previous.getTaskId() : UUID.randomUUID().toString();
+                    version.setTaskId(taskId);
+                    long startNanos = run.started();
+
+                    Mono<Path> transcription = interrupted
+                            ? resume(run, file, version, Paths.get(previous.getTaskDirectory()))
+                            : start(run, file, version);
+                    return transcription
+                            .flatMap(taskDirectory -> finish(run, file, version, taskDirectory, startNanos))
+                            .onErrorResume(e -> failed(run, version, e, startNanos))
+                            .transform(task -> taskTimelineService.span(taskId, TaskTimelineService.TASK, "batch", task))
+                            .doFinally(signal -> jobCostModel.finishJob(taskId))
+                            .contextWrite(TaskContextConfig.taskContext(taskId));
+                })
+                .onErrorResume(e -> {
+                    // The file vanished or cannot be read; it is picked up again if it comes back
+                    log.warn("Cannot read {}: {}", file, e.getMessage());
+                    return Mono.empty();
+                })
+                // Before the completion travels on, so the watcher sees the queue drained
+                .doOnTerminate(() -> run.inFlight.remove(file))
+                .doOnCancel(() -> run.inFlight.remove(file));
+    }
+
+    private Mono<Path> start(BatchRun run, Path file, BatchLedgerEntry version) {
+        String taskId = version.getTaskId();
+        return uploadService.createTaskDirectory(BATCH_USERNAME + "-" + taskId.substring(0, 8))
+                .flatMap(taskDirectory -> Mono.fromCallable(() -> {
+                            Path targetPath = taskDirectory.resolve("file-" + file.getFileName());
+                            linkOrCopy(file, targetPath);
+                            BatchLedgerEntry entry = copyOf(version, BatchLedgerEntry.Status.IN_PROGRESS);
+                            entry.setTaskDirectory(taskDirectory.toString());
+                            run.ledger.append(entry);
+                            return targetPath;
+                        })
+                        .subscribeOn(blockingScheduler)
+                        .doOnNext(targetPath -> log.info("Transcribing {} as Task ID {}", version.getPath(), taskId))
+                        .flatMap(targetPath -> transcribingService.createTranscriptionDoc(targetPath.toString(), taskId, BATCH_USERNAME))
+                        .thenReturn(taskDirectory));
+    }
+
+    // Continues from the checkpoints of the previous run; starts over if they are gone or the task had failed
+    private Mono<Path> resume(BatchRun run, Path file, BatchLedgerEntry version, Path taskDirectory) {
+        return checkpointService.loadManifest(taskDirectory)
+                .onErrorResume(e -> Mono.empty())
+                .filter(manifest -> !manifest.isFailed())
+                .flatMap(manifest -> {
+                    log.info("Resuming {} as Task ID {}", version.getPath(), version.getTaskId());
+                    return (manifest.isCompleted() ? Mono.<Void>empty() : transcribingService.resumeTranscription(manifest))
+                            .thenReturn(taskDirectory);
+                })
+                .switchIfEmpty(Mono.defer(() -> start(run, file, version)));
+    }
+
+    private Mono<Void> finish(BatchRun run, Path file, BatchLedgerEntry version, Path taskDirectory, long startNanos) {
+        return audioSeconds(version.getTaskId(), taskDirectory)
+                .flatMap(audioSeconds -> Mono.fromRunnable(() -> {
+                            try {
+                                Path transcript = taskDirectory.resolve(TranscriptionSaveService.docFileName("file-" + file.getFileName()));
+                                Path outputPath = outputPath(run, file);
+                                Files.createDirectories(outputPath.getParent());
+                                Files.copy(transcript, outputPath, StandardCopyOption.REPLACE_EXISTING);
+
+                                double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+                                BatchLedgerEntry entry = copyOf(version, BatchLedgerEntry.Status.DONE);
+                                entry.setOutputPath(run.output.relativize(outputPath).toString());
+                                entry.setAudioSeconds(audioSeconds);
+                                entry.setElapsedSeconds(elapsedSeconds);
+                                run.ledger.append(entry);
+                                run.finished(audioSeconds);
+                                log.info("Transcribed {}: {} min of audio in {}s", version.getPath(),
+                                        Math.round(audioSeconds / 60), Math.round(elapsedSeconds));
+
+                                if (!batchKeepTaskFiles) {
+                                    deleteTree(taskDirectory);
+                                }
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        })
+                        .subscribeOn(blockingScheduler))
+                .then();
+    }
+
+    private Mono<Void> failed(BatchRun run, BatchLedgerEntry version, Throwable error, long startNanos) {
+        log.error("Failed to transcribe {}", version.getPath(), error);
+        return Mono.<Void>fromRunnable(() -> {
+                    run.failed.incrementAndGet();
+                    run.lastEndNanos.set(System.nanoTime());
+                    BatchLedgerEntry entry = copyOf(version, BatchLedgerEntry.Status.FAILED);
+                    entry.setElapsedSeconds((System.nanoTime() - startNanos) / 1e9);
+                    entry.setError(error.getMessage());
+                    try {
+                        run.ledger.append(entry);
+                    } catch (IOException e) {
+                        log.error("Cannot record the failure of {} in the ledger", version.getPath(), e);
+                    }
+                })
+                .subscribeOn(blockingScheduler);
+    }
+
+    // The probed duration of the source; a resumed task may not have been probed in this run
+    private Mono<Double> audioSeconds(String taskId, Path taskDirectory) {
+        return Mono.justOrEmpty(jobMetricsService.getMetrics(taskId))
+                .map(JobMetrics::getMediaDurationSeconds)
+                .filter(seconds -> seconds > 0)
+                .switchIfEmpty(checkpointService.loadManifest(taskDirectory)
+                        .map(manifest -> manifest.getSegments().stream().mapToDouble(SegmentInfo::getEndSeconds).max().orElse(0)))
+                .onErrorResume(e -> Mono.empty())
+                .defaultIfEmpty(0.0);
+    }
+
+    private Mono<BatchReport> writeReport(BatchRun run) {
+        return Mono.fromCallable(() -> {
+                    BatchReport report = run.report();
+                    objectMapper.writerWithDefaultPrettyPrinter().writeValue(run.output.resolve(REPORT_FILE).toFile(), report);
+                    log.info("Batch: {} transcribed, {} skipped, {} failed; {} audio hours in {} hours, {} audio-hours per hour",
+                            report.getTranscribed(), report.getSkipped(), report.getFailed(),
+                            String.format("%.2f", report.getAudioHours()), String.format("%.2f", report.getWallHours()),
+                            String.format("%.1f", report.getAudioHoursPerHour()));
+                    return report;
+                })
+                .subscribeOn(blockingScheduler);
+    }
+
+    // Watches every directory of the tree; files already there are candidates from the start.
+    // A candidate is emitted once its size has settled, so files still being copied in are not read half-way.
+    private Flux<Path> watchFiles(BatchRun run) {
+        return Flux.<Path>create(sink -> {
+                    try (WatchService watchService = run.input.getFileSystem().newWatchService()) {
+                        Map<Path, long[]> candidates = new HashMap<>(); // size, millis of the last change
+                        registerTree(run, watchService, run.input, candidates);
+                        log.info("Watching {} for new media files", run.input);
+                        while (!sink.isCancelled()) {
+                            WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
+                            if (key != null) {
+                                collectEvents(run, watchService, key, candidates);
+                            }
+                            emitSettled(run, candidates, sink);
+                        }
+                    } catch (IOException e) {
+                        sink.error(e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        sink.complete();
+                    }
+                }, FluxSink.OverflowStrategy.BUFFER)
+                .subscribeOn(blockingScheduler);
+    }
+
+    private void collectEvents(BatchRun run, WatchService watchService, WatchKey key, Map<Path, long[]> candidates)
+            throws IOException {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                registerTree(run, watchService, run.input, candidates);
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            if (Files.isDirectory(child) && !isExcludedDirectory(run, child)) {
+                registerTree(run, watchService, child, candidates);
+            } else if (isMediaFile(run, child)) {
+                candidates.put(child, new long[]{-1, System.currentTimeMillis()});
+            }
+        }
+        key.reset();
+    }
+
+    private void emitSettled(BatchRun run, Map<Path, long[]> candidates, FluxSink<Path> sink) {
+        for (Path settled : takeSettled(candidates, System.currentTimeMillis(), batchSettleSeconds * 1000L)) {
+            if (run.inFlight.add(settled)) {
+                sink.next(settled);
+            }
+        }
+    }
+
+    // Removes and returns the candidates whose size has not changed for settleMillis; a file that is gone is dropped
+    static List<Path> takeSettled(Map<Path, long[]> candidates, long now, long settleMillis) {
+        List<Path> settled = new ArrayList<>();
+        Iterator<Map.Entry<Path, long[]>> iterator = candidates.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, long[]> candidate = iterator.next();
+            long[] state = candidate.getValue();
+            long size;
+            try {
+                size = Files.size(candidate.getKey());
+            } catch (IOException e) {
+                iterator.remove(); // deleted again
+                continue;
+            }
+            if (size != state[0]) {
+                state[0] = size;
+                state[1] = now;
+            } else if (now - state[1] >= settleMillis) {
+                iterator.remove();
+                settled.add(candidate.getKey());
+            }
+        }
+        return settled;
+    }
+
+    private void registerTree(BatchRun run, WatchService watchService, Path root, Map<Path, long[]> candidates)
+            throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isDirectory(path)) {
+                    if (!isExcludedDirectory(run, path)) {
+                        path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    }
+                } else if (isMediaFile(run, path)) {
+                    candidates.putIfAbsent(path, new long[]{Files.size(path), 0});
+                }
+            }
+        }
+    }
+
+    private List<Path> listMediaFiles(BatchRun run) throws IOException {
+        try (Stream<Path> paths = Files.walk(run.input)) {
+            return paths.filter(path -> isMediaFile(run, path)).sorted().toList();
+        }
+    }
+
+    private boolean isMediaFile(BatchRun run, Path path) {
+        if (!Files.isRegularFile(path) || path.startsWith(run.output)) {
+            return false;
+        }
+        for (Path parent = path; parent != null && !parent.equals(run.input); parent = parent.getParent()) {
+            if (parent.getFileName().toString().startsWith(".")) {
+                return false;
+            }
+        }
+        String fileName = path.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 && batchExtensions.contains(fileName.substring(dot + 1).toLowerCase());
+    }
+
+    private boolean isExcludedDirectory(BatchRun run, Path directory) {
+        return directory.startsWith(run.output)
+                || (!directory.equals(run.input) && directory.getFileName().toString().startsWith("."));
+    }
+
+    private boolean isFinished(BatchRun run, BatchLedgerEntry previous, BatchLedgerEntry version) {
+        if (previous == null || !sameVersion(previous, version)) {
+            return false;
+        }
+        if (previous.getStatus() == BatchLedgerEntry.Status.DONE) {
+            return previous.getOutputPath() != null && Files.exists(run.output.resolve(previous.getOutputPath()));
+        }
+        return previous.getStatus() == BatchLedgerEntry.Status.FAILED && !batchRetryFailed;
+    }
+
+    private static boolean sameVersion(BatchLedgerEntry previous, BatchLedgerEntry version) {
+        return previous.getSizeBytes() == version.getSizeBytes() && previous.getLastModified() == version.getLastModified();
+    }
+
+    // <output>/<same relative directory>/<name>_transcription.doc
+    private static Path outputPath(BatchRun run, Path file) {
+        return run.output.resolve(run.input.relativize(file))
+                .resolveSibling(TranscriptionSaveService.docFileName(file.getFileName().toString()));
+    }
+
+    private static BatchLedgerEntry ledgerEntry(String path, long sizeBytes, long lastModified) {
+        BatchLedgerEntry entry = new BatchLedgerEntry();
+        entry.setPath(path);
+        entry.setSizeBytes(sizeBytes);
+        entry.setLastModified(lastModified);
+        return entry;
+    }
+
+    private static BatchLedgerEntry copyOf(BatchLedgerEntry version, BatchLedgerEntry.Status status) {
+        BatchLedgerEntry entry = ledgerEntry(version.getPath(), version.getSizeBytes(), version.getLastModified());
+        entry.setTaskId(version.getTaskId());
+        entry.setStatus(status);
+        return entry;
+    }
+
+    // A link avoids copying large sources; the task directory is deleted afterwards without touching the source
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        try {
+            Files.createSymbolicLink(target, source.toAbsolutePath());
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteTree(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private final class BatchRun implements AutoCloseable {
+        private final Path input;
+        private final Path output;
+        private final BatchLedger ledger;
+        // Files queued or being transcribed, so the watcher does not hand out the same file twice
+        private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger transcribed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final DoubleAdder audioSeconds = new DoubleAdder();
+        private final AtomicLong firstStartNanos = new AtomicLong();
+        private final AtomicLong lastEndNanos = new AtomicLong();
+
+        private BatchRun(Path input, Path output) throws IOException {
+            this.input = input.toAbsolutePath().normalize();
+            this.output = output.toAbsolutePath().normalize();
+            this.ledger = new BatchLedger(this.output.resolve(LEDGER_FILE), objectMapper);
+        }
+
+        private long started() {
+            long now = System.nanoTime();
+            firstStartNanos.compareAndSet(0, now);
+            return now;
+        }
+
+        private void finished(double seconds) {
+            transcribed.incrementAndGet();
+            audioSeconds.add(seconds);
+            lastEndNanos.set(System.nanoTime());
+        }
+
+        private BatchReport report() {
+            double audioHours = audioSeconds.sum() / 3600;
+            double wallHours = firstStartNanos.get() == 0 ? 0 : Math.max(0, lastEndNanos.get() - firstStartNanos.get()) / 3.6e12;
+            return new BatchReport(transcribed.get(), skipped.get(), failed.get(), audioHours, wallHours,
+                    wallHours > 0 ? audioHours / wallHours : 0);
+        }
+
+        @Override
+        public void close() {
+            try {
+                ledger.close();
+            } catch (IOException e) {
+                log.warn("Error closing the batch ledger", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.TaskManifest;
+import com.example.transcriber.exception.MediaProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Persists the task manifest and every chunk transcript inside the task directory,
+ * so that a task interrupted by a restart can be resumed without redoing finished chunks.
+ */
+@Service
+@Slf4j
+public class CheckpointService {
+
+    private static final String CHECKPOINT_DIR = "checkpoints";
+    private static final String MANIFEST_FILE = "manifest.json";
+
+    private final ObjectMapper objectMapper;
+    private final Scheduler blockingScheduler;
+
+    @Value("${tempDirPath}")
+    private String tempDirPath;
+
+    private volatile boolean shuttingDown;
+
+    @Autowired
+    public CheckpointService(ObjectMapper objectMapper, Scheduler blockingScheduler) {
+        this.objectMapper = objectMapper;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    public Mono<Void> saveManifest(Path taskDirectory, TaskManifest manifest) {
+        return Mono.fromRunnable(() -> {
+                    try {
+                        writeDurably(checkpointDirectory(taskDirectory).resolve(MANIFEST_FILE),
+                                objectMapper.writeValueAsBytes(manifest));
+                        log.debug("Saved manifest for Task ID {}: {} segments, completed={}",
+                                manifest.getTaskId(), manifest.getSegments().size(), manifest.isCompleted());
+                    } catch (IOException e) {
+                        throw new RuntimeException("Error saving manifest for Task ID: " + manifest.getTaskId(), e);
+                    }
+                })
+                .subscribeOn(blockingScheduler)
+                .then();
+    }
+
+    public Mono<TaskManifest> loadManifest(Path taskDirectory) {
+        return Mono.fromCallable(() -> readManifest(checkpointDirectory(taskDirectory).resolve(MANIFEST_FILE)))
+                .subscribeOn(blockingScheduler);
+    }
+
+    public Mono<Void> markCompleted(Path taskDirectory) {
+        return loadManifest(taskDirectory)
+                .flatMap(manifest -> {
+                    manifest.setCompleted(true);
+                    return saveManifest(taskDirectory, manifest);
+                });
+    }
+
+    public Mono<Void> markFailed(Path taskDirectory) {
+        return loadManifest(taskDirectory)
+                .flatMap(manifest -> {
+                    manifest.setFailed(true);
+                    return saveManifest(taskDirectory, manifest);
+                });
+    }
+
+    // Errors while the server stops (a disposed client, a rejected task, a killed ffmpeg) say nothing about the task
+    @EventListener(ContextClosedEvent.class)
+    void onShutdown() {
+        shuttingDown = true;
+    }
+
+    // Only a task that would fail the same way again is marked failed, anything else is resumed after a restart
+    public Mono<Void> markFailedIfPermanent(Path taskDirectory, Throwable error) {
+        if (shuttingDown || !isPermanentFailure(error)) {
+            log.info("Task in {} stays resumable after: {}", taskDirectory, error.getMessage());
+            return Mono.empty();
+        }
+        return markFailed(taskDirectory);
+    }
+
+    // ffmpeg rejecting the input or the engine rejecting the request; timeouts and rate limits pass with time
+    static boolean isPermanentFailure(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof MediaProcessingException mediaError) {
+                return !mediaError.isStoppedBySignal();
+            }
+            if (e instanceof WebClientResponseException responseError) {
+                return isRejected(responseError.getStatusCode());
+            }
+            if (e instanceof ResponseStatusException statusError) {
+                return isRejected(statusError.getStatusCode());
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRejected(HttpStatusCode status) {
+        return status.is4xxClientError() && status.value() != 408 && status.value() != 429;
+    }
+
+    public Mono<String> loadChunk(Path taskDirectory, int index) {
+        return Mono.fromCallable(() -> {
+                    Path chunkPath = chunkPath(taskDirectory, index);
+                    if (!Files.exists(chunkPath)) {
+                        return null;
+                    }
+                    log.info("Reusing checkpointed transcript for chunk {}: {}", index, chunkPath);
+                    return Files.readString(chunkPath, StandardCharsets.UTF_8);
+                })
+                .subscribeOn(blockingScheduler);
+    }
+
+    public Mono<Void> saveChunk(Path taskDirectory, int index, String text) {
+        return Mono.fromRunnable(() -> {
+                    try {
+                        writeDurably(chunkPath(taskDirectory, index), text.getBytes(StandardCharsets.UTF_8));
+                        log.debug("Checkpointed transcript of chunk {} in {}", index, taskDirectory);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Error saving checkpoint for chunk " + index, e);
+                    }
+                })
+                .subscribeOn(blockingScheduler)
+                .then();
+    }
+
+    // Drops the chunk transcripts of an abandoned segment plan, so a different plan cannot pick them up by index
+    public Mono<Void> clearChunks(Path taskDirectory) {
+        return Mono.fromRunnable(() -> {
+                    Path checkpointDirectory = checkpointDirectory(taskDirectory);
+                    if (!Files.exists(checkpointDirectory)) {
+                        return;
+                    }
+                    try (Stream<Path> files = Files.list(checkpointDirectory)) {
+                        for (Path chunk : files.filter(path -> path.getFileName().toString().startsWith("chunk-")).toList()) {
+                            Files.deleteIfExists(chunk);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException("Error clearing checkpoints in " + taskDirectory, e);
+                    }
+                })
+                .subscribeOn(blockingScheduler)
+                .then();
+    }
+
+    // Scans every task directory for a manifest that has not been marked as completed
+    public Mono<List<TaskManifest>> findUnfinishedTasks() {
+        return Mono.fromCallable(() -> {
+                    Path baseDir = Paths.get(tempDirPath);
+                    List<TaskManifest> unfinished = new ArrayList<>();
+                    if (!Files.exists(baseDir)) {
+                        return unfinished;
+                    }
+                    try (Stream<Path> directories = Files.list(baseDir)) {
+                        for (Path directory : (Iterable<Path>) directories.filter(Files::isDirectory)::iterator) {
+                            Path manifestPath = checkpointDirectory(directory).resolve(MANIFEST_FILE);
+                            if (!Files.exists(manifestPath)) {
+                                continue;
+                            }
+                            try {
+                                TaskManifest manifest = readManifest(manifestPath);
+                                if (!manifest.isCompleted() && !manifest.isFailed()) {
+                                    unfinished.add(manifest);
+                                }
+                            } catch (IOException e) {
+                                log.warn("Skipping unreadable manifest: {}", manifestPath, e);
+                            }
+                        }
+                    }
+                    return unfinished;
+                })
+                .subscribeOn(blockingScheduler);
+    }
+
+    private TaskManifest readManifest(Path manifestPath) throws IOException {
+        if (!Files.exists(manifestPath)) {
+            return null;
+        }
+        return objectMapper.readValue(manifestPath.toFile(), TaskManifest.class);
+    }
+
+    private Path checkpointDirectory(Path taskDirectory) {
+        return taskDirectory.resolve(CHECKPOINT_DIR);
+    }
+
+    private Path chunkPath(Path taskDirectory, int index) {
+        return checkpointDirectory(taskDirectory).resolve(String.format("chunk-%03d.txt", index));
+    }
+
+    // Writes to a temporary file, forces it to disk and atomically renames it, so a crash never leaves a torn file
+    private void writeDurably(Path target, byte[] data) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tempFile = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
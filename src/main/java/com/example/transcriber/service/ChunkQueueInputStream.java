@@ -0,0 +1,116 @@
+package com.example.transcriber.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An input stream fed with chunks from another thread through a bounded queue, so a blocking reader can
+ * consume a reactive upload. Unlike a piped stream it does not care which thread writes or whether that
+ * thread is still alive, which matters when the writer runs on a pool of short-lived virtual threads.
+ * A full queue holds the writer back; once the reader closes the stream, further chunks are dropped.
+ */
+final class ChunkQueueInputStream extends InputStream {
+
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks;
+    private byte[] current;
+    private int position;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    ChunkQueueInputStream(int capacity) {
+        this.chunks = new ArrayBlockingQueue<>(capacity);
+    }
+
+    // Writer side
+    void write(byte[] chunk) throws IOException {
+        if (chunk.length > 0) {
+            put(chunk);
+        }
+    }
+
+    void complete() throws IOException {
+        put(END);
+    }
+
+    // The reader gets the failure once it has read what came before it
+    void fail(Throwable error) {
+        failure = error instanceof IOException io ? io : new IOException(error.getMessage(), error);
+        try {
+            put(END);
+        } catch (IOException e) {
+            closed = true;
+        }
+    }
+
+    private void put(byte[] chunk) throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            chunks.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing a chunk");
+        }
+    }
+
+    // Reader side
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int read = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // Frees a writer waiting on a full queue
+        chunks.clear();
+    }
+
+    private boolean fill() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (current == null || (current != END && position == current.length)) {
+            try {
+                current = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a chunk");
+            }
+            position = 0;
+        }
+        if (current == END) {
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        return true;
+    }
+}
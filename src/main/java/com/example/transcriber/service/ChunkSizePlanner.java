@@ -0,0 +1,79 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.MediaInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Chooses the segment length that minimises the predicted completion time of a job,
+ * given the engine latency model, the free dispatch slots and the engine's upload size limit.
+ */
+@Service
+@Slf4j
+public class ChunkSizePlanner {
+
+    public static final long MAX_ENGINE_FILE_BYTES = 25 * 1024 * 1024; // 25 MB
+    private static final double SIZE_SAFETY_FACTOR = 0.9; // container overhead and bitrate peaks
+    private static final int DEFAULT_SEGMENT_SECONDS = 20 * 60;
+
+    private final EngineThroughputModel engineThroughputModel;
+    private final EngineDispatchService engineDispatchService;
+
+    @Value("${minChunkSeconds:60}")
+    private int minChunkSeconds;
+
+    @Value("${maxChunksPerJob:64}")
+    private int maxChunksPerJob;
+
+    @Autowired
+    public ChunkSizePlanner(EngineThroughputModel engineThroughputModel, EngineDispatchService engineDispatchService) {
+        this.engineThroughputModel = engineThroughputModel;
+        this.engineDispatchService = engineDispatchService;
+    }
+
+    // Returns the segment length in seconds; a value >= the duration means the file goes out in one request
+    public int planSegmentLength(long fileSizeInBytes, MediaInfo audioInfo) {
+        double duration = audioInfo.getDurationSeconds();
+        if (duration <= 0) {
+            log.warn("Unknown audio duration, using the default segment length");
+            return DEFAULT_SEGMENT_SECONDS;
+        }
+
+        double bytesPerSecond = audioInfo.getBitRate() > 0 ? audioInfo.getBitRate() / 8.0 : fileSizeInBytes / duration;
+        int freeSlots = Math.max(1, engineDispatchService.getFreeSlots());
+        int segmentLength = planSegmentLength(duration, bytesPerSecond, freeSlots);
+        int chunks = (int) Math.ceil(duration / segmentLength);
+        log.info("Planned {} chunks of {}s for {}s of audio ({} free slots, predicted {}s)",
+                chunks, segmentLength, Math.round(duration), freeSlots,
+                Math.round(predictCompletionSeconds(duration, chunks, freeSlots)));
+        return segmentLength;
+    }
+
+    // The same choice without side effects, also used to estimate jobs whose audio does not exist yet
+    public int planSegmentLength(double duration, double bytesPerSecond, int freeSlots) {
+        if (duration <= 0) {
+            return DEFAULT_SEGMENT_SECONDS;
+        }
+        double maxSegmentSeconds = MAX_ENGINE_FILE_BYTES * SIZE_SAFETY_FACTOR / bytesPerSecond;
+        int minChunks = (int) Math.max(1, Math.ceil(duration / maxSegmentSeconds));
+        int maxChunks = (int) Math.max(minChunks, Math.min(maxChunksPerJob, Math.floor(duration / minChunkSeconds)));
+
+        int bestChunks = minChunks;
+        double bestTime = Double.MAX_VALUE;
+        for (int chunks = minChunks; chunks <= maxChunks; chunks++) {
+            double predicted = predictCompletionSeconds(duration, chunks, freeSlots);
+            if (predicted < bestTime) {
+                bestTime = predicted;
+                bestChunks = chunks;
+            }
+        }
+        return (int) Math.ceil(duration / bestChunks);
+    }
+
+    public double predictCompletionSeconds(double duration, int chunks, int freeSlots) {
+        int waves = (int) Math.ceil((double) chunks / freeSlots);
+        return waves * engineThroughputModel.predictLatencySeconds(duration / chunks);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.TranscribedRange;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Plans combined engine requests for short clips and splits the transcript of one back per clip. Every clip
+ * gets a slot of its own length plus a gap of silence, so a slot starts at a known offset of the combined
+ * audio and the engine closes its segments between clips; a segment belongs to the slot holding its middle.
+ * A segment the engine ran on across a gap holds words of two clips that cannot be told apart by time.
+ */
+final class ClipPacker {
+
+    private ClipPacker() {
+    }
+
+    // First fit, longest clips first, so the packs come out as few and as full as possible; a pack keeps the batch order
+    static List<List<Integer>> pack(double[] durations, double gapSeconds, double maxPackSeconds) {
+        List<Integer> byLength = IntStream.range(0, durations.length).boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> durations[i]).reversed())
+                .toList();
+        List<List<Integer>> packs = new ArrayList<>();
+        List<Double> filled = new ArrayList<>();
+        for (int clip : byLength) {
+            double slot = slotSeconds(durations[clip], gapSeconds);
+            int target = 0;
+            while (target < packs.size() && filled.get(target) + slot > maxPackSeconds) {
+                target++;
+            }
+            if (target == packs.size()) {
+                packs.add(new ArrayList<>());
+                filled.add(0.0);
+            }
+            packs.get(target).add(clip);
+            filled.set(target, filled.get(target) + slot);
+        }
+        packs.forEach(pack -> pack.sort(Comparator.naturalOrder()));
+        packs.sort(Comparator.comparing(pack -> pack.get(0)));
+        return packs;
+    }
+
+    // Rounded to milliseconds, so ffmpeg cuts the slots exactly where the offsets say
+    static double slotSeconds(double durationSeconds, double gapSeconds) {
+        return Math.round((durationSeconds + gapSeconds) * 1000) / 1000.0;
+    }
+
+    // Start of every slot in the combined audio, plus the end of the last one
+    static double[] slotOffsets(List<Double> slots) {
+        double[] offsets = new double[slots.size() + 1];
+        for (int i = 0; i < slots.size(); i++) {
+            offsets[i + 1] = offsets[i] + slots.get(i);
+        }
+        return offsets;
+    }
+
+    // The text of every slot, empty where nothing was said and null where a segment runs across the slot's edge,
+    // so that clip has to be transcribed on its own
+    static List<String> split(List<TranscribedRange> segments, double[] offsets, double gapSeconds) {
+        List<List<String>> texts = new ArrayList<>();
+        boolean[] crossed = new boolean[offsets.length - 1];
+        for (int i = 0; i < offsets.length - 1; i++) {
+            texts.add(new ArrayList<>());
+        }
+        for (TranscribedRange segment : segments) {
+            double middle = (segment.getStartSeconds() + segment.getEndSeconds()) / 2;
+            int slot = 0;
+            while (slot < texts.size() - 1 && middle >= offsets[slot + 1]) {
+                slot++;
+            }
+            // The speech of a clip ends a gap before the next slot, whose speech starts right at its offset
+            for (int edge = 1; edge < offsets.length - 1; edge++) {
+                if (segment.getStartSeconds() < offsets[edge] - gapSeconds && segment.getEndSeconds() > offsets[edge]) {
+                    crossed[edge - 1] = true;
+                    crossed[edge] = true;
+                }
+            }
+            String text = segment.getText().trim();
+            if (!text.isEmpty()) {
+                texts.get(slot).add(text);
+            }
+        }
+        return IntStream.range(0, texts.size())
+                .mapToObj(i -> crossed[i] ? null : texts.get(i).stream().collect(Collectors.joining(" ")))
+                .toList();
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.UserWaitStats;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of engine requests in flight across all tasks and decides which queued request
+ * goes next. Users are served round-robin in proportion to the weight of their tier (stride scheduling),
+ * and within one user the request belonging to the shortest job, by predicted transcription time, goes first.
+ * A user's queue is dropped once it holds neither queued nor running requests, so the usernames clients send
+ * do not pile up.
+ */
+@Service
+@Slf4j
+public class EngineDispatchService {
+
+    private static final String DEFAULT_TIER = "standard";
+
+    @Value("${engineMaxConcurrency:8}")
+    private int engineMaxConcurrency;
+
+    // Tier weights, e.g. "standard:1,pro:4"
+    @Value("${fairShareTierWeights:standard:1}")
+    private String fairShareTierWeights;
+
+    // Tier of individual users, e.g. "alice:pro,bob:pro"; everyone else gets the standard tier
+    @Value("${fairShareUserTiers:}")
+    private String fairShareUserTiers;
+
+    private final Map<String, Double> tierWeights = new HashMap<>();
+    private final Map<String, String> userTiers = new HashMap<>();
+    private final Map<String, Double> jobDurations = new ConcurrentHashMap<>();
+
+    // Only users with queued or running requests
+    private final Map<String, UserQueue> userQueues = new HashMap<>();
+    private double virtualTime;
+    private long sequence;
+    private int inFlight;
+
+    @PostConstruct
+    void parseTiers() {
+        tierWeights.putAll(parsePairs(fairShareTierWeights, Double::parseDouble));
+        tierWeights.putIfAbsent(DEFAULT_TIER, 1.0);
+        // A user's pass advances by 1 / weight, so a zero or negative weight would put the user first forever
+        tierWeights.forEach((tier, weight) -> {
+            if (!(weight > 0) || Double.isInfinite(weight)) {
+                throw new IllegalStateException("fairShareTierWeights: weight of tier " + tier + " must be positive, got " + weight);
+            }
+        });
+        userTiers.putAll(parsePairs(fairShareUserTiers, tier -> tier));
+        log.info("Fair share tiers: {}, users with a tier: {}", tierWeights, userTiers.size());
+    }
+
+    // The predicted transcription time of a job orders its requests against the user's other jobs
+    public void registerJob(String taskId, double predictedSeconds) {
+        jobDurations.put(taskId, predictedSeconds);
+    }
+
+    public void unregisterJob(String taskId) {
+        jobDurations.remove(taskId);
+    }
+
+    public <T> Mono<T> dispatch(String username, String taskId, Supplier<Mono<T>> request) {
+        return Mono.create(sink -> {
+            PendingDispatch pending = new PendingDispatch(jobDurations.getOrDefault(taskId, Double.MAX_VALUE));
+            pending.start = () -> pending.running = Mono.defer(request)
+                    .doFinally(signal -> release(pending.userQueue))
+                    // The request runs in a subscription of its own; the caller's context carries the task ID for logging
+                    .contextWrite(sink.contextView())
+                    .subscribe(sink::success, sink::error, sink::success);
+            sink.onCancel(() -> cancel(pending));
+            synchronized (this) {
+                pending.sequence = sequence++;
+                UserQueue userQueue = userQueues.computeIfAbsent(username, this::createUserQueue);
+                if (userQueue.pending.isEmpty()) {
+                    // A user returning from idle starts at the current virtual time instead of using up saved credit
+                    userQueue.pass = Math.max(userQueue.pass, virtualTime);
+                }
+                pending.userQueue = userQueue;
+                userQueue.pending.add(pending);
+            }
+            drain();
+        });
+    }
+
+    public synchronized int getFreeSlots() {
+        return Math.max(0, engineMaxConcurrency - inFlight);
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return userQueues.values().stream().mapToInt(userQueue -> userQueue.pending.size()).sum();
+    }
+
+    public int getMaxConcurrency() {
+        return engineMaxConcurrency;
+    }
+
+    public synchronized List<UserWaitStats> getUserWaitStats() {
+        return userQueues.values().stream()
+                .map(q -> new UserWaitStats(q.username, q.tier, q.weight, q.dispatched, q.pending.size(),
+                        q.dispatched == 0 ? 0 : (double) q.totalWaitMillis / q.dispatched,
+                        q.maxWaitMillis, q.lastWaitMillis))
+                .sorted(Comparator.comparing(UserWaitStats::getUsername))
+                .toList();
+    }
+
+    private void release(UserQueue userQueue) {
+        synchronized (this) {
+            inFlight--;
+            userQueue.running--;
+            removeIfIdle(userQueue);
+        }
+        drain();
+    }
+
+    // A queued request leaves the queue at once; a running one is disposed and releases its slot when it ends
+    private void cancel(PendingDispatch pending) {
+        synchronized (this) {
+            pending.cancelled = true;
+            if (pending.userQueue.pending.remove(pending)) {
+                removeIfIdle(pending.userQueue);
+            }
+        }
+        Disposable current = pending.running;
+        if (current != null) {
+            current.dispose();
+        }
+    }
+
+    // A returning user gets a new queue starting at the current virtual time, as an idle one would
+    private void removeIfIdle(UserQueue userQueue) {
+        if (userQueue.pending.isEmpty() && userQueue.running == 0) {
+            userQueues.remove(userQueue.username, userQueue);
+        }
+    }
+
+    // Starts queued requests outside the lock, since a request may complete synchronously and call release()
+    private void drain() {
+        List<PendingDispatch> toStart = new ArrayList<>();
+        synchronized (this) {
+            while (inFlight < engineMaxConcurrency) {
+                UserQueue next = null;
+                for (UserQueue userQueue : userQueues.values()) {
+                    if (!userQueue.pending.isEmpty() && (next == null || goesBefore(userQueue, next))) {
+                        next = userQueue;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                PendingDispatch pending = next.pending.poll();
+                virtualTime = next.pass;
+                next.pass += 1.0 / next.weight;
+                next.recordWait(System.currentTimeMillis() - pending.enqueuedAt);
+                next.running++;
+                inFlight++;
+                toStart.add(pending);
+            }
+        }
+        for (PendingDispatch pending : toStart) {
+            // Cancelled between leaving the queue and starting: hand the slot on
+            if (pending.cancelled) {
+                release(pending.userQueue);
+            } else {
+                pending.start.run();
+            }
+        }
+    }
+
+    // Lowest pass first; on a tie the user whose next request has waited longest
+    private static boolean goesBefore(UserQueue userQueue, UserQueue other) {
+        return userQueue.pass < other.pass
+                || (userQueue.pass == other.pass && userQueue.pending.peek().sequence < other.pending.peek().sequence);
+    }
+
+    private UserQueue createUserQueue(String username) {
+        String tier = userTiers.getOrDefault(username, DEFAULT_TIER);
+        double weight = tierWeights.getOrDefault(tier, tierWeights.get(DEFAULT_TIER));
+        return new UserQueue(username, tier, weight);
+    }
+
+    private static <V> Map<String, V> parsePairs(String value, java.util.function.Function<String, V> parser) {
+        Map<String, V> result = new HashMap<>();
+        for (String pair : value.split(",")) {
+            String[] parts = pair.trim().split(":");
+            if (parts.length == 2) {
+                result.put(parts[0].trim(), parser.apply(parts[1].trim()));
+            }
+        }
+        return result;
+    }
+
+    private static final class UserQueue {
+        private final String username;
+        private final String tier;
+        private final double weight;
+        private final PriorityQueue<PendingDispatch> pending = new PriorityQueue<>(
+                Comparator.comparingDouble((PendingDispatch p) -> p.jobDuration).thenComparingLong(p -> p.sequence));
+        private double pass;
+        private int running;
+        private long dispatched;
+        private long totalWaitMillis;
+        private long maxWaitMillis;
+        private long lastWaitMillis;
+
+        private UserQueue(String username, String tier, double weight) {
+            this.username = username;
+            this.tier = tier;
+            this.weight = weight;
+        }
+
+        private void recordWait(long waitMillis) {
+            dispatched++;
+            totalWaitMillis += waitMillis;
+            maxWaitMillis = Math.max(maxWaitMillis, waitMillis);
+            lastWaitMillis = waitMillis;
+        }
+    }
+
+    private static final class PendingDispatch {
+        private final double jobDuration;
+        private final long enqueuedAt = System.currentTimeMillis();
+        private long sequence;
+        private UserQueue userQueue;
+        private Runnable start;
+        private volatile Disposable running;
+        private volatile boolean cancelled;
+
+        private PendingDispatch(double jobDuration) {
+            this.jobDuration = jobDuration;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.EngineEndpointStats;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Spreads engine requests over a pool of endpoints, each with its own credentials and in-flight limit.
+ * A request goes to the endpoint with the lowest latency EWMA times outstanding requests. The latency is
+ * taken per second of audio, so an endpoint that happened to get the long chunks does not look slow.
+ * After a run of failures an endpoint's circuit opens and it gets no traffic; once the open period is
+ * over one request is let through as a probe, and its outcome closes or reopens the circuit. A request
+ * that fails on an endpoint (connection error, 429 or 5xx) is retried on another one.
+ */
+@Service
+@Slf4j
+public class EnginePoolService {
+
+    public static final String DEFAULT_ENDPOINT = "https://api.openai.com/v1/audio/transcriptions";
+    private static final double EWMA_ALPHA = 0.2;
+
+    // Comma-separated transcription URLs
+    @Value("${engineEndpoints:" + DEFAULT_ENDPOINT + "}")
+    private List<String> engineEndpoints;
+
+    // API keys of the endpoints by position; endpoints without one use OPENAI_API_KEY
+    @Value("${engineApiKeys:}")
+    private List<String> engineApiKeys;
+
+    @Value("${OPENAI_API_KEY:}")
+    private String openAiApiKey;
+
+    // In-flight limits by position; the last one applies to the remaining endpoints
+    @Value("${engineEndpointMaxInFlight:8}")
+    private List<Integer> engineEndpointMaxInFlight;
+
+    @Value("${engineBreakerFailureThreshold:5}")
+    private int engineBreakerFailureThreshold;
+
+    @Value("${engineBreakerOpenSeconds:30}")
+    private double engineBreakerOpenSeconds;
+
+    // Other endpoints a failed request is retried on
+    @Value("${engineFailoverAttempts:1}")
+    private int engineFailoverAttempts;
+
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final List<Waiter> waiters = new LinkedList<>();
+
+    @PostConstruct
+    void initEndpoints() {
+        for (int i = 0; i < engineEndpoints.size(); i++) {
+            String url = engineEndpoints.get(i).trim();
+            if (url.isEmpty()) {
+                continue;
+            }
+            String apiKey = i < engineApiKeys.size() && !engineApiKeys.get(i).isBlank() ? engineApiKeys.get(i).trim() : openAiApiKey;
+            int maxInFlight = engineEndpointMaxInFlight.get(Math.min(i, engineEndpointMaxInFlight.size() - 1));
+            endpoints.add(new Endpoint(url, apiKey, maxInFlight));
+        }
+        if (endpoints.isEmpty()) {
+            throw new IllegalStateException("engineEndpoints is empty");
+        }
+        log.info("Engine pool: {}", endpoints.stream().map(e -> e.url + " (max " + e.maxInFlight + ")").toList());
+    }
+
+    // Without a known audio length the request is not counted in the endpoint's latency
+    public <T> Mono<T> execute(double audioSeconds, Function<Endpoint, Mono<T>> request) {
+        return attempt(request, audioSeconds, new HashSet<>(), engineFailoverAttempts);
+    }
+
+    public synchronized List<EngineEndpointStats> getStats() {
+        long now = System.currentTimeMillis();
+        return endpoints.stream()
+                .map(e -> new EngineEndpointStats(e.url, e.state(now).name(), e.inFlight, e.maxInFlight, e.requests,
+                        e.failures, e.consecutiveFailures, Double.isNaN(e.latencyEwma) ? null : e.latencyEwma,
+                        e.lastError))
+                .toList();
+    }
+
+    private <T> Mono<T> attempt(Function<Endpoint, Mono<T>> request, double audioSeconds, Set<Endpoint> tried,
+                                int failoversLeft) {
+        return acquire(tried)
+                .flatMap(lease -> {
+                    Endpoint endpoint = lease.endpoint();
+                    long startNanos = System.nanoTime();
+                    AtomicBoolean released = new AtomicBoolean();
+                    return Mono.defer(() -> request.apply(endpoint))
+                            .doOnSuccess(value -> release(lease, startNanos, audioSeconds, Outcome.SUCCESS, null, released))
+                            .doOnError(e -> release(lease, startNanos, audioSeconds,
+                                    isEndpointFailure(e) ? Outcome.FAILURE : Outcome.SUCCESS, e, released))
+                            .doOnCancel(() -> release(lease, startNanos, audioSeconds, Outcome.CANCELLED, null, released))
+                            .onErrorResume(e -> failoversLeft > 0 && isEndpointFailure(e) && hasAlternative(tried, endpoint), e -> {
+                                log.warn("Engine request to {} failed ({}), trying another endpoint", endpoint.url, e.getMessage());
+                                tried.add(endpoint);
+                                return attempt(request, audioSeconds, tried, failoversLeft - 1);
+                            });
+                });
+    }
+
+    // Rate limits and server errors say something about the endpoint; other client errors are about the request
+    private static boolean isEndpointFailure(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            return responseException.getStatusCode().is5xxServerError() || responseException.getStatusCode().value() == 429;
+        }
+        return true;
+    }
+
+    private synchronized boolean hasAlternative(Set<Endpoint> tried, Endpoint failed) {
+        long now = System.currentTimeMillis();
+        return endpoints.stream().anyMatch(e -> e != failed && !tried.contains(e) && e.canServeEventually(now));
+    }
+
+    private Mono<Lease> acquire(Set<Endpoint> excluded) {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink, excluded, new AtomicBoolean());
+            Runnable action;
+            synchronized (this) {
+                action = tryAssign(waiter, System.currentTimeMillis());
+                if (action == null) {
+                    waiters.add(waiter);
+                }
+            }
+            sink.onCancel(() -> {
+                waiter.cancelled().set(true);
+                synchronized (this) {
+                    waiters.remove(waiter);
+                }
+            });
+            if (action != null) {
+                action.run();
+            }
+        });
+    }
+
+    // Called under the lock; the returned action completes the waiter and is run outside of it
+    private Runnable tryAssign(Waiter waiter, long now) {
+        Endpoint endpoint = choose(waiter.excluded(), now);
+        if (endpoint != null) {
+            Lease lease = new Lease(endpoint, endpoint.state(now) == State.HALF_OPEN);
+            endpoint.inFlight++;
+            endpoint.requests++;
+            return () -> {
+                if (waiter.cancelled().get()) {
+                    release(lease, System.nanoTime(), 0, Outcome.CANCELLED, null, new AtomicBoolean());
+                } else {
+                    waiter.sink().success(lease);
+                }
+            };
+        }
+        boolean possible = endpoints.stream().anyMatch(e -> !waiter.excluded().contains(e) && e.canServeEventually(now));
+        if (!possible) {
+            return () -> waiter.sink().error(new IllegalStateException("No engine endpoint is available"));
+        }
+        return null;
+    }
+
+    // An endpoint due for a probe goes first, so that it can come back; otherwise the lowest expected wait
+    private Endpoint choose(Set<Endpoint> excluded, long now) {
+        Endpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        double fallbackLatency = averageLatency();
+        for (Endpoint endpoint : endpoints) {
+            if (excluded.contains(endpoint)) {
+                continue;
+            }
+            State state = endpoint.state(now);
+            if (state == State.HALF_OPEN && !endpoint.probing) {
+                endpoint.probing = true;
+                log.info("Probing engine endpoint {}", endpoint.url);
+                return endpoint;
+            }
+            if (state != State.CLOSED || endpoint.inFlight >= endpoint.maxInFlight) {
+                continue;
+            }
+            double latency = Double.isNaN(endpoint.latencyEwma) ? fallbackLatency : endpoint.latencyEwma;
+            double score = latency * (endpoint.inFlight + 1);
+            if (score < bestScore) {
+                bestScore = score;
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    // Endpoints without a sample yet are assumed to be as fast as the average, or 1s per audio second before any answer
+    private double averageLatency() {
+        return endpoints.stream()
+                .mapToDouble(e -> e.latencyEwma)
+                .filter(latency -> !Double.isNaN(latency))
+                .average()
+                .orElse(1000);
+    }
+
+    private void release(Lease lease, long startNanos, double audioSeconds, Outcome outcome, Throwable error,
+                         AtomicBoolean released) {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        Endpoint endpoint = lease.endpoint();
+        List<Runnable> actions = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            endpoint.inFlight--;
+            if (lease.probe()) {
+                endpoint.probing = false;
+            }
+            if (outcome == Outcome.SUCCESS) {
+                if (audioSeconds > 0) {
+                    double latency = (System.nanoTime() - startNanos) / 1e6 / audioSeconds;
+                    endpoint.latencyEwma = Double.isNaN(endpoint.latencyEwma)
+                            ? latency
+                            : EWMA_ALPHA * latency + (1 - EWMA_ALPHA) * endpoint.latencyEwma;
+                }
+                endpoint.consecutiveFailures = 0;
+                if (endpoint.openUntilMillis != 0) {
+                    log.info("Engine endpoint {} is back in the pool", endpoint.url);
+                    endpoint.openUntilMillis = 0;
+                }
+            } else if (outcome == Outcome.FAILURE) {
+                endpoint.failures++;
+                endpoint.consecutiveFailures++;
+                endpoint.lastError = error.getMessage();
+                if (lease.probe() || endpoint.consecutiveFailures >= engineBreakerFailureThreshold) {
+                    endpoint.openUntilMillis = now + Math.round(engineBreakerOpenSeconds * 1000);
+                    log.warn("Engine endpoint {} ejected for {}s after {} consecutive failures", endpoint.url,
+                            engineBreakerOpenSeconds, endpoint.consecutiveFailures);
+                }
+            }
+            // A cancelled probe leaves the circuit half-open for the next request
+
+            Iterator<Waiter> iterator = waiters.iterator();
+            while (iterator.hasNext()) {
+                Runnable action = tryAssign(iterator.next(), now);
+                if (action != null) {
+                    iterator.remove();
+                    actions.add(action);
+                }
+            }
+        }
+        actions.forEach(Runnable::run);
+    }
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private enum Outcome { SUCCESS, FAILURE, CANCELLED }
+
+    private record Waiter(MonoSink<Lease> sink, Set<Endpoint> excluded, AtomicBoolean cancelled) {
+    }
+
+    private record Lease(Endpoint endpoint, boolean probe) {
+    }
+
+    // Mutable state is guarded by the pool's lock
+    public static final class Endpoint {
+        @Getter
+        private final String url;
+        @Getter
+        private final String apiKey;
+        private final int maxInFlight;
+        private int inFlight;
+        private long requests;
+        private long failures;
+        private int consecutiveFailures;
+        private long openUntilMillis;    // 0 while the circuit is closed
+        private boolean probing;
+        private double latencyEwma = Double.NaN; // millis per second of audio
+        private String lastError;
+
+        private Endpoint(String url, String apiKey, int maxInFlight) {
+            this.url = url;
+            this.apiKey = apiKey;
+            this.maxInFlight = maxInFlight;
+        }
+
+        private State state(long now) {
+            if (openUntilMillis == 0) {
+                return State.CLOSED;
+            }
+            return now < openUntilMillis ? State.OPEN : State.HALF_OPEN;
+        }
+
+        private boolean canServeEventually(long now) {
+            return state(now) != State.OPEN;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.TranscribedRange;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Reads the top-level "text" field of an engine response with Jackson's non-blocking parser, fed buffer by
+ * buffer as they arrive, so the body is never joined or copied into a String first. Other fields are skipped
+ * token by token; the segments of a verbose response are only collected when asked for. The whole body is
+ * consumed, so the connection goes back to the pool.
+ */
+final class EngineResponseParser {
+
+    private final JsonParser parser;
+    private final ByteBufferFeeder feeder;
+    private int depth;
+    // Name of the last field seen, at whatever depth
+    private String field;
+    private String text;
+    // Only collected for parseSegments; null while the response has no "segments" array
+    private final boolean readSegments;
+    private List<TranscribedRange> segments;
+    private boolean inSegments;
+    private double segmentStart;
+    private double segmentEnd;
+    private String segmentText;
+
+    private EngineResponseParser(JsonFactory jsonFactory, boolean readSegments) throws IOException {
+        this.parser = jsonFactory.createNonBlockingByteBufferParser();
+        this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        this.readSegments = readSegments;
+    }
+
+    static Mono<String> parseText(Flux<DataBuffer> body, JsonFactory jsonFactory) {
+        return parse(body, jsonFactory, false, responseParser -> responseParser.text);
+    }
+
+    // Segments of a verbose_json response, with their times on the timeline of the uploaded audio
+    static Mono<List<TranscribedRange>> parseSegments(Flux<DataBuffer> body, JsonFactory jsonFactory) {
+        return parse(body, jsonFactory, true, responseParser -> {
+            if (responseParser.segments == null) {
+                throw new UncheckedIOException(new IOException("Engine response has no segments"));
+            }
+            return responseParser.segments;
+        });
+    }
+
+    private static <T> Mono<T> parse(Flux<DataBuffer> body, JsonFactory jsonFactory, boolean readSegments,
+                                     Function<EngineResponseParser, T> result) {
+        return Mono.using(() -> new EngineResponseParser(jsonFactory, readSegments),
+                responseParser -> body
+                        .doOnNext(buffer -> {
+                            try {
+                                responseParser.feed(buffer);
+                            } finally {
+                                DataBufferUtils.release(buffer);
+                            }
+                        })
+                        .then(Mono.fromCallable(() -> {
+                            responseParser.finish();
+                            return result.apply(responseParser);
+                        })),
+                EngineResponseParser::close);
+    }
+
+    private void feed(DataBuffer buffer) {
+        try (DataBuffer.ByteBufferIterator byteBuffers = buffer.readableByteBuffers()) {
+            while (byteBuffers.hasNext()) {
+                ByteBuffer byteBuffer = byteBuffers.next();
+                if (byteBuffer.hasRemaining()) {
+                    // The feeder keeps a reference to the bytes, every token in them is read before the next part
+                    feeder.feedInput(byteBuffer);
+                    readAvailableTokens();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void finish() throws IOException {
+        feeder.endOfInput();
+        readAvailableTokens();
+        if (depth != 0) {
+            throw new IOException("Engine response ended inside a JSON value");
+        }
+        if (text == null) {
+            throw new IOException("Engine response has no text field");
+        }
+    }
+
+    // Depth 1 is the response object, 2 the segments array and 3 a segment in it
+    private void readAvailableTokens() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (token == JsonToken.FIELD_NAME) {
+                field = parser.currentName();
+            } else if (token.isStructStart()) {
+                depth++;
+                if (readSegments && depth == 2 && token == JsonToken.START_ARRAY && "segments".equals(field)) {
+                    inSegments = true;
+                    segments = new ArrayList<>();
+                } else if (inSegments && depth == 3) {
+                    segmentStart = 0;
+                    segmentEnd = 0;
+                    segmentText = null;
+                }
+            } else if (token.isStructEnd()) {
+                if (inSegments && depth == 3 && segmentText != null) {
+                    segments.add(new TranscribedRange(segmentStart, segmentEnd, segmentText));
+                } else if (inSegments && depth == 2) {
+                    inSegments = false;
+                }
+                depth--;
+            } else if (depth == 1 && token == JsonToken.VALUE_STRING && "text".equals(field)) {
+                text = parser.getText();
+            } else if (inSegments && depth == 3) {
+                readSegmentField(token);
+            }
+        }
+    }
+
+    private void readSegmentField(JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_STRING && "text".equals(field)) {
+            segmentText = parser.getText();
+        } else if (token.isNumeric() && "start".equals(field)) {
+            segmentStart = parser.getDoubleValue();
+        } else if (token.isNumeric() && "end".equals(field)) {
+            segmentEnd = parser.getDoubleValue();
+        }
+    }
+
+    private void close() {
+        try {
+            parser.close();
+        } catch (IOException e) {
+            // nothing to release beyond the parser's own buffers
+        }
+    }
+}
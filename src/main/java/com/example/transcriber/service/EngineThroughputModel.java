@@ -0,0 +1,72 @@
+package com.example.transcriber.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * Live model of engine latency as a fixed per-request overhead plus a cost per second of audio,
+ * fitted by exponentially weighted least squares over completed requests.
+ */
+@Service
+@Slf4j
+public class EngineThroughputModel {
+
+    // Starting point until enough requests have been observed
+    private static final double DEFAULT_OVERHEAD_SECONDS = 3.0;
+    private static final double DEFAULT_SECONDS_PER_AUDIO_SECOND = 0.05;
+    private static final int MIN_SAMPLES = 5;
+    private static final double DECAY = 0.98;
+
+    private double weight;
+    private double sumX;
+    private double sumY;
+    private double sumXX;
+    private double sumXY;
+    private long samples;
+
+    private double overheadSeconds = DEFAULT_OVERHEAD_SECONDS;
+    private double secondsPerAudioSecond = DEFAULT_SECONDS_PER_AUDIO_SECOND;
+
+    public synchronized void observe(double audioSeconds, double latencySeconds) {
+        if (audioSeconds <= 0 || latencySeconds <= 0) {
+            return;
+        }
+        weight = weight * DECAY + 1;
+        sumX = sumX * DECAY + audioSeconds;
+        sumY = sumY * DECAY + latencySeconds;
+        sumXX = sumXX * DECAY + audioSeconds * audioSeconds;
+        sumXY = sumXY * DECAY + audioSeconds * latencySeconds;
+        samples++;
+
+        if (samples < MIN_SAMPLES) {
+            return;
+        }
+        double meanX = sumX / weight;
+        double meanY = sumY / weight;
+        double varianceX = sumXX / weight - meanX * meanX;
+        if (varianceX > 1e-6) {
+            double slope = (sumXY / weight - meanX * meanY) / varianceX;
+            secondsPerAudioSecond = Math.max(1e-4, slope);
+            overheadSeconds = Math.max(0, meanY - secondsPerAudioSecond * meanX);
+        } else {
+            // All requests had the same length, keep the overhead and attribute the rest to the audio
+            secondsPerAudioSecond = Math.max(1e-4, (meanY - overheadSeconds) / meanX);
+        }
+    }
+
+    public synchronized double predictLatencySeconds(double audioSeconds) {
+        return overheadSeconds + secondsPerAudioSecond * audioSeconds;
+    }
+
+    public synchronized double getOverheadSeconds() {
+        return overheadSeconds;
+    }
+
+    public synchronized double getSecondsPerAudioSecond() {
+        return secondsPerAudioSecond;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+}
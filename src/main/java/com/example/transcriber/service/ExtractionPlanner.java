@@ -0,0 +1,51 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.ExtractionPlan;
+import com.example.transcriber.dto.MediaInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+
+@Service
+@Slf4j
+public class ExtractionPlanner {
+
+    // Containers that are sent to the engine without any processing
+    private static final Set<String> DIRECT_AUDIO_EXTENSIONS = Set.of("mp3", "m4a");
+
+    // Codecs the engine accepts, mapped to the container their stream can be copied into
+    private static final Map<String, String> REMUX_CONTAINERS = Map.of(
+            "aac", "m4a",
+            "mp3", "mp3",
+            "opus", "ogg",
+            "vorbis", "ogg",
+            "flac", "flac"
+    );
+
+    @Value("${remuxEnabled:true}")
+    private boolean remuxEnabled;
+
+    public ExtractionPlan plan(String fileExtension, MediaInfo mediaInfo) {
+        String codec = mediaInfo.getAudioCodec();
+
+        if (DIRECT_AUDIO_EXTENSIONS.contains(fileExtension)) {
+            return new ExtractionPlan(ExtractionPlan.Mode.DIRECT, fileExtension, codec);
+        }
+
+        String container = codec != null ? REMUX_CONTAINERS.get(codec.toLowerCase()) : null;
+        if (container != null && container.equals(fileExtension)) {
+            // Already the container the stream would be copied into, e.g. opus in .ogg
+            return new ExtractionPlan(ExtractionPlan.Mode.DIRECT, fileExtension, codec);
+        }
+        if (remuxEnabled && container != null) {
+            log.info("Audio codec {} is accepted by the engine, remuxing into .{}", codec, container);
+            return new ExtractionPlan(ExtractionPlan.Mode.REMUX, container, codec);
+        }
+
+        log.info("Audio codec {} requires re-encoding to mp3", codec);
+        return new ExtractionPlan(ExtractionPlan.Mode.TRANSCODE, "mp3", codec);
+    }
+}
@@ -6,7 +6,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
 
 import java.io.IOException;
 import java.nio.file.*;
@@ -24,9 +24,17 @@ import java.util.stream.StreamSupport;
 @Slf4j
 public class FileCleanupService {
 
+    private final Scheduler blockingScheduler;
+    private final TranscriptSearchService transcriptSearchService;
+
     @Value("${tempDirPath}")
     private String tempDirPath;
 
+    public FileCleanupService(Scheduler blockingScheduler, TranscriptSearchService transcriptSearchService) {
+        this.blockingScheduler = blockingScheduler;
+        this.transcriptSearchService = transcriptSearchService;
+    }
+
     public Mono<Void> cleanupOldDirectories() {
         log.info("Starting cleanup of old directories");
 
@@ -43,17 +51,24 @@ public class FileCleanupService {
                         return StreamSupport.stream(stream.spliterator(), false)
                                 .filter(Files::isDirectory)
                                 .filter(path -> !path.equals(baseDir)) // пропускаем базовую директорию
+                                .filter(path -> !isBatchTaskDirectory(path))
                                 .filter(path -> isDirectoryOlderThanThreshold(path, threshold))
                                 .collect(Collectors.toList());
                     }
                 })
-                .subscribeOn(Schedulers.boundedElastic())
+                .subscribeOn(blockingScheduler)
                 .flatMapMany(Flux::fromIterable)
                 .flatMap(this::deleteDirectory)
                 .then();
     }
 
 
+    // A batch run deletes the task directory of every file it finishes itself; an interrupted one is still listed
+    // in the run's ledger and resumed from its checkpoints by the next run, however long ago it started
+    private boolean isBatchTaskDirectory(Path path) {
+        return path.getFileName().toString().startsWith(BatchTranscriptionService.BATCH_USERNAME + "-");
+    }
+
     private boolean isDirectoryOlderThanThreshold(Path path, LocalDateTime threshold) {
         try {
             String dirName = path.getFileName().toString();
@@ -71,8 +86,10 @@ public class FileCleanupService {
         }
     }
 
+    // Сначала убираем транскрипты задачи из поискового индекса, чтобы поиск не отдавал ссылки на удаленные файлы
     private Mono<Void> deleteDirectory(Path path) {
-        return Mono.fromRunnable(() -> {
+        return transcriptSearchService.removeTaskDirectory(path)
+                .then(Mono.fromRunnable(() -> {
                     try (Stream<Path> pathStream = Files.walk(path)) {
                         pathStream
                                 .sorted(Comparator.reverseOrder()) // сначала удаляем содержимое, потом саму директорию
@@ -93,7 +110,7 @@ public class FileCleanupService {
                         log.error("Error walking through directory: {}", path, e);
                         throw new RuntimeException("Error walking through directory: " + path, e); // Прерываем обход при ошибке
                     }
-                }).subscribeOn(Schedulers.boundedElastic())
+                }).subscribeOn(blockingScheduler))
                 .then()
                 .doOnError(error -> log.error("Error while deleting directory: {}", error.getMessage()));
     }
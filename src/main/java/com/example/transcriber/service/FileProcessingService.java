@@ -1,44 +1,112 @@
 package com.example.transcriber.service;
 
+import com.example.transcriber.dto.ExtractionPlan;
+import com.example.transcriber.dto.JobEstimate;
+import com.example.transcriber.dto.MediaInfo;
+import com.example.transcriber.dto.SegmentInfo;
+import com.example.transcriber.dto.SpeechRegion;
+import com.example.transcriber.exception.MediaProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Data
 @Slf4j
 public class FileProcessingService {
 
+    // Containers whose audio can be cut with -c:a copy and written to a pipe; anything else is re-encoded to mp3
+    private static final Set<String> STREAM_COPY_FORMATS = Set.of("mp3", "ogg", "flac");
+    public static final long STREAM_TRANSCODE_BIT_RATE = 128_000;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final String SEGMENT_LIST_FILE = "segments.csv";
+    private static final long SEGMENT_LIST_POLL_MILLIS = 250;
+    // silencedetect prints times with %g, so a time near zero comes as 1.2e-05
+    private static final String SILENCE_TIME = "([-+]?\\d*\\.?\\d+(?:[eE][-+]?\\d+)?)";
+    private static final Pattern SILENCE_START = Pattern.compile("silence_start: " + SILENCE_TIME);
+    private static final Pattern SILENCE_END = Pattern.compile("silence_end: " + SILENCE_TIME);
+
     private final WebSocketService webSocketService;
 
     private final StatusService statusService;
+    private final ObjectMapper objectMapper;
+    private final ExtractionPlanner extractionPlanner;
+    private final JobMetricsService jobMetricsService;
+    private final JobCostModel jobCostModel;
+    private final AudioFingerprintIndex audioFingerprintIndex;
+    private final Scheduler blockingScheduler;
+
     @Value("${ffmpegPath}")
     private String ffmpegPath;
 
     @Value("${ffprobePath}")
     private String ffprobePath;
 
+    // Re-encodes of sources at least this long are split into time ranges encoded by parallel ffmpeg processes
+    @Value("${parallelExtractionMinSeconds:1200}")
+    private double parallelExtractionMinSeconds;
+
+    // Shortest range worth its own process
+    @Value("${parallelExtractionMinRangeSeconds:300}")
+    private double parallelExtractionMinRangeSeconds;
+
+    // Encoder processes that parallel extraction may add across all tasks, on top of one per task; 0 means one per core
+    @Value("${extractionCpuBudget:0}")
+    private int extractionCpuBudget;
+
+    private Semaphore extraEncoderSlots;
+
     @Autowired
-    public FileProcessingService(WebSocketService webSocketService, StatusService statusService) {
+    public FileProcessingService(WebSocketService webSocketService, StatusService statusService,
+                                 ObjectMapper objectMapper, ExtractionPlanner extractionPlanner,
+                                 JobMetricsService jobMetricsService, JobCostModel jobCostModel,
+                                 AudioFingerprintIndex audioFingerprintIndex, Scheduler blockingScheduler) {
         this.webSocketService = webSocketService;
         this.statusService = statusService;
+        this.objectMapper = objectMapper;
+        this.extractionPlanner = extractionPlanner;
+        this.jobMetricsService = jobMetricsService;
+        this.jobCostModel = jobCostModel;
+        this.audioFingerprintIndex = audioFingerprintIndex;
+        this.blockingScheduler = blockingScheduler;
     }
 
-    public Mono<String> processFileForExtraction(String targetPath, String taskId, String username) {
+    @PostConstruct
+    void initEncoderBudget() {
+        int budget = extractionCpuBudget > 0 ? extractionCpuBudget : Runtime.getRuntime().availableProcessors();
+        extraEncoderSlots = new Semaphore(budget);
+    }
 
-        Set<String> directAudioExtensions = Set.of("mp3", "m4a");
+    public Mono<String> processFileForExtraction(String targetPath, String taskId, String username) {
 
         // Получаем расширение файла
         String fileExtension = getFileExtension(targetPath).toLowerCase();
@@ -47,39 +115,47 @@ public class FileProcessingService {
         if (fileExtension.isEmpty()) {
             log.error("File has no extension: {}", targetPath);
             return Mono.when(
-                            webSocketService.sendErrorMessage(username, "The file has no extension. Please select a valid file and try again."),
+                            webSocketService.sendErrorMessage(username, taskId, "The file has no extension. Please select a valid file and try again."),
                             statusService.updateTaskStatus(taskId, "Error")
                     )
                     .then(Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "File has no extension. Please try again.")));
         }
 
-        // Check if the file has an audio track
+        // Probe the file for an audio track and its codec
         return Mono.fromCallable(() ->
-                        hasAudioTrack(targetPath))
-                .subscribeOn(Schedulers.boundedElastic())
+                        probeMedia(targetPath))
+                .subscribeOn(blockingScheduler)
                 .onErrorResume(e -> {
                     // Логируем ошибку (опционально)
                     log.error("Error checking for audio track: " + e.getMessage(), e);
 
                     // Выполняем параллельные операции по отправке сообщения и обновлению статуса
                     return Mono.when(
-                                    webSocketService.sendErrorMessage(username, "Error checking for audio track. Please try again."),
+                                    webSocketService.sendErrorMessage(username, taskId, "Error checking for audio track. Please try again."),
                                     statusService.updateTaskStatus(taskId, "Error")
                             )
                             .then(Mono.error(new RuntimeException("Error checking for audio track: " + e.getMessage(), e)));
                 })
-                .flatMap(hasAudio -> {
-                    if (hasAudio) {
-                        if (directAudioExtensions.contains(fileExtension)) {
-                            return Mono.just(targetPath); // The file has an audio track and is in a direct format
+                .flatMap(mediaInfo -> {
+                    if (mediaInfo.hasAudio()) {
+                        ExtractionPlan plan = extractionPlanner.plan(fileExtension, mediaInfo);
+                        JobEstimate estimate = jobCostModel.estimateJob(mediaInfo, plan,
+                                plan.getMode() == ExtractionPlan.Mode.TRANSCODE ? planExtractionProcesses(mediaInfo.getDurationSeconds()) : 1);
+                        Mono<Void> eta = jobCostModel.publishEstimate(taskId, username, estimate.getTotalSeconds());
+                        Mono<Boolean> fingerprint = fingerprintForDedupe(targetPath, taskId, username);
+                        if (plan.getMode() == ExtractionPlan.Mode.DIRECT) {
+                            jobMetricsService.recordExtraction(taskId, plan, mediaInfo.getDurationSeconds(), 0, 0);
+                            return eta.then(fingerprint).thenReturn(targetPath); // The file has an audio track and is in a direct format
                         } else {
-                            // The file has an audio track but is in another format, extract audio
-                            return extractAudio(targetPath, taskId, username);
+                            // The file has an audio track but is in another container, remux or re-encode it;
+                            // the fingerprint is decoded by a second ffmpeg process at the same time
+                            return eta.then(extractAudio(targetPath, plan, mediaInfo, taskId, username)
+                                    .zipWith(fingerprint, (audioFilePath, fingerprinted) -> audioFilePath));
                         }
                     } else {
                         log.error("The file does not contain an audio track: {}", targetPath);
                         return Mono.when(
-                                        webSocketService.sendErrorMessage(username, "The file does not contain an audio track. Make sure to upload an appropriate file."),
+                                        webSocketService.sendErrorMessage(username, taskId, "The file does not contain an audio track. Make sure to upload an appropriate file."),
                                         statusService.updateTaskStatus(taskId, "Error")
                                 )
                                 .then(Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "The file does not contain an audio track. Make sure to upload an appropriate file.")));
@@ -88,6 +164,55 @@ public class FileProcessingService {
     }
 
 
+    // Emits whether a fingerprint was attached to the task; dedupe is only an optimisation, so failures are logged and ignored
+    private Mono<Boolean> fingerprintForDedupe(String sourceFilePath, String taskId, String username) {
+        if (!audioFingerprintIndex.isFingerprintDedupeEnabled()) {
+            return Mono.just(false);
+        }
+        return Mono.fromCallable(() -> {
+                    long startNanos = System.nanoTime();
+                    int[] fingerprint = fingerprintAudio(sourceFilePath);
+                    audioFingerprintIndex.attach(taskId, username, fingerprint);
+                    log.info("Fingerprinted {} frames for Task ID {} in {}s", fingerprint.length, taskId,
+                            String.format(Locale.ROOT, "%.2f", (System.nanoTime() - startNanos) / 1e9));
+                    return true;
+                })
+                .subscribeOn(blockingScheduler)
+                .onErrorResume(e -> {
+                    log.warn("Could not fingerprint the audio of Task ID {}: {}", taskId, e.getMessage());
+                    return Mono.just(false);
+                });
+    }
+
+    // Decodes the first audio stream to mono PCM at a low sample rate and fingerprints it as it is read
+    public int[] fingerprintAudio(String sourceFilePath) throws IOException, InterruptedException {
+        try (ProcessLog processLog = ProcessLog.create()) {
+            Process process = processLog.start(new ProcessBuilder(
+                    ffmpegPath,
+                    "-v", "error",
+                    "-i", sourceFilePath,
+                    "-vn",
+                    "-ac", "1",
+                    "-ar", String.valueOf(AudioFingerprinter.SAMPLE_RATE),
+                    "-f", "s16le",
+                    "pipe:1"));
+            try {
+                AudioFingerprinter fingerprinter = new AudioFingerprinter();
+                byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                try (InputStream pcm = process.getInputStream()) {
+                    int read;
+                    while ((read = pcm.read(buffer)) != -1) {
+                        fingerprinter.accept(buffer, 0, read);
+                    }
+                }
+                processLog.awaitSuccess(process, "ffmpeg");
+                return fingerprinter.finish();
+            } finally {
+                process.destroy();
+            }
+        }
+    }
+
     // Вспомогательный метод для получения расширения файла
     private String getFileExtension(String filePath) {
         int lastDotIndex = filePath.lastIndexOf('.');
@@ -97,42 +222,49 @@ public class FileProcessingService {
         return filePath.substring(lastDotIndex + 1).toLowerCase(); // Возвращаем расширение в нижнем регистре
     }
 
-    // Method to check if the file has an audio track
-    private boolean hasAudioTrack(String filePath) throws IOException, InterruptedException {
+    // Probes the first audio stream and the container; audioCodec stays null if there is no audio track
+    public MediaInfo probeMedia(String filePath) throws IOException, InterruptedException {
+        MediaInfo mediaInfo = new MediaInfo();
         if (!isMediaFile(filePath)) {
             log.info("The file is not a media file.");
-            return false;
+            return mediaInfo;
         }
 
         ProcessBuilder pb = new ProcessBuilder(
                 ffprobePath, // Ensure ffprobe is accessible via this path
                 "-v", "error",
-                "-select_streams", "a",
-                "-show_entries", "stream=codec_type",
-                "-of", "default=noprint_wrappers=1:nokey=1",
+                "-select_streams", "a:0",
+                "-show_entries", "format=format_name,duration,bit_rate:stream=codec_name,sample_rate,channels",
+                "-of", "json",
                 filePath
         );
-        pb.redirectErrorStream(true);
-        Process process = pb.start();
-
-        boolean hasAudio = false;
-        // Read the process output
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.equals("audio")) {
-                    hasAudio = true;
-                    break;
-                }
+        JsonNode root;
+        try (ProcessLog processLog = ProcessLog.create()) {
+            Process process = processLog.start(pb);
+            try (InputStream inputStream = process.getInputStream()) {
+                root = objectMapper.readTree(inputStream);
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0 || root == null) {
+                // Логирование ошибки вместо бросания исключения
+                log.error("ffprobe exited with error code: " + exitCode + " for file: " + filePath + ": " + processLog.tail());
+                return mediaInfo;
             }
         }
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            // Логирование ошибки вместо бросания исключения
-            log.error("ffprobe exited with error code: " + exitCode + " for file: " + filePath);
-            return false;
+
+        JsonNode format = root.path("format");
+        mediaInfo.setFormatName(format.path("format_name").asText(null));
+        mediaInfo.setDurationSeconds(format.path("duration").asDouble(0));
+        mediaInfo.setBitRate(format.path("bit_rate").asLong(0));
+
+        JsonNode stream = root.path("streams").path(0);
+        if (!stream.isMissingNode()) {
+            mediaInfo.setAudioCodec(stream.path("codec_name").asText(null));
+            mediaInfo.setSampleRate(stream.path("sample_rate").asInt(0));
+            mediaInfo.setChannels(stream.path("channels").asInt(0));
         }
-        return hasAudio; // true, если найден аудио-трек, иначе false
+        log.info("Probed {}: {}", filePath, mediaInfo);
+        return mediaInfo;
     }
 
 
@@ -145,44 +277,51 @@ public class FileProcessingService {
         return mimeType.startsWith("audio") || mimeType.startsWith("video");
     }
 
-    public Mono<String> extractAudio(String sourceFilePath, String taskId, String username) {
+    public Mono<String> extractAudio(String sourceFilePath, ExtractionPlan plan, MediaInfo mediaInfo,
+                                     String taskId, String username) {
         return Mono.when(
-                        webSocketService.sendMessage(username, "STATUS: Extracting audio..."),
+                        webSocketService.sendMessage(username, taskId, "STATUS: Extracting audio..."),
                         statusService.updateTaskStatus(taskId, "Extracting audio")
                 )
                 .then(
                         Mono.fromCallable(() -> {
-                                    // Form the output file path with .mp3 extension
+                                    // Form the output file path with the extension chosen by the plan
                                     Path sourcePath = Paths.get(sourceFilePath);
                                     String fileNameWithoutExt = sourcePath.getFileName().toString().replaceFirst("[.][^.]+$", "");
-                                    String outputFile = sourcePath.getParent().resolve(fileNameWithoutExt + ".mp3").toString();
-
-                                    ProcessBuilder pbExtractAudio = new ProcessBuilder(
-                                            ffmpegPath,
-                                            "-fflags", "+genpts",
-                                            "-avoid_negative_ts", "make_zero",
-                                            "-i", sourceFilePath,
-                                            "-vn", // Do not process the video stream
-                                            "-acodec", "libmp3lame", // Convert audio to MP3
-                                            "-b:a", "128k", // Set bitrate to 128 Kbps
-                                            outputFile
-                                    ).redirectErrorStream(true);
-
-                                    // Используем общий метод для выполнения процесса
-                                    int exitCode = executeFfmpegCommand(pbExtractAudio);
-
-                                    if (exitCode != 0) {
-                                        throw new IOException("ffmpeg exited with error code: " + exitCode);
+                                    String outputFile = sourcePath.getParent()
+                                            .resolve(fileNameWithoutExt + "." + plan.getOutputExtension()).toString();
+
+                                    long startNanos = System.nanoTime();
+                                    int processes = 1;
+                                    if (plan.getMode() == ExtractionPlan.Mode.TRANSCODE) {
+                                        int extraSlots = acquireExtraEncoderSlots(planExtractionProcesses(mediaInfo.getDurationSeconds()) - 1);
+                                        try {
+                                            processes = 1 + extraSlots;
+                                            if (processes > 1) {
+                                                transcodeInRanges(sourceFilePath, outputFile, mediaInfo.getDurationSeconds(), processes);
+                                            } else {
+                                                runFfmpeg(extractionCommand(sourceFilePath, outputFile, plan, null, null));
+                                            }
+                                        } finally {
+                                            extraEncoderSlots.release(extraSlots);
+                                        }
+                                    } else {
+                                        runFfmpeg(extractionCommand(sourceFilePath, outputFile, plan, null, null));
                                     }
-                                    log.info("Audio extraction completed for Task ID: {}", taskId);
+                                    double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+                                    jobMetricsService.recordExtraction(taskId, plan, mediaInfo.getDurationSeconds(), elapsedSeconds, processes);
+                                    if (processes == 1) {
+                                        jobCostModel.observeExtraction(plan, mediaInfo.getDurationSeconds(), elapsedSeconds);
+                                    }
+                                    log.info("Audio extraction ({}, {} processes) completed for Task ID: {}", plan.getMode(), processes, taskId);
                                     return outputFile;
                                 })
-                                .subscribeOn(Schedulers.boundedElastic())
+                                .subscribeOn(blockingScheduler)
                 )
                 .onErrorResume(e -> {
                     log.error("Error during audio extraction", e);
                     return Mono.when(
-                                    webSocketService.sendErrorMessage(username, "Error extracting audio from the file. Please try again."),
+                                    webSocketService.sendErrorMessage(username, taskId, "Error extracting audio from the file. Please try again."),
                                     statusService.updateTaskStatus(taskId, "Error")
                             )
                             .then(Mono.error(new RuntimeException("Error during audio extraction", e)));
@@ -190,49 +329,391 @@ public class FileProcessingService {
     }
 
 
-    public void splitFile(String sourceFilePath, String targetDirectoryPath, int splitLengthInSeconds)
+    private List<String> extractionCommand(String sourceFilePath, String outputFile, ExtractionPlan plan,
+                                           Double startSeconds, Double durationSeconds) {
+        List<String> command = new ArrayList<>(List.of(
+                ffmpegPath,
+                "-y",
+                "-fflags", "+genpts",
+                "-avoid_negative_ts", "make_zero"
+        ));
+        if (startSeconds != null) {
+            // Input seeking: decoding starts at the range, the time before it is never decoded
+            command.addAll(List.of("-ss", String.format(Locale.ROOT, "%.3f", startSeconds)));
+        }
+        if (durationSeconds != null) {
+            command.addAll(List.of("-t", String.format(Locale.ROOT, "%.3f", durationSeconds)));
+        }
+        command.addAll(List.of(
+                "-i", sourceFilePath,
+                "-vn" // Do not process the video stream
+        ));
+        if (plan.getMode() == ExtractionPlan.Mode.REMUX) {
+            command.addAll(List.of("-c:a", "copy")); // Copy the audio stream as is
+        } else {
+            command.addAll(List.of(
+                    "-acodec", "libmp3lame", // Convert audio to MP3
+                    "-b:a", "128k" // Set bitrate to 128 Kbps
+            ));
+        }
+        command.add(outputFile);
+        return command;
+    }
+
+    // libmp3lame uses one core, so long sources get one process per range, as many as cores and the budget allow
+    int planExtractionProcesses(double durationSeconds) {
+        if (durationSeconds < parallelExtractionMinSeconds) {
+            return 1;
+        }
+        int byLength = (int) (durationSeconds / parallelExtractionMinRangeSeconds);
+        return Math.max(1, Math.min(byLength, Runtime.getRuntime().availableProcessors()));
+    }
+
+    // Takes what is free right now instead of waiting, a busy server just extracts with fewer processes
+    private int acquireExtraEncoderSlots(int wanted) {
+        for (int slots = wanted; slots > 0; slots--) {
+            if (extraEncoderSlots.tryAcquire(slots)) {
+                return slots;
+            }
+        }
+        return 0;
+    }
+
+    // Encodes equal time ranges concurrently and joins the mp3 parts without re-encoding
+    public void transcodeInRanges(String sourceFilePath, String outputFile, double durationSeconds, int processes)
+            throws IOException, InterruptedException {
+        Path output = Paths.get(outputFile);
+        String baseName = output.getFileName().toString().replaceFirst("[.][^.]+$", "");
+        ExtractionPlan plan = new ExtractionPlan(ExtractionPlan.Mode.TRANSCODE, "mp3", null);
+        double rangeSeconds = durationSeconds / processes;
+
+        List<Path> parts = new ArrayList<>(processes);
+        List<Process> running = new ArrayList<>(processes);
+        List<ProcessLog> processLogs = new ArrayList<>(processes);
+        Path concatList = output.resolveSibling(baseName + ".ranges.txt");
+        try {
+            for (int i = 0; i < processes; i++) {
+                Path part = output.resolveSibling(String.format("%s.range%03d.mp3", baseName, i));
+                parts.add(part);
+                // The last range runs to the end of the input, whatever the probed duration says
+                Double length = i == processes - 1 ? null : rangeSeconds;
+                List<String> command = extractionCommand(sourceFilePath, part.toString(), plan, i * rangeSeconds, length);
+                command.addAll(1, List.of("-v", "error"));
+                ProcessLog processLog = ProcessLog.create();
+                processLogs.add(processLog);
+                running.add(processLog.start(new ProcessBuilder(command).redirectErrorStream(true)));
+            }
+            for (int i = 0; i < running.size(); i++) {
+                processLogs.get(i).awaitSuccess(running.get(i), "ffmpeg for range " + i);
+            }
+
+            StringBuilder list = new StringBuilder();
+            for (Path part : parts) {
+                list.append("file '").append(part.toAbsolutePath().toString().replace("'", "'\\''")).append("'\n");
+            }
+            Files.writeString(concatList, list.toString(), StandardCharsets.UTF_8);
+            runFfmpeg(List.of(ffmpegPath, "-y", "-v", "error", "-f", "concat", "-safe", "0",
+                    "-i", concatList.toString(), "-c", "copy", outputFile));
+            log.info("Extracted {} in {} ranges of {}s", sourceFilePath, processes, String.format(Locale.ROOT, "%.0f", rangeSeconds));
+        } finally {
+            running.forEach(Process::destroy);
+            processLogs.forEach(ProcessLog::close);
+            for (Path part : parts) {
+                Files.deleteIfExists(part);
+            }
+            Files.deleteIfExists(concatList);
+        }
+    }
+
+    private void runFfmpeg(List<String> command) throws IOException, InterruptedException {
+        executeFfmpegCommand(new ProcessBuilder(command).redirectErrorStream(true));
+    }
+
+
+    // Splits the file and returns the segments in order, with exact times and sizes taken from ffmpeg's segment list
+    public List<SegmentInfo> splitFile(String sourceFilePath, String targetDirectoryPath, int splitLengthInSeconds)
             throws IOException, InterruptedException {
 
 // Определяем расширение исходного файла
         String fileExtension = sourceFilePath.substring(sourceFilePath.lastIndexOf('.'));
+        Path targetDirectory = Paths.get(targetDirectoryPath);
+        Path segmentList = targetDirectory.resolve(SEGMENT_LIST_FILE);
 
         ProcessBuilder pb = new ProcessBuilder(
                 ffmpegPath,
+                "-y", // Overwrite parts left over from an interrupted run
                 "-i", sourceFilePath,
                 "-f", "segment",
                 "-segment_time", String.valueOf(splitLengthInSeconds),
+                "-segment_list", segmentList.toString(),
+                "-segment_list_type", "csv",
                 "-c", "copy",
                 targetDirectoryPath + "/output_part%03d" + fileExtension)
                 .redirectErrorStream(true);
 
-        int exitCode = executeFfmpegCommand(pb);
+        executeFfmpegCommand(pb);
+
+        List<SegmentInfo> segments = SegmentListParser.parse(Files.readAllLines(segmentList, StandardCharsets.UTF_8));
+        for (SegmentInfo segment : segments) {
+            segment.setSizeBytes(Files.size(targetDirectory.resolve(segment.getFileName())));
+        }
+        return segments;
+    }
+
+
+    public boolean canStreamCopy(String audioFilePath) {
+        return STREAM_COPY_FORMATS.contains(getFileExtension(audioFilePath));
+    }
+
+    public String getStreamFormat(String audioFilePath) {
+        return canStreamCopy(audioFilePath) ? getFileExtension(audioFilePath) : "mp3";
+    }
+
+    // Cuts one segment with input seeking and streams the encoder output from ffmpeg's stdout, nothing is written to disk.
+    // Bytes are read only as fast as the consumer requests them.
+    public Flux<DataBuffer> streamSegment(String audioFilePath, double startSeconds, double durationSeconds) {
+        List<String> command = new ArrayList<>(List.of(
+                ffmpegPath,
+                "-v", "error",
+                "-ss", String.format(Locale.ROOT, "%.3f", startSeconds),
+                "-t", String.format(Locale.ROOT, "%.3f", durationSeconds),
+                "-i", audioFilePath,
+                "-vn"
+        ));
+        if (canStreamCopy(audioFilePath)) {
+            command.addAll(List.of("-c:a", "copy"));
+        } else {
+            command.addAll(List.of("-acodec", "libmp3lame", "-b:a", "128k"));
+        }
+        command.addAll(List.of("-f", getStreamFormat(audioFilePath), "pipe:1"));
+
+        return Flux.using(
+                        ProcessLog::create,
+                        processLog -> Flux.using(
+                                () -> processLog.start(new ProcessBuilder(command)),
+                                process -> DataBufferUtils.readInputStream(process::getInputStream,
+                                                DefaultDataBufferFactory.sharedInstance, STREAM_BUFFER_SIZE)
+                                        .concatWith(Mono.fromCallable(() -> {
+                                            processLog.awaitSuccess(process, "ffmpeg");
+                                            return true;
+                                        }).then(Mono.empty())),
+                                Process::destroy),
+                        ProcessLog::close)
+                .subscribeOn(blockingScheduler);
+    }
+
 
+    // Runs silencedetect over the whole file and returns the silent spans as {start, end} pairs in seconds.
+    // A silence that runs to the end of the file is closed at durationSeconds.
+    public List<double[]> detectSilence(String audioFilePath, double durationSeconds, double noiseDb, double minSilenceSeconds)
+            throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder(
+                ffmpegPath,
+                "-hide_banner", "-nostats",
+                "-i", audioFilePath,
+                "-vn",
+                "-af", String.format(Locale.ROOT, "silencedetect=noise=%.1fdB:d=%.3f", noiseDb, minSilenceSeconds),
+                "-f", "null", "-")
+                .redirectErrorStream(true);
+        Process process = pb.start();
+
+        List<double[]> silences;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            silences = parseSilences(reader.lines(), durationSeconds);
+        }
+        int exitCode = process.waitFor();
         if (exitCode != 0) {
-            throw new IOException("ffmpeg exited with error code " + exitCode);
+            throw new MediaProcessingException("ffmpeg silencedetect exited with error code " + exitCode, exitCode);
         }
+        return silences;
     }
 
+    // Pairs the silence_start and silence_end lines of silencedetect; a silence still open at the end lasts to the end
+    static List<double[]> parseSilences(Stream<String> lines, double durationSeconds) {
+        List<double[]> silences = new ArrayList<>();
+        Double openStart = null;
+        for (String line : (Iterable<String>) lines::iterator) {
+            Matcher start = SILENCE_START.matcher(line);
+            if (start.find()) {
+                openStart = Math.max(0, Double.parseDouble(start.group(1)));
+                continue;
+            }
+            Matcher end = SILENCE_END.matcher(line);
+            if (end.find() && openStart != null) {
+                silences.add(new double[]{openStart, Double.parseDouble(end.group(1))});
+                openStart = null;
+            }
+        }
+        if (openStart != null && durationSeconds > openStart) {
+            silences.add(new double[]{openStart, durationSeconds});
+        }
+        return silences;
+    }
 
-    private int executeFfmpegCommand(ProcessBuilder processBuilder) throws IOException, InterruptedException {
-        Process process = processBuilder.start();
+    // Re-encodes only the given regions of the source, back to back, into an mp3 file
+    public void extractRegions(String sourceFilePath, List<SpeechRegion> regions, String outputFile)
+            throws IOException, InterruptedException {
+        String selection = regions.stream()
+                .map(r -> String.format(Locale.ROOT, "between(t,%.3f,%.3f)", r.getOriginalStartSeconds(), r.getOriginalEndSeconds()))
+                .collect(Collectors.joining("+"));
+        // The expression grows with the number of regions, so it is passed as a script instead of an argument
+        Path filterScript = Paths.get(outputFile + ".filter");
+        Files.writeString(filterScript, "aselect='" + selection + "',asetpts=N/SR/TB", StandardCharsets.UTF_8);
+        try {
+            ProcessBuilder pb = new ProcessBuilder(
+                    ffmpegPath,
+                    "-y",
+                    "-i", sourceFilePath,
+                    "-vn",
+                    "-filter_script:a", filterScript.toString(),
+                    "-acodec", "libmp3lame",
+                    "-b:a", "128k",
+                    outputFile)
+                    .redirectErrorStream(true);
+            executeFfmpegCommand(pb);
+        } finally {
+            Files.deleteIfExists(filterScript);
+        }
+    }
 
-        // Чтение вывода процесса в отдельном потоке
-        new Thread(() -> {
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    log.info(line); // Логируем вывод с указанием Task ID
-                }
-            } catch (IOException e) {
-                log.error("Error reading process output", e);
+
+    // Lays the audio of several files back to back into one mp3, each padded with silence and cut to exactly
+    // its slot, so the offsets of the slots hold in the result whatever the files' own durations turn out to be
+    public void concatenateClips(List<String> sourceFilePaths, List<Double> slotSeconds, String outputFile)
+            throws IOException, InterruptedException {
+        StringBuilder filter = new StringBuilder();
+        for (int i = 0; i < sourceFilePaths.size(); i++) {
+            filter.append(String.format(Locale.ROOT,
+                    "[%d:a:0]aresample=16000,aformat=sample_fmts=s16:channel_layouts=mono,apad,atrim=end=%.3f,asetpts=N/SR/TB[c%d];",
+                    i, slotSeconds.get(i), i));
+        }
+        for (int i = 0; i < sourceFilePaths.size(); i++) {
+            filter.append("[c").append(i).append(']');
+        }
+        filter.append("concat=n=").append(sourceFilePaths.size()).append(":v=0:a=1[out]");
+
+        Path filterScript = Paths.get(outputFile + ".filter");
+        Files.writeString(filterScript, filter, StandardCharsets.UTF_8);
+        try {
+            List<String> command = new ArrayList<>(List.of(ffmpegPath, "-y", "-v", "error"));
+            for (String sourceFilePath : sourceFilePaths) {
+                command.addAll(List.of("-i", sourceFilePath));
             }
-        }).start();
+            command.addAll(List.of(
+                    "-filter_complex_script", filterScript.toString(),
+                    "-map", "[out]",
+                    // Speech at 16 kHz mono, what the engine resamples to anyway
+                    "-acodec", "libmp3lame",
+                    "-b:a", "48k",
+                    outputFile));
+            runFfmpeg(command);
+        } finally {
+            Files.deleteIfExists(filterScript);
+        }
+    }
 
-        // Ожидание завершения процесса
-        int exitCode = process.waitFor();
-        log.info("Process exited with code: {}", exitCode);
-        return exitCode;
+    // Starts ffmpeg reading the upload from stdin and cutting its audio into mp3 segments as the data arrives.
+    // The caller writes the upload to the process's stdin and closes it at the end.
+    public Process startStreamingSegmenter(String targetDirectoryPath, int splitLengthInSeconds) throws IOException {
+        Path segmentList = Paths.get(targetDirectoryPath).resolve(SEGMENT_LIST_FILE);
+        Files.deleteIfExists(segmentList);
+
+        // The container is not known before probing, so the audio is always re-encoded
+        ProcessBuilder pb = new ProcessBuilder(
+                ffmpegPath,
+                "-y",
+                "-xerror", // A demuxing error must fail the run, otherwise ffmpeg exits with 0 and a partial segment list
+                "-i", "pipe:0",
+                "-vn",
+                "-acodec", "libmp3lame",
+                "-b:a", "128k",
+                "-f", "segment",
+                "-segment_time", String.valueOf(splitLengthInSeconds),
+                "-segment_list", segmentList.toString(),
+                "-segment_list_type", "csv",
+                targetDirectoryPath + "/output_part%03d.mp3")
+                .redirectErrorStream(true);
+
+        ProcessLog processLog = ProcessLog.create();
+        Process process;
+        try {
+            process = processLog.start(pb);
+        } catch (IOException e) {
+            processLog.close();
+            throw e;
+        }
+        process.onExit().thenAccept(exited -> {
+            if (exited.exitValue() != 0) {
+                log.warn("Streaming segmenter failed: {}", processLog.tail());
+            }
+            processLog.close();
+        });
+        return process;
+    }
+
+    // Emits each segment as soon as ffmpeg lists it as finished and completes when ffmpeg exits.
+    // If ffmpeg fails, the flux ends with an error and the segments of the failed run are not emitted.
+    public Flux<SegmentInfo> followSegmentList(String targetDirectoryPath, Process process) {
+        Path targetDirectory = Paths.get(targetDirectoryPath);
+        Path segmentList = targetDirectory.resolve(SEGMENT_LIST_FILE);
+
+        return Flux.defer(() -> {
+            int[] emitted = {0};
+            // The pause between polls is a timer, a blocking thread is only taken for the read itself
+            return Flux.interval(Duration.ZERO, Duration.ofMillis(SEGMENT_LIST_POLL_MILLIS))
+                    .onBackpressureDrop()
+                    .concatMap(tick -> Mono.fromCallable(() -> pollSegmentList(targetDirectory, segmentList, process, emitted))
+                            .subscribeOn(blockingScheduler), 1)
+                    .takeUntil(SegmentListPoll::exited)
+                    .concatMapIterable(SegmentListPoll::segments);
+        });
+    }
+
+    private record SegmentListPoll(List<SegmentInfo> segments, boolean exited) {
+    }
+
+    // Returns the segments listed since the last poll
+    private SegmentListPoll pollSegmentList(Path targetDirectory, Path segmentList, Process process, int[] emitted)
+            throws IOException {
+        boolean exited = !process.isAlive();
+        if (exited && process.exitValue() != 0) {
+            throw new MediaProcessingException("ffmpeg exited with error code " + process.exitValue(), process.exitValue());
+        }
+        List<SegmentInfo> segments = SegmentListParser.parse(readCompleteLines(segmentList));
+        List<SegmentInfo> listed = new ArrayList<>(segments.subList(emitted[0], segments.size()));
+        for (SegmentInfo segment : listed) {
+            segment.setSizeBytes(Files.size(targetDirectory.resolve(segment.getFileName())));
+        }
+        emitted[0] = segments.size();
+        if (exited) {
+            log.info("Streaming segmentation finished with {} segments", emitted[0]);
+        }
+        return new SegmentListPoll(listed, exited);
+    }
+
+    // A line that is still being written has no line break yet and is left for the next poll
+    private List<String> readCompleteLines(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        int end = content.lastIndexOf('\n');
+        return end < 0 ? List.of() : content.substring(0, end).lines().toList();
+    }
+
+
+    // The output goes to a log file, so the thread that waits here is the only one the command takes
+    private void executeFfmpegCommand(ProcessBuilder processBuilder) throws IOException, InterruptedException {
+        try (ProcessLog processLog = ProcessLog.create()) {
+            Process process = processLog.start(processBuilder);
+            try {
+                // Ожидание завершения процесса
+                processLog.awaitSuccess(process, "ffmpeg");
+                log.info("Process exited with code: 0");
+            } finally {
+                process.destroy();
+            }
+        }
     }
 
 }
@@ -0,0 +1,190 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.HedgingStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Issues a duplicate engine request once the original has been running longer than a percentile
+ * of recently observed request latencies, and keeps whichever response arrives first.
+ * Latencies are kept per second of audio and the delay is scaled by the length of the chunk at hand,
+ * so a long chunk is not hedged merely for taking longer than the short ones around it.
+ * The number of duplicates is bounded by a token budget that grows with every original request.
+ */
+@Service
+@Slf4j
+public class HedgingService {
+
+    private final JobMetricsService jobMetricsService;
+
+    @Value("${hedgingEnabled:false}")
+    private boolean hedgingEnabled;
+
+    @Value("${hedgingPercentile:0.95}")
+    private double hedgingPercentile;
+
+    @Value("${hedgingMinSamples:20}")
+    private int hedgingMinSamples;
+
+    // Share of requests that may be hedged, e.g. 0.1 allows one hedge per ten requests
+    @Value("${hedgingBudgetRatio:0.1}")
+    private double hedgingBudgetRatio;
+
+    @Value("${hedgingMaxBurst:5}")
+    private double hedgingMaxBurst;
+
+    // Milliseconds per second of audio
+    private final double[] latencyWindow;
+    private int latencyCount;
+    private int latencyPosition;
+    private double budgetTokens;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedgesIssued = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong hedgesSkippedForBudget = new AtomicLong();
+
+    @Autowired
+    public HedgingService(JobMetricsService jobMetricsService,
+                          @Value("${hedgingWindowSize:200}") int hedgingWindowSize) {
+        this.jobMetricsService = jobMetricsService;
+        this.latencyWindow = new double[hedgingWindowSize];
+    }
+
+    // Without a known audio length the request is neither timed nor hedged
+    public <T> Mono<T> withHedging(String taskId, double audioSeconds, Supplier<Mono<T>> request) {
+        return Mono.defer(() -> {
+            requests.incrementAndGet();
+            if (audioSeconds <= 0) {
+                return Mono.defer(request);
+            }
+            Mono<T> primary = timed(Mono.defer(request), audioSeconds);
+            Long hedgeDelay = hedgingEnabled ? addBudgetAndGetHedgeDelay(audioSeconds) : null;
+            if (hedgeDelay == null) {
+                return primary;
+            }
+
+            Race race = new Race();
+            Mono<Hedged<T>> hedge = Mono.delay(Duration.ofMillis(hedgeDelay))
+                    .flatMap(tick -> {
+                        if (!tryAcquireBudget()) {
+                            hedgesSkippedForBudget.incrementAndGet();
+                            return Mono.<Hedged<T>>never(); // Let the original request finish on its own
+                        }
+                        race.hedgeStarted();
+                        hedgesIssued.incrementAndGet();
+                        jobMetricsService.update(taskId, m -> m.setHedgedRequests(m.getHedgedRequests() + 1));
+                        log.info("Request for Task ID {} exceeded {} ms, issuing a hedged request", taskId, hedgeDelay);
+                        return timed(Mono.defer(request), audioSeconds)
+                                .map(value -> new Hedged<>(value, true))
+                                .onErrorResume(e -> {
+                                    log.warn("Hedged request for Task ID {} failed: {}", taskId, e.getMessage());
+                                    // Whichever request fails last fails the task, with the original's error
+                                    Throwable primaryError = race.hedgeFailed(e);
+                                    return primaryError != null ? Mono.error(primaryError) : Mono.never();
+                                });
+                    });
+
+            // The first value wins and the other request is cancelled; an error only ends the race
+            // when the other request is not running
+            return Mono.firstWithSignal(
+                            primary.map(value -> new Hedged<>(value, false))
+                                    .onErrorResume(e -> {
+                                        if (!race.primaryFailed(e)) {
+                                            return Mono.error(e);
+                                        }
+                                        log.warn("Request for Task ID {} failed, waiting for the hedged request: {}", taskId, e.getMessage());
+                                        return Mono.never();
+                                    }),
+                            hedge)
+                    .doOnNext(result -> {
+                        if (result.hedge()) {
+                            hedgesWon.incrementAndGet();
+                            jobMetricsService.update(taskId, m -> m.setHedgesWon(m.getHedgesWon() + 1));
+                            log.info("Hedged request won for Task ID {}", taskId);
+                        }
+                    })
+                    .map(Hedged::value);
+        });
+    }
+
+    public synchronized HedgingStats getStats() {
+        long issued = hedgesIssued.get();
+        return new HedgingStats(hedgingEnabled, requests.get(), issued, hedgesWon.get(),
+                hedgesSkippedForBudget.get(), issued == 0 ? 0 : (double) hedgesWon.get() / issued,
+                currentHedgeDelayPerAudioSecond(), budgetTokens);
+    }
+
+    private <T> Mono<T> timed(Mono<T> request, double audioSeconds) {
+        return request.elapsed()
+                .doOnNext(result -> recordLatency(result.getT1() / audioSeconds))
+                .map(Tuple2::getT2);
+    }
+
+    private synchronized void recordLatency(double millisPerAudioSecond) {
+        latencyWindow[latencyPosition] = millisPerAudioSecond;
+        latencyPosition = (latencyPosition + 1) % latencyWindow.length;
+        latencyCount = Math.min(latencyCount + 1, latencyWindow.length);
+    }
+
+    private synchronized Long addBudgetAndGetHedgeDelay(double audioSeconds) {
+        budgetTokens = Math.min(hedgingMaxBurst, budgetTokens + hedgingBudgetRatio);
+        Double perAudioSecond = currentHedgeDelayPerAudioSecond();
+        return perAudioSecond == null ? null : Math.round(perAudioSecond * audioSeconds);
+    }
+
+    private synchronized boolean tryAcquireBudget() {
+        if (budgetTokens < 1) {
+            return false;
+        }
+        budgetTokens -= 1;
+        return true;
+    }
+
+    private synchronized Double currentHedgeDelayPerAudioSecond() {
+        if (latencyCount < hedgingMinSamples) {
+            return null;
+        }
+        double[] sorted = Arrays.copyOf(latencyWindow, latencyCount);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(hedgingPercentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+    }
+
+    private record Hedged<T>(T value, boolean hedge) {
+    }
+
+    // Which of the two requests of one race are still running
+    private static final class Race {
+        private boolean hedgeRunning;
+        private Throwable primaryError;
+
+        synchronized void hedgeStarted() {
+            hedgeRunning = true;
+        }
+
+        // Whether the hedge is still running and so may yet answer
+        synchronized boolean primaryFailed(Throwable error) {
+            primaryError = error;
+            return hedgeRunning;
+        }
+
+        // The original's error if it has already failed, else null while it may yet answer
+        synchronized Throwable hedgeFailed(Throwable error) {
+            hedgeRunning = false;
+            if (primaryError != null) {
+                primaryError.addSuppressed(error);
+            }
+            return primaryError;
+        }
+    }
+}
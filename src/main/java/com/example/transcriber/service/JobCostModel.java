@@ -0,0 +1,166 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.CostModelStats;
+import com.example.transcriber.dto.ExtractionPlan;
+import com.example.transcriber.dto.JobEstimate;
+import com.example.transcriber.dto.MediaInfo;
+import com.example.transcriber.dto.RateSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Learned cost of the stages of a job: extraction seconds per media second by extraction mode and codec,
+ * and engine seconds per audio second by chunk length, each kept in a streaming histogram. Predicts a new
+ * job's duration from its probed media info and keeps the predicted completion of running jobs, which the
+ * page shows as an ETA, the dispatcher uses to order jobs and admission control sums into a backlog.
+ */
+@Service
+@Slf4j
+public class JobCostModel {
+
+    private static final int MIN_SAMPLES = 5;
+    private static final double HISTOGRAM_WEIGHT = 500;
+    private static final int[] CHUNK_BUCKETS = {30, 60, 120, 300, 600, 1200};
+    // Used until remuxes have been observed; copying a stream is mostly I/O
+    private static final double DEFAULT_REMUX_SECONDS_PER_MEDIA_SECOND = 0.002;
+    // Output bitrate of a re-encode and a fair guess for copied audio, used to plan chunks before extraction
+    private static final double ESTIMATE_BYTES_PER_SECOND = 128_000 / 8.0;
+
+    private final EngineThroughputModel engineThroughputModel;
+    private final ChunkSizePlanner chunkSizePlanner;
+    private final EngineDispatchService engineDispatchService;
+    private final JobMetricsService jobMetricsService;
+    private final WebSocketService webSocketService;
+
+    private final Map<String, StreamingHistogram> extractionRates = new ConcurrentHashMap<>();
+    private final Map<String, StreamingHistogram> engineRates = new ConcurrentHashMap<>();
+    // Epoch millis at which each running job is predicted to finish
+    private final Map<String, Long> predictedCompletions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public JobCostModel(EngineThroughputModel engineThroughputModel, ChunkSizePlanner chunkSizePlanner,
+                        EngineDispatchService engineDispatchService, JobMetricsService jobMetricsService,
+                        WebSocketService webSocketService) {
+        this.engineThroughputModel = engineThroughputModel;
+        this.chunkSizePlanner = chunkSizePlanner;
+        this.engineDispatchService = engineDispatchService;
+        this.jobMetricsService = jobMetricsService;
+        this.webSocketService = webSocketService;
+    }
+
+    // Only single-process runs, the rate is that of one encoder
+    public void observeExtraction(ExtractionPlan plan, double mediaSeconds, double elapsedSeconds) {
+        if (mediaSeconds <= 0 || plan.getMode() == ExtractionPlan.Mode.DIRECT) {
+            return;
+        }
+        histogram(extractionRates, extractionKey(plan)).add(elapsedSeconds / mediaSeconds);
+    }
+
+    public void observeEngine(double audioSeconds, double latencySeconds) {
+        if (audioSeconds <= 0) {
+            return;
+        }
+        histogram(engineRates, chunkBucket(audioSeconds)).add(latencySeconds / audioSeconds);
+    }
+
+    // The whole job right after probing: extraction with the planned mode, then chunked transcription
+    public JobEstimate estimateJob(MediaInfo mediaInfo, ExtractionPlan plan, int extractionProcesses) {
+        double duration = mediaInfo.getDurationSeconds();
+        double extractionSeconds = 0;
+        boolean learned = true;
+        if (plan.getMode() != ExtractionPlan.Mode.DIRECT) {
+            StreamingHistogram rates = extractionRates.get(extractionKey(plan));
+            if (rates != null && rates.getObservations() >= MIN_SAMPLES) {
+                extractionSeconds = rates.quantile(0.5) * duration;
+            } else {
+                learned = false;
+                extractionSeconds = plan.getMode() == ExtractionPlan.Mode.TRANSCODE
+                        ? jobMetricsService.estimateTranscodeSeconds(duration)
+                        : duration * DEFAULT_REMUX_SECONDS_PER_MEDIA_SECOND;
+            }
+            if (plan.getMode() == ExtractionPlan.Mode.TRANSCODE) {
+                extractionSeconds /= Math.max(1, extractionProcesses);
+            }
+        }
+        int segmentLength = chunkSizePlanner.planSegmentLength(duration, ESTIMATE_BYTES_PER_SECOND, freeSlots());
+        JobEstimate transcription = estimateTranscription(duration, segmentLength);
+        return new JobEstimate(extractionSeconds, transcription.getTranscriptionSeconds(), segmentLength,
+                transcription.getChunks(), learned && transcription.isLearned());
+    }
+
+    // Transcription of audio that is ready, with the segment length already planned
+    public JobEstimate estimateTranscription(double durationSeconds, int segmentLengthSeconds) {
+        if (durationSeconds <= 0) {
+            return new JobEstimate(0, 0, segmentLengthSeconds, 0, false);
+        }
+        double chunkSeconds = Math.min(segmentLengthSeconds, durationSeconds);
+        int chunks = (int) Math.ceil(durationSeconds / chunkSeconds);
+        int waves = (int) Math.ceil((double) chunks / freeSlots());
+
+        StreamingHistogram rates = engineRates.get(chunkBucket(chunkSeconds));
+        boolean learned = rates != null && rates.getObservations() >= MIN_SAMPLES;
+        double chunkLatency = learned
+                ? rates.quantile(0.5) * chunkSeconds
+                : engineThroughputModel.predictLatencySeconds(chunkSeconds);
+        return new JobEstimate(0, waves * chunkLatency, segmentLengthSeconds, chunks, learned);
+    }
+
+    // Remembers when the job should finish and pushes the remaining time to the page as "ETA: <seconds>"
+    public Mono<Void> publishEstimate(String taskId, String username, double remainingSeconds) {
+        predictedCompletions.put(taskId, System.currentTimeMillis() + Math.round(remainingSeconds * 1000));
+        jobMetricsService.update(taskId, m -> m.setPredictedSeconds(remainingSeconds));
+        log.info("Predicted {}s remaining for Task ID: {}", Math.round(remainingSeconds), taskId);
+        return webSocketService.sendMessage(username, taskId, "ETA: " + Math.round(remainingSeconds));
+    }
+
+    public void finishJob(String taskId) {
+        predictedCompletions.remove(taskId);
+    }
+
+    // Predicted seconds of work left in all running jobs; overdue jobs count as nearly done
+    public double getPredictedBacklogSeconds() {
+        long now = System.currentTimeMillis();
+        return predictedCompletions.values().stream()
+                .mapToDouble(completion -> Math.max(0, completion - now) / 1000.0)
+                .sum();
+    }
+
+    public CostModelStats getStats() {
+        return new CostModelStats(summarize(extractionRates), summarize(engineRates),
+                predictedCompletions.size(), getPredictedBacklogSeconds());
+    }
+
+    private int freeSlots() {
+        return Math.max(1, engineDispatchService.getFreeSlots());
+    }
+
+    private static String extractionKey(ExtractionPlan plan) {
+        return plan.getMode() + ":" + (plan.getAudioCodec() != null ? plan.getAudioCodec().toLowerCase() : "unknown");
+    }
+
+    private static String chunkBucket(double audioSeconds) {
+        for (int limit : CHUNK_BUCKETS) {
+            if (audioSeconds <= limit) {
+                return "<=" + limit + "s";
+            }
+        }
+        return ">" + CHUNK_BUCKETS[CHUNK_BUCKETS.length - 1] + "s";
+    }
+
+    private static StreamingHistogram histogram(Map<String, StreamingHistogram> histograms, String key) {
+        return histograms.computeIfAbsent(key, k -> new StreamingHistogram(HISTOGRAM_WEIGHT));
+    }
+
+    private static Map<String, RateSummary> summarize(Map<String, StreamingHistogram> histograms) {
+        Map<String, RateSummary> summaries = new TreeMap<>();
+        histograms.forEach((key, histogram) -> summaries.put(key,
+                new RateSummary(histogram.getObservations(), histogram.quantile(0.5), histogram.quantile(0.9))));
+        return summaries;
+    }
+}
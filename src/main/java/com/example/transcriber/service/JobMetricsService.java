@@ -0,0 +1,80 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.ExtractionPlan;
+import com.example.transcriber.dto.JobMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+@Service
+@Slf4j
+public class JobMetricsService {
+
+    // Initial guess for libmp3lame speed (~50x realtime), refined by every observed re-encode
+    private static final double DEFAULT_TRANSCODE_SECONDS_PER_MEDIA_SECOND = 0.02;
+    private static final double EWMA_ALPHA = 0.2;
+
+    // Metrics of the oldest tasks are dropped beyond this number
+    @Value("${jobMetricsMaxTasks:1000}")
+    private int jobMetricsMaxTasks;
+
+    private final Map<String, JobMetrics> metrics = new LinkedHashMap<>();
+    private volatile double transcodeSecondsPerMediaSecond = DEFAULT_TRANSCODE_SECONDS_PER_MEDIA_SECOND;
+
+    public synchronized Optional<JobMetrics> getMetrics(String taskId) {
+        return Optional.ofNullable(metrics.get(taskId));
+    }
+
+    public void update(String taskId, Consumer<JobMetrics> updater) {
+        JobMetrics jobMetrics;
+        synchronized (this) {
+            jobMetrics = metrics.get(taskId);
+            if (jobMetrics == null) {
+                jobMetrics = new JobMetrics(taskId);
+                metrics.put(taskId, jobMetrics);
+                if (metrics.size() > jobMetricsMaxTasks) {
+                    metrics.remove(metrics.keySet().iterator().next());
+                }
+            }
+        }
+        synchronized (jobMetrics) {
+            updater.accept(jobMetrics);
+        }
+    }
+
+    // The speed estimate is for a single encoder, so re-encodes split over several processes do not update it
+    public void recordExtraction(String taskId, ExtractionPlan plan, double mediaSeconds, double elapsedSeconds,
+                                 int processes) {
+        double saved = 0;
+        if (plan.getMode() == ExtractionPlan.Mode.TRANSCODE) {
+            if (mediaSeconds > 0 && processes == 1) {
+                double observed = elapsedSeconds / mediaSeconds;
+                transcodeSecondsPerMediaSecond = EWMA_ALPHA * observed + (1 - EWMA_ALPHA) * transcodeSecondsPerMediaSecond;
+            }
+        } else {
+            saved = Math.max(0, estimateTranscodeSeconds(mediaSeconds) - elapsedSeconds);
+        }
+
+        double secondsSaved = saved;
+        update(taskId, m -> {
+            m.setExtractionMode(plan.getMode());
+            m.setAudioCodec(plan.getAudioCodec());
+            m.setMediaDurationSeconds(mediaSeconds);
+            m.setExtractionSeconds(elapsedSeconds);
+            m.setExtractionProcesses(processes);
+            m.setExtractionSecondsSaved(secondsSaved);
+        });
+        log.info("Extraction for Task ID {}: mode={}, codec={}, processes={}, took {}s, saved ~{}s",
+                taskId, plan.getMode(), plan.getAudioCodec(), processes,
+                String.format("%.2f", elapsedSeconds), String.format("%.2f", secondsSaved));
+    }
+
+    public double estimateTranscodeSeconds(double mediaSeconds) {
+        return mediaSeconds * transcodeSecondsPerMediaSecond;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.exception.MediaProcessingException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A temporary file that takes the messages of an external process in place of a pipe. Nothing has to drain
+ * it, so the process cannot stall on a full pipe while the thread that started it waits for the exit, and no
+ * second thread is taken from the blocking pool to read alongside. The last messages go into the error when
+ * the process fails.
+ */
+final class ProcessLog implements Closeable {
+
+    private static final int TAIL_BYTES = 2048;
+
+    private final Path file;
+
+    private ProcessLog(Path file) {
+        this.file = file;
+    }
+
+    static ProcessLog create() throws IOException {
+        return new ProcessLog(Files.createTempFile("ffmpeg-", ".log"));
+    }
+
+    // Sends stderr to the log, and stdout too when the builder merges the two
+    Process start(ProcessBuilder processBuilder) throws IOException {
+        if (processBuilder.redirectErrorStream()) {
+            processBuilder.redirectOutput(file.toFile());
+        } else {
+            processBuilder.redirectError(file.toFile());
+        }
+        return processBuilder.start();
+    }
+
+    // Waits for the exit; a failed process is reported with the end of its log
+    void awaitSuccess(Process process, String name) throws IOException, InterruptedException {
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new MediaProcessingException(name + " exited with error code " + exitCode + ": " + tail(), exitCode);
+        }
+    }
+
+    String tail() {
+        try (RandomAccessFile log = new RandomAccessFile(file.toFile(), "r")) {
+            long start = Math.max(0, log.length() - TAIL_BYTES);
+            byte[] bytes = new byte[(int) (log.length() - start)];
+            log.seek(start);
+            log.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // A temporary file, the cleanup of the temp directory gets it later
+        }
+    }
+}
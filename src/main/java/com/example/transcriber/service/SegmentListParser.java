@@ -0,0 +1,69 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.SegmentInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the CSV segment list written by ffmpeg's segment muxer ({@code -segment_list_type csv}):
+ * one {@code filename,start,end} line per segment, in playback order. Filenames containing a comma
+ * or a quote are quoted, with inner quotes doubled.
+ */
+public final class SegmentListParser {
+
+    private SegmentListParser() {
+    }
+
+    // Segment indexes follow the line order; sizes are left at 0 for the caller to fill in
+    public static List<SegmentInfo> parse(List<String> lines) {
+        List<SegmentInfo> segments = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = splitCsvLine(line);
+            if (fields.size() != 3) {
+                throw new IllegalArgumentException("Malformed segment list line: " + line);
+            }
+            try {
+                segments.add(new SegmentInfo(segments.size(), fields.get(0),
+                        Double.parseDouble(fields.get(1)), Double.parseDouble(fields.get(2)), 0));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed segment times in line: " + line, e);
+            }
+        }
+        return segments;
+    }
+
+    private static List<String> splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote in segment list line: " + line);
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
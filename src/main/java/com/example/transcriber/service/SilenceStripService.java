@@ -0,0 +1,176 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.MediaInfo;
+import com.example.transcriber.dto.SpeechRegion;
+import com.example.transcriber.dto.TaskManifest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optional stage between extraction and transcription: cuts long silences out of the audio,
+ * so the engine is neither sent nor billed for them. The kept regions are stored in the manifest
+ * and map any timestamp of the stripped audio back to the original timeline.
+ */
+@Service
+@Slf4j
+public class SilenceStripService {
+
+    private final FileProcessingService fileProcessingService;
+    private final JobMetricsService jobMetricsService;
+    private final WebSocketService webSocketService;
+    private final StatusService statusService;
+    private final Scheduler blockingScheduler;
+
+    @Value("${silenceStripEnabled:false}")
+    private boolean silenceStripEnabled;
+
+    @Value("${silenceNoiseDb:-35}")
+    private double silenceNoiseDb;
+
+    // Only pauses at least this long are cut
+    @Value("${silenceMinSeconds:1.0}")
+    private double silenceMinSeconds;
+
+    // Kept on both sides of every speech region so that word onsets and endings are not clipped
+    @Value("${silencePaddingSeconds:0.25}")
+    private double silencePaddingSeconds;
+
+    // Below this share of removed audio the re-encode costs more than it saves
+    @Value("${silenceMinRemovedRatio:0.05}")
+    private double silenceMinRemovedRatio;
+
+    @Autowired
+    public SilenceStripService(FileProcessingService fileProcessingService, JobMetricsService jobMetricsService,
+                               WebSocketService webSocketService, StatusService statusService,
+                               Scheduler blockingScheduler) {
+        this.fileProcessingService = fileProcessingService;
+        this.jobMetricsService = jobMetricsService;
+        this.webSocketService = webSocketService;
+        this.statusService = statusService;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    // Returns the path of the audio to transcribe and records the remap table in the manifest.
+    // Any failure falls back to the unstripped audio, the stage is only an optimisation.
+    public Mono<String> stripSilence(String audioFilePath, TaskManifest manifest, String username) {
+        if (!silenceStripEnabled) {
+            return Mono.just(audioFilePath);
+        }
+        String taskId = manifest.getTaskId();
+
+        return Mono.when(
+                        webSocketService.sendMessage(username, taskId, "STATUS: Removing silence..."),
+                        statusService.updateTaskStatus(taskId, "Removing silence")
+                )
+                .then(Mono.fromCallable(() -> {
+                            MediaInfo mediaInfo = fileProcessingService.probeMedia(audioFilePath);
+                            double duration = mediaInfo.getDurationSeconds();
+                            if (duration <= 0) {
+                                return audioFilePath;
+                            }
+
+                            List<double[]> silences = fileProcessingService.detectSilence(audioFilePath, duration,
+                                    silenceNoiseDb, silenceMinSeconds);
+                            List<SpeechRegion> regions = planSpeechRegions(silences, duration, silencePaddingSeconds);
+                            double kept = keptSeconds(regions);
+                            double removed = duration - kept;
+
+                            if (regions.isEmpty() || removed < duration * silenceMinRemovedRatio) {
+                                log.info("Silence stripping skipped for Task ID: {} ({}s of {}s silent)", taskId,
+                                        String.format("%.1f", removed), String.format("%.1f", duration));
+                                return audioFilePath;
+                            }
+
+                            Path sourcePath = Paths.get(audioFilePath);
+                            String fileNameWithoutExt = sourcePath.getFileName().toString().replaceFirst("[.][^.]+$", "");
+                            String outputFile = sourcePath.getParent().resolve(fileNameWithoutExt + ".speech.mp3").toString();
+                            fileProcessingService.extractRegions(audioFilePath, regions, outputFile);
+
+                            manifest.setSpeechRegions(regions);
+                            jobMetricsService.update(taskId, m -> m.setSilenceSecondsRemoved(removed));
+                            log.info("Removed {}s of silence from {}s for Task ID: {} ({} speech regions)", String.format("%.1f", removed),
+                                    String.format("%.1f", duration), taskId, regions.size());
+                            return outputFile;
+                        })
+                        .subscribeOn(blockingScheduler))
+                .onErrorResume(e -> {
+                    log.warn("Silence stripping failed for Task ID: {}, transcribing the full audio", taskId, e);
+                    return Mono.just(audioFilePath);
+                });
+    }
+
+    // Turns the silent spans into padded, merged speech regions laid out back to back on the stripped timeline
+    public static List<SpeechRegion> planSpeechRegions(List<double[]> silences, double durationSeconds, double paddingSeconds) {
+        List<SpeechRegion> regions = new ArrayList<>();
+        double speechStart = 0;
+        for (double[] silence : silences) {
+            if (silence[0] > speechStart) {
+                addRegion(regions, speechStart - paddingSeconds, silence[0] + paddingSeconds, durationSeconds);
+            }
+            speechStart = silence[1];
+        }
+        // ffmpeg closes a trailing silence at the end of the stream, which can differ from the container duration by a few frames
+        if (durationSeconds - speechStart > paddingSeconds) {
+            addRegion(regions, speechStart - paddingSeconds, durationSeconds, durationSeconds);
+        }
+
+        double strippedStart = 0;
+        for (SpeechRegion region : regions) {
+            region.setStrippedStartSeconds(strippedStart);
+            strippedStart += region.getOriginalEndSeconds() - region.getOriginalStartSeconds();
+        }
+        return regions;
+    }
+
+    // Maps a position in the stripped audio to the original file; without a table the timelines are the same
+    public static double toOriginalSeconds(List<SpeechRegion> regions, double strippedSeconds) {
+        if (regions == null || regions.isEmpty()) {
+            return strippedSeconds;
+        }
+        int low = 0;
+        int high = regions.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (regions.get(mid).getStrippedStartSeconds() <= strippedSeconds) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        SpeechRegion region = regions.get(low);
+        double original = region.getOriginalStartSeconds() + Math.max(0, strippedSeconds - region.getStrippedStartSeconds());
+        return Math.min(original, region.getOriginalEndSeconds());
+    }
+
+    private static void addRegion(List<SpeechRegion> regions, double start, double end, double durationSeconds) {
+        start = Math.max(0, start);
+        end = Math.min(durationSeconds, end);
+        if (end <= start) {
+            return;
+        }
+        if (!regions.isEmpty()) {
+            SpeechRegion last = regions.get(regions.size() - 1);
+            if (start <= last.getOriginalEndSeconds()) {
+                // The padding closed a short pause, keep it as one region
+                last.setOriginalEndSeconds(Math.max(last.getOriginalEndSeconds(), end));
+                return;
+            }
+        }
+        regions.add(new SpeechRegion(start, end, 0));
+    }
+
+    private static double keptSeconds(List<SpeechRegion> regions) {
+        return regions.stream()
+                .mapToDouble(r -> r.getOriginalEndSeconds() - r.getOriginalStartSeconds())
+                .sum();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.transcriber.service;
+
+/**
+ * Fixed-size histogram of positive values with logarithmic buckets, each about 5% wide, so quantiles are
+ * accurate to a few percent whatever the scale. Old observations fade: once the total weight reaches
+ * maxWeight all counts are halved, which keeps the histogram following recent behaviour.
+ */
+public final class StreamingHistogram {
+
+    private static final double MIN_VALUE = 1e-5;
+    private static final double GROWTH = 1.05;
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+    private static final int BUCKETS = 520; // up to about 1e6
+
+    private final double[] counts = new double[BUCKETS];
+    private final double maxWeight;
+    private double totalWeight;
+    private long observations;
+
+    public StreamingHistogram(double maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    public synchronized void add(double value) {
+        if (!(value > 0) || Double.isInfinite(value)) {
+            return;
+        }
+        counts[bucket(value)]++;
+        totalWeight++;
+        observations++;
+        if (totalWeight >= maxWeight) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] /= 2;
+            }
+            totalWeight /= 2;
+        }
+    }
+
+    // Geometric middle of the bucket holding the quantile, NaN while empty
+    public synchronized double quantile(double q) {
+        if (totalWeight == 0) {
+            return Double.NaN;
+        }
+        double rank = q * totalWeight;
+        double seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return MIN_VALUE * Math.pow(GROWTH, i + 0.5);
+            }
+        }
+        return MIN_VALUE * Math.pow(GROWTH, BUCKETS - 0.5);
+    }
+
+    public synchronized long getObservations() {
+        return observations;
+    }
+
+    private static int bucket(double value) {
+        int index = (int) Math.floor(Math.log(value / MIN_VALUE) / LOG_GROWTH);
+        return Math.max(0, Math.min(BUCKETS - 1, index));
+    }
+}
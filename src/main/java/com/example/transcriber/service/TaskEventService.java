@@ -0,0 +1,103 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.TaskEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the last events of every task in a bounded ring buffer and numbers them with one global sequence.
+ * A subscriber passes the last id it has seen, gets the missed events replayed and then follows live ones,
+ * so a client that reconnects does not lose progress or the final download link.
+ */
+@Service
+@Slf4j
+public class TaskEventService {
+
+    @Value("${taskEventBufferSize:200}")
+    private int taskEventBufferSize;
+
+    // Logs of the oldest tasks are dropped beyond this number
+    @Value("${taskEventMaxTasks:1000}")
+    private int taskEventMaxTasks;
+
+    private final Map<String, ArrayDeque<TaskEvent>> logs = new LinkedHashMap<>();
+    private final Sinks.Many<TaskEvent> live = Sinks.many().multicast().directBestEffort();
+    // Seeded from the clock so that ids keep growing across restarts and an old cursor does not hide new events
+    private long sequence = System.currentTimeMillis() * 1000;
+
+    // Appending and emitting under one lock keeps the live stream in sequence order
+    public synchronized TaskEvent publish(String taskId, String username, String data) {
+        TaskEvent event = new TaskEvent(++sequence, taskId, username, data, System.currentTimeMillis());
+
+        ArrayDeque<TaskEvent> taskLog = logs.get(taskId);
+        if (taskLog == null) {
+            taskLog = new ArrayDeque<>();
+            logs.put(taskId, taskLog);
+            if (logs.size() > taskEventMaxTasks) {
+                logs.remove(logs.keySet().iterator().next());
+            }
+        }
+        if (taskLog.size() >= taskEventBufferSize) {
+            taskLog.removeFirst();
+        }
+        taskLog.addLast(event);
+
+        live.tryEmitNext(event);
+        log.debug("Task event {} for Task ID {}: {}", event.getId(), taskId, data);
+        return event;
+    }
+
+    public synchronized long getLastEventId() {
+        return sequence;
+    }
+
+    public Flux<TaskEvent> subscribeToTask(String taskId, long sinceId) {
+        return subscribe(event -> event.getTaskId().equals(taskId), sinceId);
+    }
+
+    public Flux<TaskEvent> subscribeToUser(String username, long sinceId) {
+        return subscribe(event -> event.getUsername().equals(username), sinceId);
+    }
+
+    private Flux<TaskEvent> subscribe(Predicate<TaskEvent> filter, long sinceId) {
+        return Flux.defer(() -> {
+            // Follow the live stream before taking the snapshot, so an event published in between is not lost;
+            // duplicates are skipped by id
+            Sinks.Many<TaskEvent> pending = Sinks.many().unicast().onBackpressureBuffer();
+            Disposable liveSubscription = live.asFlux()
+                    .filter(filter)
+                    .subscribe(pending::tryEmitNext);
+
+            List<TaskEvent> missed = snapshot(filter, sinceId);
+            long lastReplayed = missed.isEmpty() ? sinceId : missed.get(missed.size() - 1).getId();
+
+            return Flux.fromIterable(missed)
+                    .concatWith(pending.asFlux().filter(event -> event.getId() > lastReplayed))
+                    .doFinally(signal -> liveSubscription.dispose());
+        });
+    }
+
+    private synchronized List<TaskEvent> snapshot(Predicate<TaskEvent> filter, long sinceId) {
+        List<TaskEvent> missed = new ArrayList<>();
+        for (ArrayDeque<TaskEvent> taskLog : logs.values()) {
+            for (TaskEvent event : taskLog) {
+                if (event.getId() > sinceId && filter.test(event)) {
+                    missed.add(event);
+                }
+            }
+        }
+        missed.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+        return missed;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.config.TaskContextConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+@Slf4j
+public class TaskResumeService {
+
+    private final CheckpointService checkpointService;
+    private final TranscribingService transcribingService;
+    private final StatusService statusService;
+    private final TaskTimelineService taskTimelineService;
+    private final JobCostModel jobCostModel;
+
+    @Value("${resumeOnStartup:true}")
+    private boolean resumeOnStartup;
+
+    @Value("${resumeConcurrency:2}")
+    private int resumeConcurrency;
+
+    @Autowired
+    public TaskResumeService(CheckpointService checkpointService, TranscribingService transcribingService,
+                             StatusService statusService, TaskTimelineService taskTimelineService,
+                             JobCostModel jobCostModel) {
+        this.checkpointService = checkpointService;
+        this.transcribingService = transcribingService;
+        this.statusService = statusService;
+        this.taskTimelineService = taskTimelineService;
+        this.jobCostModel = jobCostModel;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedTasks() {
+        if (!resumeOnStartup) {
+            return;
+        }
+        checkpointService.findUnfinishedTasks()
+                .doOnNext(manifests -> log.info("Found {} unfinished tasks to resume", manifests.size()))
+                .flatMapMany(Flux::fromIterable)
+                // Batch runs resume their own files from the ledger
+                .filter(manifest -> !BatchTranscriptionService.BATCH_USERNAME.equals(manifest.getUsername()))
+                .flatMap(manifest -> taskTimelineService.span(manifest.getTaskId(), TaskTimelineService.TASK, "resume",
+                                        statusService.updateTaskStatus(manifest.getTaskId(), "Resuming")
+                                                .then(transcribingService.resumeTranscription(manifest)))
+                                .doOnSuccess(unused -> log.info("Resumed Task ID {} completed", manifest.getTaskId()))
+                                .doFinally(signal -> jobCostModel.finishJob(manifest.getTaskId()))
+                                .onErrorResume(e -> {
+                                    log.error("Failed to resume Task ID: {}", manifest.getTaskId(), e);
+                                    return Mono.empty();
+                                })
+                                .contextWrite(TaskContextConfig.taskContext(manifest.getTaskId())),
+                        resumeConcurrency)
+                .subscribe();
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.TaskTimeline;
+import com.example.transcriber.dto.TimelineSpan;
+import com.example.transcriber.dto.TraceEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records, per task, when each stage and each chunk request started and ended and how long it waited
+ * for an engine slot. Spans are kept in memory for the most recent tasks and can be exported in the
+ * Chrome trace event format.
+ */
+@Service
+@Slf4j
+public class TaskTimelineService {
+
+    public static final String TASK = "task";
+    public static final String STAGE = "stage";
+    public static final String CHUNK = "chunk";
+    public static final String ENGINE = "engine";
+    public static final String WAIT = "wait";
+
+    private static final List<String> CATEGORY_ORDER = List.of(TASK, STAGE, CHUNK, WAIT, ENGINE);
+
+    // Timelines of the oldest tasks are dropped beyond this number
+    @Value("${taskTimelineMaxTasks:200}")
+    private int taskTimelineMaxTasks;
+
+    @Value("${taskTimelineMaxSpans:5000}")
+    private int taskTimelineMaxSpans;
+
+    private final Map<String, Timeline> timelines = new LinkedHashMap<>();
+
+    // The span covers the subscription to the source until it emits its result, fails or is cancelled.
+    // The end is taken before the signal travels downstream, so the next stage does not appear to overlap.
+    public <T> Mono<T> span(String taskId, String category, String name, Mono<T> source) {
+        return Mono.defer(() -> {
+            SpanEnd end = start(taskId, category, name);
+            return source
+                    .doOnSuccess(value -> end.record(SignalType.ON_COMPLETE))
+                    .doOnError(e -> end.record(SignalType.ON_ERROR))
+                    .doOnCancel(() -> end.record(SignalType.CANCEL));
+        });
+    }
+
+    public <T> Flux<T> span(String taskId, String category, String name, Flux<T> source) {
+        return Flux.defer(() -> {
+            SpanEnd end = start(taskId, category, name);
+            return source
+                    .doOnComplete(() -> end.record(SignalType.ON_COMPLETE))
+                    .doOnError(e -> end.record(SignalType.ON_ERROR))
+                    .doOnCancel(() -> end.record(SignalType.CANCEL));
+        });
+    }
+
+    // For intervals measured by the caller, such as the time spent queued for an engine slot
+    public void record(String taskId, String category, String name, long startNanos, long endNanos) {
+        record(taskId, category, name, startNanos, endNanos, Thread.currentThread().getName(), SignalType.ON_COMPLETE);
+    }
+
+    public Optional<TaskTimeline> getTimeline(String taskId) {
+        Timeline timeline;
+        synchronized (this) {
+            timeline = timelines.get(taskId);
+        }
+        if (timeline == null) {
+            return Optional.empty();
+        }
+        synchronized (timeline) {
+            List<TimelineSpan> spans = new ArrayList<>(timeline.spans);
+            spans.sort(Comparator.comparingLong(TimelineSpan::getStartMicros));
+            return Optional.of(new TaskTimeline(taskId, timeline.startedAt, timeline.droppedSpans, spans));
+        }
+    }
+
+    // Every category gets its own lanes; overlapping spans, like concurrent chunks, go to separate lanes
+    public Optional<List<TraceEvent>> getChromeTrace(String taskId) {
+        return getTimeline(taskId).map(timeline -> {
+            List<TraceEvent> events = new ArrayList<>();
+            Map<String, List<Long>> laneEnds = new HashMap<>();
+            for (TimelineSpan span : timeline.getSpans()) {
+                List<Long> lanes = laneEnds.computeIfAbsent(span.getCategory(), category -> new ArrayList<>());
+                int lane = 0;
+                while (lane < lanes.size() && lanes.get(lane) > span.getStartMicros()) {
+                    lane++;
+                }
+                long end = span.getStartMicros() + span.getDurationMicros();
+                if (lane == lanes.size()) {
+                    lanes.add(end);
+                } else {
+                    lanes.set(lane, end);
+                }
+                Map<String, Object> args = new LinkedHashMap<>();
+                args.put("startThread", span.getStartThread());
+                args.put("endThread", span.getEndThread());
+                args.put("outcome", span.getOutcome());
+                events.add(new TraceEvent(span.getName(), span.getCategory(), "X", span.getStartMicros(),
+                        span.getDurationMicros(), 1, laneId(span.getCategory(), lane), args));
+            }
+
+            events.add(new TraceEvent("process_name", null, "M", null, null, 1, 0, Map.of("name", "Task " + taskId)));
+            laneEnds.forEach((category, lanes) -> {
+                for (int lane = 0; lane < lanes.size(); lane++) {
+                    int tid = laneId(category, lane);
+                    events.add(new TraceEvent("thread_name", null, "M", null, null, 1, tid,
+                            Map.of("name", lane == 0 ? category : category + " " + (lane + 1))));
+                    events.add(new TraceEvent("thread_sort_index", null, "M", null, null, 1, tid,
+                            Map.of("sort_index", tid)));
+                }
+            });
+            return events;
+        });
+    }
+
+    private int laneId(String category, int lane) {
+        int order = CATEGORY_ORDER.indexOf(category);
+        return (order < 0 ? CATEGORY_ORDER.size() : order) * 1000 + lane + 1;
+    }
+
+    private SpanEnd start(String taskId, String category, String name) {
+        timeline(taskId);
+        long startNanos = System.nanoTime();
+        String startThread = Thread.currentThread().getName();
+        AtomicBoolean ended = new AtomicBoolean();
+        return signal -> {
+            if (ended.compareAndSet(false, true)) {
+                record(taskId, category, name, startNanos, System.nanoTime(), startThread, signal);
+            }
+        };
+    }
+
+    private void record(String taskId, String category, String name, long startNanos, long endNanos,
+                        String startThread, SignalType signal) {
+        Timeline timeline = timeline(taskId);
+        TimelineSpan span = new TimelineSpan(category, name,
+                Math.max(0, (startNanos - timeline.originNanos) / 1000), (endNanos - startNanos) / 1000,
+                startThread, Thread.currentThread().getName(), signal.toString());
+        synchronized (timeline) {
+            if (timeline.spans.size() >= taskTimelineMaxSpans) {
+                timeline.droppedSpans++;
+                return;
+            }
+            timeline.spans.add(span);
+        }
+        log.debug("Span {} '{}' took {} ms ({})", category, name, span.getDurationMicros() / 1000, signal);
+    }
+
+    private synchronized Timeline timeline(String taskId) {
+        Timeline timeline = timelines.get(taskId);
+        if (timeline == null) {
+            timeline = new Timeline();
+            timelines.put(taskId, timeline);
+            if (timelines.size() > taskTimelineMaxTasks) {
+                timelines.remove(timelines.keySet().iterator().next());
+            }
+        }
+        return timeline;
+    }
+
+    private interface SpanEnd {
+        void record(SignalType signal);
+    }
+
+    private static final class Timeline {
+        private final long originNanos = System.nanoTime();
+        private final long startedAt = System.currentTimeMillis();
+        private final List<TimelineSpan> spans = new ArrayList<>();
+        private int droppedSpans;
+    }
+}
@@ -1,11 +1,20 @@
 package com.example.transcriber.service;
 
+import com.example.transcriber.dto.TaskManifest;
+import com.example.transcriber.dto.SegmentInfo;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
 @Service
 @Slf4j
@@ -16,51 +25,168 @@ public class TranscribingService {
     private final WebSocketService webSocketService;
     private final AudioToTextService audioToTextService;
     private final TranscriptionSaveService transcriptionSaveService;
+    private final CheckpointService checkpointService;
+    private final SilenceStripService silenceStripService;
+    private final UploadService uploadService;
+    private final TaskTimelineService taskTimelineService;
+    private final AudioFingerprintIndex audioFingerprintIndex;
+    private final Scheduler blockingScheduler;
 
+    @Value("${streamingIngestSegmentSeconds:300}")
+    private int streamingIngestSegmentSeconds;
 
     public TranscribingService(FileProcessingService fileProcessingService,
                                StatusService statusService,
                                AudioToTextService audioToTextService,
                                WebSocketService webSocketService,
-                               TranscriptionSaveService transcriptionSaveService) {
+                               TranscriptionSaveService transcriptionSaveService,
+                               CheckpointService checkpointService,
+                               SilenceStripService silenceStripService,
+                               UploadService uploadService,
+                               TaskTimelineService taskTimelineService,
+                               AudioFingerprintIndex audioFingerprintIndex,
+                               Scheduler blockingScheduler) {
         this.fileProcessingService = fileProcessingService;
         this.statusService = statusService;
         this.audioToTextService = audioToTextService;
         this.webSocketService = webSocketService;
         this.transcriptionSaveService = transcriptionSaveService;
+        this.checkpointService = checkpointService;
+        this.silenceStripService = silenceStripService;
+        this.uploadService = uploadService;
+        this.taskTimelineService = taskTimelineService;
+        this.audioFingerprintIndex = audioFingerprintIndex;
+        this.blockingScheduler = blockingScheduler;
     }
 
     public Mono<Void> createTranscriptionDoc(String targetPath, String taskId, String username) {
 
         Path targetPathObj = Paths.get(targetPath);
-        String originalFileName = targetPathObj.getFileName().toString();
         Path sourceDirectory = targetPathObj.getParent();
+        TaskManifest manifest = new TaskManifest(taskId, username, targetPath);
 
         // Asynchronous processing chain
-        return fileProcessingService.processFileForExtraction(targetPath, taskId, username)
-                .flatMap(sourceFilePath ->
-                        webSocketService.sendMessage(username, "STATUS: Transcribing...")
-                                .then(statusService.updateTaskStatus(taskId, "Transcribing"))
-                                .then(audioToTextService.convertSpeechToText(sourceFilePath, taskId, username))
-                )
+        return checkpointService.saveManifest(sourceDirectory, manifest)
+                .then(taskTimelineService.span(taskId, TaskTimelineService.STAGE, "extract audio",
+                        fileProcessingService.processFileForExtraction(targetPath, taskId, username)))
+                .flatMap(audioFilePath -> taskTimelineService.span(taskId, TaskTimelineService.STAGE, "strip silence",
+                        silenceStripService.stripSilence(audioFilePath, manifest, username)))
+                .flatMap(sourceFilePath -> {
+                    manifest.setAudioFilePath(sourceFilePath);
+                    return checkpointService.saveManifest(sourceDirectory, manifest)
+                            .then(transcribeAndSave(sourceFilePath, targetPathObj, taskId, username));
+                })
+                .onErrorResume(error -> {
+                    log.error("Error processing file for Task ID: {}", taskId, error);
+                    return checkpointService.markFailedIfPermanent(sourceDirectory, error)
+                            .onErrorResume(e -> Mono.empty())
+                            .then(Mono.error(new RuntimeException("Error processing file", error)));
+                })
+                // Отпечаток прикрепляется при извлечении аудио; если задача упала или отменена до распознавания, он бы остался
+                .doFinally(signal -> audioFingerprintIndex.detach(taskId));
+    }
+
+    // The upload is written to disk and at the same time piped into ffmpeg, which cuts it into segments as the bytes
+    // arrive, so the first segments are transcribed while the rest of the file is still being uploaded.
+    // Inputs ffmpeg cannot read from a pipe (e.g. mp4 with the index at the end) are processed from disk after the upload.
+    public Mono<Void> createTranscriptionDocStreaming(String fileName, Flux<DataBuffer> content, String taskId, String username) {
+        return uploadService.createTaskDirectory(username)
+                .flatMap(sourceDirectory -> Mono.fromCallable(() ->
+                                fileProcessingService.startStreamingSegmenter(sourceDirectory.toString(), streamingIngestSegmentSeconds))
+                        .subscribeOn(blockingScheduler)
+                        .flatMap(segmenter -> {
+                            // Only the last path element, the name comes from the client
+                            Path targetPathObj = sourceDirectory.resolve("file-" + Paths.get(fileName).getFileName());
+                            Mono<Void> upload = taskTimelineService.span(taskId, TaskTimelineService.STAGE, "upload",
+                                    uploadService.writeUpload(content, targetPathObj, segmenter.getOutputStream(), taskId, username));
+                            Mono<Optional<String>> transcription = webSocketService.sendMessage(username, taskId, "STATUS: Transcribing...")
+                                    .then(statusService.updateTaskStatus(taskId, "Transcribing"))
+                                    .then(taskTimelineService.span(taskId, TaskTimelineService.STAGE, "transcribe",
+                                            audioToTextService.transcribeSegments(
+                                                    followSegments(sourceDirectory, segmenter, new TaskManifest(taskId, username, targetPathObj.toString())),
+                                                    targetPathObj.toString(), sourceDirectory, taskId, username)))
+                                    .map(Optional::of)
+                                    .onErrorResume(e -> segmenterFailed(segmenter), e -> {
+                                        log.warn("ffmpeg could not read the upload of Task ID {} as a stream: {}", taskId, e.getMessage());
+                                        return Mono.just(Optional.empty());
+                                    });
+
+                            return Mono.zip(upload.thenReturn(targetPathObj), transcription)
+                                    .flatMap(tuple -> tuple.getT2().isPresent()
+                                            ? saveAndNotify(Mono.just(tuple.getT2().get()), targetPathObj, taskId, username)
+                                            : checkpointService.clearChunks(sourceDirectory)
+                                                    .then(createTranscriptionDoc(targetPathObj.toString(), taskId, username)))
+                                    .doFinally(signal -> segmenter.destroy());
+                        }))
+                .onErrorResume(error -> {
+                    log.error("Error processing streamed upload for Task ID: {}", taskId, error);
+                    return Mono.error(new RuntimeException("Error processing file", error));
+                });
+    }
+
+    // Records the segments in the manifest once the segmenter has finished, so a restart reuses them
+    private Flux<SegmentInfo> followSegments(Path sourceDirectory, Process segmenter, TaskManifest manifest) {
+        List<SegmentInfo> segments = new ArrayList<>();
+        return fileProcessingService.followSegmentList(sourceDirectory.toString(), segmenter)
+                .doOnNext(segments::add)
+                .concatWith(Mono.defer(() -> {
+                    manifest.setAudioFilePath(manifest.getSourceFilePath());
+                    manifest.setSegmentLengthSeconds(streamingIngestSegmentSeconds);
+                    manifest.setSegments(segments);
+                    return checkpointService.saveManifest(sourceDirectory, manifest);
+                }).then(Mono.empty()));
+    }
+
+    private boolean segmenterFailed(Process segmenter) {
+        return !segmenter.isAlive() && segmenter.exitValue() != 0;
+    }
+
+    // Continues a task found on disk after a restart, skipping the stages and chunks that already finished
+    public Mono<Void> resumeTranscription(TaskManifest manifest) {
+        String taskId = manifest.getTaskId();
+        String username = manifest.getUsername();
+        log.info("Resuming Task ID: {} ({} segments planned)", taskId, manifest.getSegments().size());
+
+        if (manifest.getAudioFilePath() == null) {
+            return createTranscriptionDoc(manifest.getSourceFilePath(), taskId, username);
+        }
+        return transcribeAndSave(manifest.getAudioFilePath(), Paths.get(manifest.getSourceFilePath()), taskId, username)
+                .onErrorResume(error -> {
+                    log.error("Error resuming Task ID: {}", taskId, error);
+                    return checkpointService.markFailedIfPermanent(Paths.get(manifest.getSourceFilePath()).getParent(), error)
+                            .onErrorResume(e -> Mono.empty())
+                            .then(Mono.error(new RuntimeException("Error resuming task", error)));
+                });
+    }
+
+    private Mono<Void> transcribeAndSave(String sourceFilePath, Path targetPathObj, String taskId, String username) {
+        return webSocketService.sendMessage(username, taskId, "STATUS: Transcribing...")
+                .then(statusService.updateTaskStatus(taskId, "Transcribing"))
+                .then(saveAndNotify(taskTimelineService.span(taskId, TaskTimelineService.STAGE, "transcribe",
+                                audioToTextService.convertSpeechToText(sourceFilePath, taskId, username)),
+                        targetPathObj, taskId, username));
+    }
+
+    private Mono<Void> saveAndNotify(Mono<String> transcriptionMono, Path targetPathObj, String taskId, String username) {
+        String originalFileName = targetPathObj.getFileName().toString();
+        Path sourceDirectory = targetPathObj.getParent();
+
+        return transcriptionMono
                 .flatMap(transcription ->
-                        webSocketService.sendMessage(username, "STATUS: Saving transcription...")
+                        webSocketService.sendMessage(username, taskId, "STATUS: Saving transcription...")
                                 .then(statusService.updateTaskStatus(taskId, "Saving transcription"))
-                                .then(transcriptionSaveService.saveTranscriptionToDoc(transcription, originalFileName, taskId, sourceDirectory))
+                                .then(taskTimelineService.span(taskId, TaskTimelineService.STAGE, "save",
+                                        transcriptionSaveService.saveTranscriptionToDoc(transcription, originalFileName, taskId, username, sourceDirectory)))
                 )
                 .flatMap(fileInfo -> {
                     // Создаем URL для скачивания
-                    String downloadUrl = String.format("/download-transcription/%s/%s/%s",
-                            sourceDirectory.getFileName().toString(), taskId, fileInfo);
+                    String downloadUrl = TranscriptionSaveService.downloadUrl(sourceDirectory, taskId, fileInfo);
 
                     // Отправляем сообщение с URL через WebSocket
-                    return webSocketService.sendMessage(username, "DOWNLOAD:" + downloadUrl);
+                    return checkpointService.markCompleted(sourceDirectory)
+                            .then(webSocketService.sendMessage(username, taskId, "DOWNLOAD:" + downloadUrl));
                 })
-                .then()
-                .onErrorResume(error -> {
-                    log.error("Error processing file for Task ID: {}", taskId, error);
-                    return Mono.error(new RuntimeException("Error processing file", error));
-                });
+                .then();
     }
 
 
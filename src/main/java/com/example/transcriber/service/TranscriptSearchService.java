@@ -0,0 +1,255 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.SearchHit;
+import com.example.transcriber.dto.SearchResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.*;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.LengthGoalBreakIterator;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.BreakIterator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Embedded Lucene index over saved transcripts, one document per task. Documents are added as transcripts
+ * are saved and become searchable within searchRefreshMillis through a near-real-time searcher; Lucene
+ * compresses the postings and merges segments on its own background threads. Commits are batched, so a crash
+ * loses at most the additions of the last searchCommitDelaySeconds. A task's document goes when cleanup
+ * deletes its directory, so no hit links to a transcript that is gone.
+ */
+@Service
+@Slf4j
+public class TranscriptSearchService {
+
+    private static final String FIELD_TASK_ID = "taskId";
+    private static final String FIELD_USERNAME = "username";
+    // Name of the task directory under tempDirPath, which holds the transcript
+    private static final String FIELD_DIRECTORY = "directory";
+    private static final String FIELD_FILE_NAME = "fileName";
+    private static final String FIELD_DOWNLOAD_URL = "downloadUrl";
+    private static final String FIELD_SAVED_AT = "savedAt";
+    private static final String FIELD_TEXT = "text";
+    private static final Set<String> HIT_FIELDS = Set.of(FIELD_TASK_ID, FIELD_USERNAME, FIELD_FILE_NAME,
+            FIELD_DOWNLOAD_URL, FIELD_SAVED_AT);
+
+    // Offsets in the postings let the highlighter build snippets without re-analyzing the whole transcript
+    private static final FieldType TEXT_WITH_OFFSETS;
+
+    static {
+        FieldType type = new FieldType(TextField.TYPE_STORED);
+        type.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        type.freeze();
+        TEXT_WITH_OFFSETS = type;
+    }
+
+    private final Scheduler blockingScheduler;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final AtomicBoolean commitScheduled = new AtomicBoolean();
+
+    @Value("${searchEnabled:true}")
+    private boolean searchEnabled;
+
+    @Value("${tempDirPath}")
+    private String tempDirPath;
+
+    // Must not be inside tempDirPath, whose subdirectories are expected to be task directories
+    @Value("${searchIndexPath:}")
+    private String searchIndexPath;
+
+    @Value("${searchCommitDelaySeconds:10}")
+    private int searchCommitDelaySeconds;
+
+    // How stale the searcher may get while transcripts are being added
+    @Value("${searchRefreshMillis:1000}")
+    private long searchRefreshMillis;
+
+    @Value("${searchSnippetLength:200}")
+    private int searchSnippetLength;
+
+    private Directory directory;
+    private IndexWriter indexWriter;
+    private SearcherManager searcherManager;
+    private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+    @Autowired
+    public TranscriptSearchService(Scheduler blockingScheduler) {
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    @PostConstruct
+    void openIndex() throws IOException {
+        if (!searchEnabled) {
+            return;
+        }
+        Path indexPath = searchIndexPath.isBlank()
+                ? Paths.get(tempDirPath).toAbsolutePath().resolveSibling(Paths.get(tempDirPath).getFileName() + "-index")
+                : Paths.get(searchIndexPath);
+        Files.createDirectories(indexPath);
+
+        directory = FSDirectory.open(indexPath);
+        IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        indexWriter = new IndexWriter(directory, config);
+        searcherManager = new SearcherManager(indexWriter, null);
+        // Reopening after every addition would flush a tiny segment each time, so the searcher is refreshed periodically
+        double refreshSeconds = searchRefreshMillis / 1000.0;
+        reopenThread = new ControlledRealTimeReopenThread<>(indexWriter, searcherManager, refreshSeconds, refreshSeconds);
+        reopenThread.setName("transcript-index-reopen");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+        log.info("Transcript index opened at {} with {} documents", indexPath, indexWriter.getDocStats().numDocs);
+    }
+
+    @PreDestroy
+    void closeIndex() throws IOException {
+        if (indexWriter == null) {
+            return;
+        }
+        reopenThread.close();
+        searcherManager.close();
+        indexWriter.close(); // commits pending additions
+        directory.close();
+    }
+
+    // Replaces the task's document, so saving the same task again after a resume does not duplicate it
+    public Mono<Void> indexTranscript(String taskId, String username, Path taskDirectory, String fileName,
+                                      String downloadUrl, String text) {
+        if (!searchEnabled) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> {
+                    Document document = new Document();
+                    document.add(new StringField(FIELD_TASK_ID, taskId, Field.Store.YES));
+                    document.add(new StringField(FIELD_USERNAME, username, Field.Store.YES));
+                    document.add(new StringField(FIELD_DIRECTORY, taskDirectory.getFileName().toString(), Field.Store.NO));
+                    document.add(new StoredField(FIELD_FILE_NAME, fileName));
+                    document.add(new StoredField(FIELD_DOWNLOAD_URL, downloadUrl));
+                    document.add(new StoredField(FIELD_SAVED_AT, System.currentTimeMillis()));
+                    document.add(new Field(FIELD_TEXT, text, TEXT_WITH_OFFSETS));
+                    try {
+                        indexWriter.updateDocument(new Term(FIELD_TASK_ID, taskId), document);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Error indexing transcript of Task ID: " + taskId, e);
+                    }
+                    scheduleCommit();
+                    log.debug("Indexed transcript of Task ID {} ({} chars)", taskId, text.length());
+                })
+                .subscribeOn(blockingScheduler)
+                .then();
+    }
+
+    // Before the directory itself is deleted, so a search never returns a link to a missing file
+    public Mono<Void> removeTaskDirectory(Path taskDirectory) {
+        if (!searchEnabled) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> {
+                    String directoryName = taskDirectory.getFileName().toString();
+                    try {
+                        indexWriter.deleteDocuments(new Term(FIELD_DIRECTORY, directoryName));
+                    } catch (IOException e) {
+                        throw new RuntimeException("Error removing transcripts of directory: " + directoryName, e);
+                    }
+                    scheduleCommit();
+                    log.debug("Removed transcripts of directory {} from the index", directoryName);
+                })
+                .subscribeOn(blockingScheduler)
+                .then();
+    }
+
+    // All words must match; "quoted phrases", prefix* and -exclusions are supported and never fail to parse
+    public Mono<SearchResult> search(String queryText, String username, int limit) {
+        if (!searchEnabled) {
+            return Mono.just(new SearchResult(queryText, 0, 0, List.of()));
+        }
+        return Mono.fromCallable(() -> {
+                    long startNanos = System.nanoTime();
+                    SimpleQueryParser parser = new SimpleQueryParser(analyzer, FIELD_TEXT);
+                    parser.setDefaultOperator(BooleanClause.Occur.MUST);
+                    Query query = parser.parse(queryText);
+                    if (username != null) {
+                        query = new BooleanQuery.Builder()
+                                .add(query, BooleanClause.Occur.MUST)
+                                .add(new TermQuery(new Term(FIELD_USERNAME, username)), BooleanClause.Occur.FILTER)
+                                .build();
+                    }
+
+                    IndexSearcher searcher = searcherManager.acquire();
+                    try {
+                        TopDocs topDocs = searcher.search(query, limit);
+                        UnifiedHighlighter highlighter = UnifiedHighlighter.builder(searcher, analyzer)
+                                .withFormatter(new DefaultPassageFormatter("<b>", "</b>", " … ", true))
+                                .withMaxLength(Integer.MAX_VALUE - 1)
+                                // Transcripts often lack sentence boundaries, so a passage is cut at word boundaries
+                                // to about the snippet length around the match
+                                .withBreakIterator(() -> LengthGoalBreakIterator.createClosestToLength(
+                                        BreakIterator.getWordInstance(Locale.ROOT), searchSnippetLength, 0.5f))
+                                .build();
+                        String[] snippets = highlighter.highlight(FIELD_TEXT, query, topDocs, 1);
+
+                        StoredFields storedFields = searcher.storedFields();
+                        List<SearchHit> hits = new ArrayList<>(topDocs.scoreDocs.length);
+                        for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+                            ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+                            Document document = storedFields.document(scoreDoc.doc, HIT_FIELDS);
+                            hits.add(new SearchHit(
+                                    document.get(FIELD_TASK_ID),
+                                    document.get(FIELD_USERNAME),
+                                    document.get(FIELD_FILE_NAME),
+                                    document.get(FIELD_DOWNLOAD_URL),
+                                    document.getField(FIELD_SAVED_AT).numericValue().longValue(),
+                                    scoreDoc.score,
+                                    snippets[i]));
+                        }
+                        long tookMillis = (System.nanoTime() - startNanos) / 1_000_000;
+                        log.info("Search '{}' matched {} transcripts in {} ms", queryText, topDocs.totalHits.value, tookMillis);
+                        return new SearchResult(queryText, topDocs.totalHits.value, tookMillis, hits);
+                    } finally {
+                        searcherManager.release(searcher);
+                    }
+                })
+                .subscribeOn(blockingScheduler);
+    }
+
+    // Several additions in a row share one commit (and one fsync)
+    private void scheduleCommit() {
+        if (!commitScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        Mono.delay(Duration.ofSeconds(searchCommitDelaySeconds))
+                .publishOn(blockingScheduler)
+                .subscribe(tick -> {
+                    commitScheduled.set(false);
+                    try {
+                        indexWriter.commit();
+                    } catch (IOException | AlreadyClosedException e) {
+                        log.error("Error committing transcript index", e);
+                    }
+                });
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.transcriber.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Joins the transcripts of overlapping chunks. The words spoken in the overlap appear at the end of one
+ * transcript and at the start of the next; the longest run of words the two share near the cut, compared
+ * without case and punctuation, marks the overlap. The run is split in the middle, so each side keeps the
+ * words furthest from its own cut, and the words around the cuts, often garbled, are dropped.
+ * Neighbours without such a run are joined as they are. Text without spaces between words is not aligned.
+ */
+public final class TranscriptStitcher {
+
+    // Faster than normal speech, so the searched window covers the whole overlap
+    private static final double MAX_WORDS_PER_SECOND = 4;
+    private static final int MIN_MATCH_WORDS = 2;
+
+    private TranscriptStitcher() {
+    }
+
+    public static String stitch(List<String> texts, double overlapSeconds) {
+        List<String> words = new ArrayList<>();
+        int window = (int) Math.ceil(overlapSeconds * MAX_WORDS_PER_SECOND) + MIN_MATCH_WORDS;
+        for (String text : texts) {
+            if (text.isBlank()) {
+                continue;
+            }
+            List<String> next = Arrays.asList(text.trim().split("\\s+"));
+            if (overlapSeconds <= 0 || words.isEmpty()) {
+                words.addAll(next);
+                continue;
+            }
+            int[] match = longestCommonRun(words.subList(Math.max(0, words.size() - window), words.size()), next, window);
+            if (match[2] < MIN_MATCH_WORDS) {
+                words.addAll(next);
+                continue;
+            }
+            int offset = Math.max(0, words.size() - window);
+            int keepFromPrevious = match[2] / 2;
+            // previous words up to the middle of the run, then the rest of the run and everything after it from the next text
+            words.subList(offset + match[0] + keepFromPrevious, words.size()).clear();
+            words.addAll(next.subList(match[1] + keepFromPrevious, next.size()));
+        }
+        return String.join(" ", words);
+    }
+
+    // {start in tail, start in head, length} of the longest run of equal words between the tail and the head's first words
+    private static int[] longestCommonRun(List<String> tail, List<String> head, int window) {
+        String[] a = normalize(tail);
+        String[] b = normalize(head.subList(0, Math.min(window, head.size())));
+        int[][] runs = new int[a.length + 1][b.length + 1];
+        int[] best = {0, 0, 0};
+        for (int i = 1; i <= a.length; i++) {
+            for (int j = 1; j <= b.length; j++) {
+                if (!a[i - 1].isEmpty() && a[i - 1].equals(b[j - 1])) {
+                    runs[i][j] = runs[i - 1][j - 1] + 1;
+                    if (runs[i][j] > best[2]) {
+                        best = new int[]{i - runs[i][j], j - runs[i][j], runs[i][j]};
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private static String[] normalize(List<String> words) {
+        String[] normalized = new String[words.size()];
+        for (int i = 0; i < words.size(); i++) {
+            normalized[i] = words.get(i).replaceAll("[^\\p{L}\\p{N}]", "").toLowerCase(Locale.ROOT);
+        }
+        return normalized;
+    }
+}
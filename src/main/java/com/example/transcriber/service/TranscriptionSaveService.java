@@ -4,7 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -17,13 +17,25 @@ import java.nio.file.StandardOpenOption;
 @RequiredArgsConstructor
 public class TranscriptionSaveService {
 
-    public Mono<String> saveTranscriptionToDoc(String transcription, String originalFileName, String taskId, Path sourceDirectory) {
+    private final Scheduler blockingScheduler;
+    private final TranscriptSearchService transcriptSearchService;
+
+    public static String downloadUrl(Path sourceDirectory, String taskId, String docFileName) {
+        return String.format("/download-transcription/%s/%s/%s",
+                sourceDirectory.getFileName().toString(), taskId, docFileName);
+    }
+
+    public static String docFileName(String originalFileName) {
+        return originalFileName.replaceFirst("[.][^.]+$", "") + "_transcription.doc";
+    }
+
+    public Mono<String> saveTranscriptionToDoc(String transcription, String originalFileName, String taskId,
+                                               String username, Path sourceDirectory) {
         log.info("Starting to save transcription document. Task ID: {}, Original file: {}", taskId, originalFileName);
 
         log.info("Text: {}", transcription);
 
-        String fileNameWithoutExt = originalFileName.replaceFirst("[.][^.]+$", "");
-        String docFileName = fileNameWithoutExt + "_transcription.doc";
+        String docFileName = docFileName(originalFileName);
         Path filePath = sourceDirectory.resolve(docFileName);
         log.info("Путь к файлу: {}", filePath);
         log.info("Имя файла: {}", docFileName);
@@ -32,8 +44,9 @@ public class TranscriptionSaveService {
                         () -> AsynchronousFileChannel.open(filePath, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING),
                         channel -> {
                             ByteBuffer buffer = ByteBuffer.wrap(transcription.getBytes());
-                            return Mono.fromCallable(() -> channel.write(buffer, 0))
-                                    .subscribeOn(Schedulers.boundedElastic())
+                            // Ждем завершения записи, иначе канал закрывается раньше и файл остается пустым
+                            return Mono.fromCallable(() -> channel.write(buffer, 0).get())
+                                    .subscribeOn(blockingScheduler)
                                     .doOnSuccess(bytesWritten -> log.debug("Successfully wrote {} bytes to file: {}", bytesWritten, filePath));
                         },
                         channel -> {
@@ -44,9 +57,16 @@ public class TranscriptionSaveService {
                             }
                         }
                 )
-                .subscribeOn(Schedulers.boundedElastic())
+                .subscribeOn(blockingScheduler)
                 .doOnSuccess(aVoid -> log.info("Successfully saved transcription document. Task ID: {}, File: {}", taskId, docFileName))
                 .doOnError(error -> log.error("Error saving transcription document for Task ID: {}: {}", taskId, error.getMessage()))
+                // Индексируем текст для поиска; ошибка индексации не должна ломать сохранение
+                .then(transcriptSearchService.indexTranscript(taskId, username, sourceDirectory, originalFileName,
+                                downloadUrl(sourceDirectory, taskId, docFileName), transcription)
+                        .onErrorResume(error -> {
+                            log.error("Error indexing transcription for Task ID: {}", taskId, error);
+                            return Mono.empty();
+                        }))
                 .thenReturn(docFileName);
     }
 }
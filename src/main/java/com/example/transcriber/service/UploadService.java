@@ -2,19 +2,29 @@ package com.example.transcriber.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 @Slf4j
@@ -22,29 +32,23 @@ public class UploadService {
     private final WebSocketService webSocketService;
     private final StatusService statusService;
     private final FileCleanupService fileCleanupService;
+    private final Scheduler blockingScheduler;
     @Value("${tempDirPath}")
     private String tempDirPath;
 
 
     public UploadService(WebSocketService webSocketService, StatusService statusService,
-                         FileCleanupService fileCleanupService) {
+                         FileCleanupService fileCleanupService, Scheduler blockingScheduler) {
         this.webSocketService = webSocketService;
         this.statusService = statusService;
         this.fileCleanupService = fileCleanupService;
+        this.blockingScheduler = blockingScheduler;
     }
 
     public Mono<String> saveUploadedFile(FilePart filePart, String username, String taskId) {
         log.info("Uploading file: {}", filePart.filename());
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-yyyy-HH-mm-ss"));
 
-        // Сначала запускаем очистку старых директорий (асинхронно)
-        return fileCleanupService.cleanupOldDirectories()
-                .doOnSuccess(unused -> log.info("Cleanup of old directories completed successfully"))
-                .onErrorResume(error -> {
-                    log.error("Error during cleanup of old directories", error);
-                    return Mono.error(new RuntimeException("Failed to clean up old directories", error));
-                })
-                .then(createTargetPathForUser(username, timestamp)) // Создаем новую директорию и сохраняем файл
+        return createTaskDirectory(username)
                 .flatMap(targetDirectory -> {
                     String originalFileName = filePart.filename(); // Получаем оригинальное имя файла
                     String prefixedFileName = "file-" + originalFileName; // Добавляем префикс "file-"
@@ -53,19 +57,84 @@ public class UploadService {
                     return DataBufferUtils.write(filePart.content(), targetPath)
                             .then(Mono.just(targetPath.toString()))
                             .doOnSuccess(path -> log.info("File upload completed for Task ID: {}", taskId))
-                            .onErrorResume(e -> {
-                                String errorMessage = "Error uploading file: " + filePart.filename();
-                                log.error(errorMessage, e);
-
-                                return Mono.when(
-                                                webSocketService.sendErrorMessage(username, "Error uploading file. Please try again."),
-                                                statusService.updateTaskStatus(taskId, "Error")
-                                        )
-                                        .then(Mono.error(new RuntimeException("Error uploading file", e)));
-                            });
+                            .onErrorResume(e -> uploadFailed(filePart.filename(), taskId, username, e));
                 });
     }
 
+    // Сначала запускаем очистку старых директорий, затем создаем директорию задачи
+    public Mono<Path> createTaskDirectory(String username) {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-yyyy-HH-mm-ss"));
+
+        return fileCleanupService.cleanupOldDirectories()
+                .doOnSuccess(unused -> log.info("Cleanup of old directories completed successfully"))
+                .onErrorResume(error -> {
+                    log.error("Error during cleanup of old directories", error);
+                    return Mono.error(new RuntimeException("Failed to clean up old directories", error));
+                })
+                .then(createTargetPathForUser(username, timestamp));
+    }
+
+    // Writes the upload to disk and feeds the same bytes to ffmpeg's stdin as they arrive.
+    // If ffmpeg stops reading, the file is still written completely, so it can be processed the usual way.
+    public Mono<Void> writeUpload(Flux<DataBuffer> content, Path targetPath, OutputStream tee,
+                                  String taskId, String username) {
+        AtomicBoolean teeOpen = new AtomicBoolean(true);
+        return Mono.using(
+                        () -> FileChannel.open(targetPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                StandardOpenOption.TRUNCATE_EXISTING),
+                        channel -> content
+                                .concatMap(buffer -> Mono.fromRunnable(() -> {
+                                            try {
+                                                byte[] bytes = new byte[buffer.readableByteCount()];
+                                                buffer.read(bytes);
+                                                ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+                                                while (byteBuffer.hasRemaining()) {
+                                                    channel.write(byteBuffer);
+                                                }
+                                                if (teeOpen.get()) {
+                                                    try {
+                                                        tee.write(bytes);
+                                                    } catch (IOException e) {
+                                                        log.warn("ffmpeg stopped reading the upload of Task ID: {}", taskId);
+                                                        teeOpen.set(false);
+                                                    }
+                                                }
+                                            } catch (IOException e) {
+                                                throw new UncheckedIOException(e);
+                                            } finally {
+                                                DataBufferUtils.release(buffer);
+                                            }
+                                        })
+                                        .subscribeOn(blockingScheduler))
+                                .then(),
+                        channel -> {
+                            closeQuietly(channel);
+                            closeQuietly(tee); // end of input for ffmpeg
+                        })
+                .doOnSuccess(unused -> log.info("File upload completed for Task ID: {}", taskId))
+                .onErrorResume(e -> uploadFailed(targetPath.getFileName().toString(), taskId, username, e))
+                .then();
+    }
+
+    private <T> Mono<T> uploadFailed(String fileName, String taskId, String username, Throwable e) {
+        String errorMessage = "Error uploading file: " + fileName;
+        log.error(errorMessage, e);
+
+        return Mono.when(
+                        webSocketService.sendErrorMessage(username, taskId, "Error uploading file. Please try again."),
+                        statusService.updateTaskStatus(taskId, "Error")
+                )
+                .then(Mono.error(new RuntimeException("Error uploading file", e)));
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.debug("Error closing {}", closeable, e);
+        }
+    }
+
     private Mono<Path> createTargetPathForUser(String username, String timestamp) {
         String directoryPathStr = tempDirPath + File.separator + username + "-" + timestamp;
         Path directoryPath = Paths.get(directoryPathStr);
@@ -74,7 +143,7 @@ public class UploadService {
             Files.createDirectories(directoryPath);
             log.debug("Directories created at: {}", directoryPath);
             return directoryPath;
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(blockingScheduler);
     }
 }
 
@@ -0,0 +1,34 @@
+package com.example.transcriber.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AotHintsConfigTest {
+
+    // A native image cannot bind a dto without reflection hints, so a new one has to be added to the list
+    @Test
+    void registersEveryDtoForBinding() throws IOException {
+        Set<String> dtos = new TreeSet<>();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources("classpath:com/example/transcriber/dto/*.class")) {
+            String fileName = resource.getFilename();
+            if (fileName != null && !fileName.contains("$")) {
+                dtos.add(fileName.substring(0, fileName.length() - ".class".length()));
+            }
+        }
+        Set<String> registered = Arrays.stream(AotHintsConfig.class.getAnnotation(RegisterReflectionForBinding.class).value())
+                .map(Class::getSimpleName)
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        assertEquals(dtos, registered);
+    }
+}
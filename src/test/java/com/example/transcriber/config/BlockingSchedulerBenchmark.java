@@ -0,0 +1,85 @@
+package com.example.transcriber.config;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares throughput and latency of the blocking scheduler modes with hundreds of concurrent small jobs,
+ * each doing a probe-like blocking wait and some file I/O. Not part of the regular test run:
+ * mvn test -Dtest=BlockingSchedulerBenchmark [-Pjava21] [-Dbenchmark.jobs=500] [-Dbenchmark.blockMillis=50]
+ */
+class BlockingSchedulerBenchmark {
+
+    private static final int JOBS = Integer.getInteger("benchmark.jobs", 500);
+    private static final int BLOCK_MILLIS = Integer.getInteger("benchmark.blockMillis", 50);
+
+    @Test
+    void compareSchedulerModes() throws Exception {
+        Path file = Files.createTempFile("benchmark", ".bin");
+        Files.write(file, new byte[64 * 1024]);
+        try {
+            System.out.printf("%d jobs, %d ms blocking per step, %d cores%n",
+                    JOBS, BLOCK_MILLIS, Runtime.getRuntime().availableProcessors());
+            for (String mode : List.of(SchedulerConfig.MODE_BOUNDED_ELASTIC, SchedulerConfig.MODE_VIRTUAL)) {
+                Scheduler scheduler = SchedulerConfig.createBlockingScheduler(mode);
+                if (SchedulerConfig.MODE_VIRTUAL.equals(mode) && scheduler == Schedulers.boundedElastic()) {
+                    System.out.println("virtual          skipped, run with -Pjava21 on a Java 21 JDK");
+                    continue;
+                }
+                run(mode, scheduler, file); // warm-up
+                run(mode, scheduler, file);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void run(String mode, Scheduler scheduler, Path file) {
+        long start = System.nanoTime();
+        long[] latencies = Flux.range(0, JOBS)
+                .flatMap(i -> job(scheduler, file), JOBS)
+                .collectList()
+                .block()
+                .stream()
+                .mapToLong(Long::longValue)
+                .sorted()
+                .toArray();
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-16s wall %6.2fs  throughput %7.1f jobs/s  p50 %6d ms  p99 %6d ms  max %6d ms%n",
+                mode, wallSeconds, JOBS / wallSeconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length - 1]);
+    }
+
+    // Three blocking steps per job, like probe -> extract -> size check
+    private Mono<Long> job(Scheduler scheduler, Path file) {
+        long submitted = System.nanoTime();
+        return Mono.fromCallable(() -> {
+                    Thread.sleep(BLOCK_MILLIS);
+                    return Files.size(file);
+                })
+                .subscribeOn(scheduler)
+                .flatMap(size -> Mono.fromCallable(() -> {
+                    Thread.sleep(BLOCK_MILLIS);
+                    return Files.readAllBytes(file).length;
+                }).subscribeOn(scheduler))
+                .flatMap(length -> Mono.fromCallable(() -> {
+                    Thread.sleep(BLOCK_MILLIS);
+                    return Files.exists(file);
+                }).subscribeOn(scheduler))
+                .map(unused -> (System.nanoTime() - submitted) / 1_000_000);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+    }
+}
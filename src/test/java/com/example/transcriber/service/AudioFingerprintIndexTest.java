@@ -0,0 +1,128 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.FingerprintMatch;
+import com.example.transcriber.dto.TranscribedRange;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AudioFingerprintIndexTest {
+
+    private static final int RATE = AudioFingerprinter.SAMPLE_RATE;
+
+    private final AudioFingerprintIndex index = new AudioFingerprintIndex();
+
+    AudioFingerprintIndexTest() {
+        ReflectionTestUtils.setField(index, "fingerprintDedupeEnabled", true);
+        ReflectionTestUtils.setField(index, "fingerprintMaxBitErrorRate", 0.35);
+        ReflectionTestUtils.setField(index, "fingerprintMinMatchSeconds", 20.0);
+        ReflectionTestUtils.setField(index, "fingerprintFullMatchRatio", 0.95);
+        ReflectionTestUtils.setField(index, "fingerprintIndexMaxHours", 1.0);
+    }
+
+    @Test
+    void noisyCopyReusesTheWholeTranscript() {
+        short[] recording = speechLike(120, 1);
+        index.attach("original", "alice", fingerprint(recording, 0, recording.length, 0));
+        index.register("original", "the transcript", chunks(120, 30), 0);
+
+        index.attach("copy", "alice", fingerprint(recording, 0, recording.length, 0.02));
+        FingerprintMatch match = index.lookup("copy").orElseThrow();
+
+        assertTrue(match.isFull());
+        assertEquals("original", match.getReferenceTaskId());
+        assertEquals("the transcript", match.getTranscript());
+    }
+
+    @Test
+    void trimmedCopyReusesTheChunksInsideTheMatchOnItsOwnTimeline() {
+        short[] recording = speechLike(150, 2);
+        index.attach("original", "alice", fingerprint(recording, 0, recording.length, 0));
+        index.register("original", "full", chunks(150, 30), 0);
+
+        // starts 40.01s into the original, off the frame grid, and ends 20s before its end
+        int from = (int) (40.01 * RATE);
+        index.attach("trimmed", "alice", fingerprint(recording, from, recording.length - 20 * RATE, 0.01));
+        FingerprintMatch match = index.lookup("trimmed").orElseThrow();
+
+        assertFalse(match.isFull());
+        assertEquals(40.01, match.getOffsetSeconds(), 0.1);
+        // chunks 60-90 and 90-120 lie inside, 30-60 starts before the copy and 120-150 ends after it
+        assertEquals(List.of("chunk 60", "chunk 90"), match.getReusedRanges().stream().map(TranscribedRange::getText).toList());
+        assertEquals(19.99, match.getReusedRanges().get(0).getStartSeconds(), 0.1);
+    }
+
+    @Test
+    void differentRecordingsDoNotMatch() {
+        short[] recording = speechLike(90, 3);
+        index.attach("original", "alice", fingerprint(recording, 0, recording.length, 0));
+        index.register("original", "full", chunks(90, 30), 0);
+
+        short[] other = speechLike(90, 4);
+        index.attach("other", "alice", fingerprint(other, 0, other.length, 0));
+
+        assertTrue(index.lookup("other").isEmpty());
+        assertEquals(1, index.getStats().getLookups());
+    }
+
+    @Test
+    void matchesOnlyWhatTheSameUserTranscribed() {
+        short[] recording = speechLike(90, 5);
+        index.attach("original", "alice", fingerprint(recording, 0, recording.length, 0));
+        index.register("original", "alice's transcript", chunks(90, 30), 0);
+
+        index.attach("bobs-copy", "bob", fingerprint(recording, 0, recording.length, 0));
+        index.attach("alices-copy", "alice", fingerprint(recording, 0, recording.length, 0));
+
+        assertTrue(index.lookup("bobs-copy").isEmpty());
+        assertEquals("alice's transcript", index.lookup("alices-copy").orElseThrow().getTranscript());
+    }
+
+    // Tones that jump every 100-300ms with a syllable-rate envelope, a stand-in for speech
+    private static short[] speechLike(int seconds, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[seconds * RATE];
+        double[] phases = new double[3];
+        double[] frequencies = new double[3];
+        int nextChange = 0;
+        for (int i = 0; i < samples.length; i++) {
+            if (i == nextChange) {
+                for (int k = 0; k < 3; k++) {
+                    frequencies[k] = 250 + 600 * k + random.nextDouble() * 600;
+                }
+                nextChange = i + (int) ((0.1 + random.nextDouble() * 0.2) * RATE);
+            }
+            double value = 0;
+            for (int k = 0; k < 3; k++) {
+                phases[k] += 2 * Math.PI * frequencies[k] / RATE;
+                value += Math.sin(phases[k]) * Math.abs(Math.sin(i * (2.0 + k) / RATE * Math.PI)) / 3;
+            }
+            samples[i] = (short) (value * 20000);
+        }
+        return samples;
+    }
+
+    private static int[] fingerprint(short[] samples, int from, int to, double noise) {
+        Random random = new Random(from);
+        AudioFingerprinter fingerprinter = new AudioFingerprinter();
+        for (int i = from; i < to; i++) {
+            fingerprinter.acceptSample((short) (samples[i] + noise * 32767 * (random.nextDouble() - 0.5)));
+        }
+        return fingerprinter.finish();
+    }
+
+    private static List<TranscribedRange> chunks(int seconds, int length) {
+        List<TranscribedRange> ranges = new ArrayList<>();
+        for (int start = 0; start < seconds; start += length) {
+            ranges.add(new TranscribedRange(start, Math.min(seconds, start + length), "chunk " + start));
+        }
+        return ranges;
+    }
+}
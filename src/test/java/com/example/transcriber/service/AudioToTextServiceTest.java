@@ -0,0 +1,40 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.SegmentInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AudioToTextServiceTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    void keepsOverlappingTimeSegmentsWithinThePlannedLength() {
+        for (double duration : new double[]{30, 600, 601, 1799.5, 3600, 7322.4}) {
+            List<SegmentInfo> segments = AudioToTextService.planTimeSegments(duration, 600, 15);
+
+            assertEquals(0, segments.get(0).getStartSeconds(), EPSILON);
+            assertEquals(duration, segments.get(segments.size() - 1).getEndSeconds(), EPSILON);
+            for (int i = 0; i < segments.size(); i++) {
+                SegmentInfo segment = segments.get(i);
+                assertEquals(i, segment.getIndex());
+                assertTrue(segment.getEndSeconds() - segment.getStartSeconds() <= 600 + EPSILON,
+                        "segment " + i + " of " + duration + "s lasts " + (segment.getEndSeconds() - segment.getStartSeconds()) + "s");
+                if (i > 0) {
+                    assertEquals(15, segments.get(i - 1).getEndSeconds() - segment.getStartSeconds(), EPSILON);
+                }
+            }
+        }
+    }
+
+    @Test
+    void addsASegmentRatherThanStretchingThemByTheOverlap() {
+        // 1200s fit into two 600s segments without an overlap, with one they need a third
+        assertEquals(2, AudioToTextService.planTimeSegments(1200, 600, 0).size());
+        assertEquals(3, AudioToTextService.planTimeSegments(1200, 600, 15).size());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.BatchLedgerEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BatchLedgerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysTheLastEntryOfEveryFile() throws Exception {
+        Path ledgerFile = directory.resolve("ledger.jsonl");
+        try (BatchLedger ledger = new BatchLedger(ledgerFile, objectMapper)) {
+            ledger.append(entry("a.mp3", BatchLedgerEntry.Status.IN_PROGRESS, "/tmp/batch-a"));
+            ledger.append(entry("b.mp3", BatchLedgerEntry.Status.IN_PROGRESS, "/tmp/batch-b"));
+            ledger.append(entry("a.mp3", BatchLedgerEntry.Status.DONE, null));
+        }
+
+        try (BatchLedger ledger = new BatchLedger(ledgerFile, objectMapper)) {
+            assertEquals(BatchLedgerEntry.Status.DONE, ledger.get("a.mp3").getStatus());
+            assertNull(ledger.get("a.mp3").getTaskDirectory());
+            assertEquals(BatchLedgerEntry.Status.IN_PROGRESS, ledger.get("b.mp3").getStatus());
+            assertEquals("/tmp/batch-b", ledger.get("b.mp3").getTaskDirectory());
+            assertNull(ledger.get("c.mp3"));
+        }
+    }
+
+    @Test
+    void ignoresATornLastLineAndAppendsAfterIt() throws Exception {
+        Path ledgerFile = directory.resolve("ledger.jsonl");
+        try (BatchLedger ledger = new BatchLedger(ledgerFile, objectMapper)) {
+            ledger.append(entry("a.mp3", BatchLedgerEntry.Status.DONE, null));
+        }
+        // A crash in the middle of the next entry
+        Files.writeString(ledgerFile, "{\"path\":\"b.mp3\",\"sta", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (BatchLedger ledger = new BatchLedger(ledgerFile, objectMapper)) {
+            assertEquals(BatchLedgerEntry.Status.DONE, ledger.get("a.mp3").getStatus());
+            assertNull(ledger.get("b.mp3"));
+            ledger.append(entry("b.mp3", BatchLedgerEntry.Status.FAILED, null));
+        }
+
+        List<String> lines = Files.readAllLines(ledgerFile, StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        try (BatchLedger ledger = new BatchLedger(ledgerFile, objectMapper)) {
+            assertEquals(BatchLedgerEntry.Status.DONE, ledger.get("a.mp3").getStatus());
+            assertEquals(BatchLedgerEntry.Status.FAILED, ledger.get("b.mp3").getStatus());
+        }
+    }
+
+    private static BatchLedgerEntry entry(String path, BatchLedgerEntry.Status status, String taskDirectory) {
+        BatchLedgerEntry entry = new BatchLedgerEntry();
+        entry.setPath(path);
+        entry.setStatus(status);
+        entry.setTaskDirectory(taskDirectory);
+        return entry;
+    }
+}
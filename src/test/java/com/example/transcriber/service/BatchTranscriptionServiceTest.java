@@ -0,0 +1,59 @@
+package com.example.transcriber.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchTranscriptionServiceTest {
+
+    private static final long SETTLE_MILLIS = 5000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void emitsAFileOnceItsSizeHasNotChangedForTheSettleTime() throws Exception {
+        Path file = Files.write(directory.resolve("a.mp3"), new byte[100]);
+        Map<Path, long[]> candidates = new HashMap<>();
+        // Reported by the watcher, its size not known yet
+        candidates.put(file, new long[]{-1, 1000});
+
+        assertTrue(BatchTranscriptionService.takeSettled(candidates, 1000, SETTLE_MILLIS).isEmpty());
+        assertTrue(BatchTranscriptionService.takeSettled(candidates, 5999, SETTLE_MILLIS).isEmpty());
+        assertEquals(List.of(file), BatchTranscriptionService.takeSettled(candidates, 6000, SETTLE_MILLIS));
+        assertTrue(candidates.isEmpty());
+    }
+
+    @Test
+    void restartsTheSettleTimeWhileTheFileGrows() throws Exception {
+        Path file = Files.write(directory.resolve("a.mp3"), new byte[100]);
+        Map<Path, long[]> candidates = new HashMap<>();
+        candidates.put(file, new long[]{100, 0});
+
+        // Still being copied in
+        Files.write(file, new byte[100], StandardOpenOption.APPEND);
+        assertTrue(BatchTranscriptionService.takeSettled(candidates, 4000, SETTLE_MILLIS).isEmpty());
+        assertTrue(BatchTranscriptionService.takeSettled(candidates, 8000, SETTLE_MILLIS).isEmpty());
+        assertEquals(List.of(file), BatchTranscriptionService.takeSettled(candidates, 9000, SETTLE_MILLIS));
+    }
+
+    @Test
+    void dropsAFileThatWasDeletedAgain() throws Exception {
+        Path file = Files.write(directory.resolve("a.mp3"), new byte[100]);
+        Map<Path, long[]> candidates = new HashMap<>();
+        candidates.put(file, new long[]{100, 0});
+        Files.delete(file);
+
+        assertTrue(BatchTranscriptionService.takeSettled(candidates, 10_000, SETTLE_MILLIS).isEmpty());
+        assertTrue(candidates.isEmpty());
+    }
+}
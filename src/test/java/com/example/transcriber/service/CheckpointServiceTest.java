@@ -0,0 +1,60 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.TaskManifest;
+import com.example.transcriber.exception.MediaProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointServiceTest {
+
+    @Test
+    void treatsRejectedInputAsPermanent() {
+        assertTrue(CheckpointService.isPermanentFailure(new RuntimeException("Error during audio extraction",
+                new MediaProcessingException("ffmpeg exited with error code 234", 234))));
+        assertTrue(CheckpointService.isPermanentFailure(
+                WebClientResponseException.create(400, "Bad Request", null, null, null)));
+        assertTrue(CheckpointService.isPermanentFailure(
+                new ResponseStatusException(HttpStatus.BAD_REQUEST, "The file does not contain an audio track")));
+    }
+
+    @Test
+    void keepsTasksInterruptedFromOutsideResumable() {
+        assertFalse(CheckpointService.isPermanentFailure(new MediaProcessingException("ffmpeg received a signal", 255)));
+        assertFalse(CheckpointService.isPermanentFailure(
+                WebClientResponseException.create(429, "Too Many Requests", null, null, null)));
+        assertFalse(CheckpointService.isPermanentFailure(
+                WebClientResponseException.create(503, "Service Unavailable", null, null, null)));
+        assertFalse(CheckpointService.isPermanentFailure(new WebClientRequestException(
+                new IOException("Connection prematurely closed"), HttpMethod.POST,
+                URI.create("http://engine"), new HttpHeaders())));
+        assertFalse(CheckpointService.isPermanentFailure(new RejectedExecutionException("Scheduler unavailable")));
+    }
+
+    @Test
+    void marksNothingFailedWhileTheServerStops(@TempDir Path taskDirectory) {
+        CheckpointService service = new CheckpointService(new ObjectMapper(), Schedulers.immediate());
+        service.saveManifest(taskDirectory, new TaskManifest("t1", "alice", "file.mp3")).block();
+
+        service.onShutdown();
+        service.markFailedIfPermanent(taskDirectory, new MediaProcessingException("ffmpeg exited with error code 1", 1))
+                .block();
+
+        assertFalse(service.loadManifest(taskDirectory).block().isFailed());
+    }
+}
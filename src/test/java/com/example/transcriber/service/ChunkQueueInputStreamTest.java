@@ -0,0 +1,85 @@
+package com.example.transcriber.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkQueueInputStreamTest {
+
+    @Test
+    void readsChunksWrittenByThreadsThatHaveEnded() throws Exception {
+        ChunkQueueInputStream in = new ChunkQueueInputStream(4);
+        // A piped stream fails with "Write end dead" here, as every writer thread is gone before the read
+        for (String part : new String[]{"first ", "second ", "third"}) {
+            Thread writer = new Thread(() -> write(in, part.getBytes(StandardCharsets.UTF_8)));
+            writer.start();
+            writer.join();
+        }
+        in.complete();
+
+        assertEquals("first second third", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void holdsTheWriterBackUntilTheReaderCatchesUp() throws Exception {
+        ChunkQueueInputStream in = new ChunkQueueInputStream(2);
+        byte[] expected = new byte[100 * 1024];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) i;
+        }
+        Thread writer = new Thread(() -> {
+            for (int offset = 0; offset < expected.length; offset += 1024) {
+                write(in, Arrays.copyOfRange(expected, offset, offset + 1024));
+            }
+            try {
+                in.complete();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+
+        assertArrayEquals(expected, in.readAllBytes());
+        writer.join();
+    }
+
+    @Test
+    void reportsAFailedUploadAfterTheDataBeforeIt() throws Exception {
+        ChunkQueueInputStream in = new ChunkQueueInputStream(4);
+        in.write("partial".getBytes(StandardCharsets.UTF_8));
+        in.fail(new IllegalStateException("Connection reset"));
+
+        byte[] head = new byte[7];
+        assertEquals(7, in.readNBytes(head, 0, head.length));
+        IOException error = assertThrows(IOException.class, in::read);
+        assertTrue(error.getMessage().contains("Connection reset"));
+    }
+
+    @Test
+    void dropsChunksOnceTheReaderHasClosed() throws Exception {
+        ChunkQueueInputStream in = new ChunkQueueInputStream(1);
+        in.write(new byte[]{1});
+        in.close();
+
+        // Neither call blocks on the full queue
+        in.write(new byte[]{2});
+        in.complete();
+        assertThrows(IOException.class, in::read);
+    }
+
+    private static void write(ChunkQueueInputStream in, byte[] chunk) {
+        try {
+            in.write(chunk);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
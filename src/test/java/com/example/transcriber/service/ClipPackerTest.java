@@ -0,0 +1,54 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.TranscribedRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ClipPackerTest {
+
+    @Test
+    void packsTheLongestClipsFirstIntoAsFewRequestsAsFit() {
+        double[] durations = {10, 50, 30, 5, 40};
+        // slots of 12, 52, 32, 7 and 42 seconds into requests of at most 100: 52 + 42, then 32 + 12 + 7
+        List<List<Integer>> packs = ClipPacker.pack(durations, 2, 100);
+
+        assertEquals(List.of(List.of(0, 2, 3), List.of(1, 4)), packs);
+    }
+
+    @Test
+    void splitsSegmentsBackByTheSlotHoldingTheirMiddle() {
+        double[] offsets = ClipPacker.slotOffsets(List.of(12.0, 7.0, 22.0));
+        assertArrayEquals(new double[]{0, 12, 19, 41}, offsets);
+
+        List<TranscribedRange> segments = List.of(
+                new TranscribedRange(0.2, 6, " Hello there."),
+                new TranscribedRange(6.1, 10.4, " How are you?"),
+                // runs a little into the next slot's gap, the middle is still in the first one
+                new TranscribedRange(19.1, 30, " Call me back."),
+                new TranscribedRange(30, 40.8, " Thanks. "));
+
+        assertEquals(List.of("Hello there. How are you?", "", "Call me back. Thanks."),
+                ClipPacker.split(segments, offsets, 2));
+    }
+
+    @Test
+    void leavesTheClipsOfASegmentRunningAcrossAGapToBeTranscribedAlone() {
+        // clips of 10, 5 and 20 seconds, each followed by 2 seconds of silence
+        double[] offsets = ClipPacker.slotOffsets(List.of(12.0, 7.0, 22.0));
+
+        List<TranscribedRange> segments = List.of(
+                new TranscribedRange(0.2, 6, " Hello there."),
+                // starts in the speech of the first clip and ends in the speech of the second
+                new TranscribedRange(7, 13.5, " How are you? Fine"),
+                new TranscribedRange(19.5, 30, " Call me back."),
+                // ends in the silence at the end of the third clip, which is not the next clip's speech
+                new TranscribedRange(30, 40.8, " Thanks. "));
+
+        assertEquals(Arrays.asList(null, null, "Call me back. Thanks."), ClipPacker.split(segments, offsets, 2));
+    }
+}
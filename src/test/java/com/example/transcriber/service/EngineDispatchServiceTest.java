@@ -0,0 +1,122 @@
+package com.example.transcriber.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineDispatchServiceTest {
+
+    @Test
+    void alternatesUsersAndRunsTheShortestJobOfAUserFirst() {
+        EngineDispatchService dispatch = dispatchService("standard:1", "");
+        dispatch.registerJob("long", 100);
+        dispatch.registerJob("short", 5);
+        dispatch.registerJob("bob", 10);
+        List<String> order = new ArrayList<>();
+
+        // The only slot is held until every request is queued
+        Sinks.One<String> gate = Sinks.one();
+        dispatch.dispatch("carol", "gate", gate::asMono).subscribe();
+        for (int i = 1; i <= 4; i++) {
+            record(dispatch, order, "alice", "long", "alice-long-" + i);
+        }
+        record(dispatch, order, "alice", "short", "alice-short");
+        record(dispatch, order, "bob", "bob", "bob-1");
+        record(dispatch, order, "bob", "bob", "bob-2");
+        assertEquals(7, dispatch.getQueued());
+
+        gate.tryEmitValue("done");
+
+        // Alice queued first and so goes first on equal passes, yet gets no more than her share while Bob waits
+        assertEquals(List.of("alice-short", "bob-1", "alice-long-1", "bob-2",
+                "alice-long-2", "alice-long-3", "alice-long-4"), order);
+        assertEquals(0, dispatch.getQueued());
+        assertEquals(0, dispatch.getInFlight());
+        assertTrue(dispatch.getUserWaitStats().isEmpty());
+    }
+
+    @Test
+    void servesUsersInProportionToTheirTierWeight() {
+        EngineDispatchService dispatch = dispatchService("standard:1,pro:2", "bob:pro");
+        List<String> order = new ArrayList<>();
+
+        Sinks.One<String> gate = Sinks.one();
+        dispatch.dispatch("carol", "gate", gate::asMono).subscribe();
+        for (int i = 1; i <= 3; i++) {
+            record(dispatch, order, "alice", "a", "alice-" + i);
+        }
+        for (int i = 1; i <= 4; i++) {
+            record(dispatch, order, "bob", "b", "bob-" + i);
+        }
+
+        gate.tryEmitValue("done");
+
+        assertEquals(List.of("alice-1", "bob-1", "bob-2", "alice-2", "bob-3", "bob-4", "alice-3"), order);
+    }
+
+    @Test
+    void dropsACancelledRequestFromTheQueue() {
+        EngineDispatchService dispatch = dispatchService("standard:1", "");
+        List<String> order = new ArrayList<>();
+
+        Sinks.One<String> gate = Sinks.one();
+        dispatch.dispatch("carol", "gate", gate::asMono).subscribe();
+        record(dispatch, order, "alice", "a", "alice-1");
+        Disposable cancelled = dispatch.dispatch("dave", "d", () -> Mono.fromCallable(() -> order.add("dave-1")))
+                .subscribe();
+        record(dispatch, order, "alice", "a", "alice-2");
+
+        cancelled.dispose();
+        assertEquals(2, dispatch.getQueued());
+        assertTrue(dispatch.getUserWaitStats().stream().noneMatch(stats -> stats.getUsername().equals("dave")));
+
+        gate.tryEmitValue("done");
+
+        assertEquals(List.of("alice-1", "alice-2"), order);
+        assertEquals(0, dispatch.getInFlight());
+    }
+
+    @Test
+    void runsTheRequestInTheCallersContext() {
+        EngineDispatchService dispatch = dispatchService("standard:1", "");
+
+        String taskId = dispatch.dispatch("alice", "a",
+                        () -> Mono.deferContextual(context -> Mono.just(context.<String>get("taskId"))))
+                .contextWrite(Context.of("taskId", "task-1"))
+                .block();
+
+        assertEquals("task-1", taskId);
+    }
+
+    @Test
+    void rejectsATierWeightThatIsNotPositive() {
+        IllegalStateException zero = assertThrows(IllegalStateException.class,
+                () -> dispatchService("standard:1,free:0", ""));
+        assertTrue(zero.getMessage().contains("free"));
+        assertThrows(IllegalStateException.class, () -> dispatchService("standard:-2", ""));
+    }
+
+    private static void record(EngineDispatchService dispatch, List<String> order, String username, String taskId,
+                               String name) {
+        dispatch.dispatch(username, taskId, () -> Mono.fromCallable(() -> order.add(name))).subscribe();
+    }
+
+    private static EngineDispatchService dispatchService(String tierWeights, String userTiers) {
+        EngineDispatchService dispatch = new EngineDispatchService();
+        ReflectionTestUtils.setField(dispatch, "engineMaxConcurrency", 1);
+        ReflectionTestUtils.setField(dispatch, "fairShareTierWeights", tierWeights);
+        ReflectionTestUtils.setField(dispatch, "fairShareUserTiers", userTiers);
+        dispatch.parseTiers();
+        return dispatch;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.EngineEndpointStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnginePoolServiceTest {
+
+    private final List<DisposableServer> servers = new ArrayList<>();
+    private final WebClient webClient = WebClient.create();
+
+    @AfterEach
+    void stopServers() {
+        servers.forEach(DisposableServer::disposeNow);
+    }
+
+    @Test
+    void routesMostRequestsToTheFasterEndpoint() {
+        AtomicInteger fastHits = new AtomicInteger();
+        AtomicInteger slowHits = new AtomicInteger();
+        String fast = engine(fastHits, Duration.ofMillis(10), new AtomicBoolean(false));
+        String slow = engine(slowHits, Duration.ofMillis(200), new AtomicBoolean(false));
+        EnginePoolService pool = pool(List.of(fast, slow), 30);
+
+        Flux.range(0, 40)
+                .flatMap(i -> pool.execute(1, this::post), 4)
+                .blockLast(Duration.ofSeconds(30));
+
+        assertTrue(fastHits.get() > slowHits.get() * 3, "fast " + fastHits + ", slow " + slowHits);
+    }
+
+    @Test
+    void ejectsAFailingEndpointAndProbesItBack() throws InterruptedException {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        AtomicInteger flakyHits = new AtomicInteger();
+        String flaky = engine(flakyHits, Duration.ZERO, failing);
+        String healthy = engine(new AtomicInteger(), Duration.ofMillis(5), new AtomicBoolean(false));
+        EnginePoolService pool = pool(List.of(flaky, healthy), 0.3);
+
+        // every request succeeds, the ones landing on the failing endpoint through failover
+        List<String> answers = Flux.range(0, 20)
+                .concatMap(i -> pool.execute(1, this::post))
+                .collectList()
+                .block(Duration.ofSeconds(30));
+        assertEquals(20, answers.size());
+        assertEquals("OPEN", stats(pool, flaky).getState());
+        int hitsWhileOpen = flakyHits.get();
+        pool.execute(1, this::post).block(Duration.ofSeconds(5));
+        assertEquals(hitsWhileOpen, flakyHits.get());
+
+        failing.set(false);
+        Thread.sleep(400);
+        pool.execute(1, this::post).block(Duration.ofSeconds(5));
+        assertEquals(hitsWhileOpen + 1, flakyHits.get());
+        assertEquals("CLOSED", stats(pool, flaky).getState());
+    }
+
+    @Test
+    void measuresTheLatencyPerSecondOfAudio() {
+        String slow = engine(new AtomicInteger(), Duration.ofMillis(300), new AtomicBoolean(false));
+        String fast = engine(new AtomicInteger(), Duration.ofMillis(100), new AtomicBoolean(false));
+        EnginePoolService pool = pool(List.of(slow, fast), 30, 1);
+
+        // One request each, the first endpoint gets the longer chunk; both take 10 ms per second of audio
+        Mono.when(pool.execute(30, this::post), pool.execute(10, this::post)).block(Duration.ofSeconds(5));
+
+        double slowLatency = stats(pool, slow).getLatencyEwmaMillisPerAudioSecond();
+        double fastLatency = stats(pool, fast).getLatencyEwmaMillisPerAudioSecond();
+        assertTrue(slowLatency < fastLatency * 2, "slow " + slowLatency + ", fast " + fastLatency);
+    }
+
+    @Test
+    void leavesTheLatencyAloneWithoutAnAudioLength() {
+        String url = engine(new AtomicInteger(), Duration.ZERO, new AtomicBoolean(false));
+        EnginePoolService pool = pool(List.of(url), 30);
+
+        pool.execute(0, this::post).block(Duration.ofSeconds(5));
+
+        assertEquals(1, stats(pool, url).getRequests());
+        assertNull(stats(pool, url).getLatencyEwmaMillisPerAudioSecond());
+    }
+
+    private Mono<String> post(EnginePoolService.Endpoint endpoint) {
+        return webClient.post()
+                .uri(endpoint.getUrl())
+                .retrieve()
+                .bodyToMono(String.class);
+    }
+
+    private String engine(AtomicInteger hits, Duration latency, AtomicBoolean failing) {
+        DisposableServer server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/transcriptions", (request, response) -> {
+                    hits.incrementAndGet();
+                    if (failing.get()) {
+                        return response.status(503).send();
+                    }
+                    return Mono.delay(latency).then(response.sendString(Mono.just("{\"text\":\"hello\"}")).then());
+                }))
+                .bindNow();
+        servers.add(server);
+        return "http://localhost:" + server.port() + "/transcriptions";
+    }
+
+    private static EnginePoolService pool(List<String> urls, double openSeconds) {
+        return pool(urls, openSeconds, 4);
+    }
+
+    private static EnginePoolService pool(List<String> urls, double openSeconds, int maxInFlight) {
+        EnginePoolService pool = new EnginePoolService();
+        ReflectionTestUtils.setField(pool, "engineEndpoints", urls);
+        ReflectionTestUtils.setField(pool, "engineApiKeys", List.of());
+        ReflectionTestUtils.setField(pool, "openAiApiKey", "test");
+        ReflectionTestUtils.setField(pool, "engineEndpointMaxInFlight", List.of(maxInFlight));
+        ReflectionTestUtils.setField(pool, "engineBreakerFailureThreshold", 3);
+        ReflectionTestUtils.setField(pool, "engineBreakerOpenSeconds", openSeconds);
+        ReflectionTestUtils.setField(pool, "engineFailoverAttempts", 1);
+        pool.initEndpoints();
+        return pool;
+    }
+
+    private static EngineEndpointStats stats(EnginePoolService pool, String url) {
+        return pool.getStats().stream().filter(s -> s.getUrl().equals(url)).findFirst().orElseThrow();
+    }
+}
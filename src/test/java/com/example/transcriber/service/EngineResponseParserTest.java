@@ -0,0 +1,68 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.TranscribedRange;
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EngineResponseParserTest {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Test
+    void readsTheTopLevelTextFromBuffersSplitAnywhere() {
+        String json = "{\"task\":\"transcribe\",\"segments\":[{\"id\":0,\"text\":\"not this\"}],"
+                + "\"text\":\"Привет, \\\"world\\\" – ok\",\"duration\":12.5}";
+        // every split point, including inside multi-byte characters and escapes
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        for (int size = 1; size <= 7; size++) {
+            assertEquals("Привет, \"world\" – ok", parse(chunks(bytes, size)));
+        }
+    }
+
+    @Test
+    void failsOnAResponseWithoutTextOrCutShort() {
+        assertThrows(RuntimeException.class, () -> parse(chunks("{\"error\":{\"text\":\"x\"}}".getBytes(StandardCharsets.UTF_8), 4)));
+        assertThrows(RuntimeException.class, () -> parse(chunks("{\"text\":\"partial\",\"segm".getBytes(StandardCharsets.UTF_8), 4)));
+    }
+
+    @Test
+    void readsTheSegmentsOfAVerboseResponse() {
+        String json = "{\"text\":\"one two\",\"segments\":[{\"id\":0,\"start\":0,\"end\":2.5,\"text\":\" one\",\"tokens\":[1,2]},"
+                + "{\"id\":1,\"start\":4.25,\"end\":6.0,\"text\":\" two\",\"avg_logprob\":-0.2}],\"language\":\"english\"}";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        for (int size = 1; size <= 5; size++) {
+            List<TranscribedRange> segments = EngineResponseParser.parseSegments(body(chunks(bytes, size)), jsonFactory).block();
+            assertEquals(List.of(new TranscribedRange(0, 2.5, " one"), new TranscribedRange(4.25, 6.0, " two")), segments);
+        }
+        // A plain response has no timing to split by
+        assertThrows(RuntimeException.class, () -> EngineResponseParser.parseSegments(
+                body(chunks("{\"text\":\"one two\"}".getBytes(StandardCharsets.UTF_8), 3)), jsonFactory).block());
+    }
+
+    private String parse(List<byte[]> parts) {
+        return EngineResponseParser.parseText(body(parts), jsonFactory).block();
+    }
+
+    private static Flux<DataBuffer> body(List<byte[]> parts) {
+        return Flux.fromIterable(parts).map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+
+    private static List<byte[]> chunks(byte[] bytes, int size) {
+        List<byte[]> parts = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += size) {
+            parts.add(Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + size)));
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.ExtractionPlan;
+import com.example.transcriber.dto.MediaInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExtractionPlannerTest {
+
+    @Test
+    void sendsAcceptedAudioFilesAsTheyAre() {
+        ExtractionPlanner planner = planner(true);
+
+        assertPlan(ExtractionPlan.Mode.DIRECT, "mp3", planner.plan("mp3", media("mp3")));
+        assertPlan(ExtractionPlan.Mode.DIRECT, "m4a", planner.plan("m4a", media("aac")));
+        // Already in the container its stream would be copied into
+        assertPlan(ExtractionPlan.Mode.DIRECT, "ogg", planner.plan("ogg", media("opus")));
+    }
+
+    @Test
+    void remuxesAnAcceptedCodecOutOfAVideoContainer() {
+        ExtractionPlanner planner = planner(true);
+
+        assertPlan(ExtractionPlan.Mode.REMUX, "m4a", planner.plan("mp4", media("aac")));
+        assertPlan(ExtractionPlan.Mode.REMUX, "ogg", planner.plan("mkv", media("Vorbis")));
+        assertPlan(ExtractionPlan.Mode.REMUX, "flac", planner.plan("mkv", media("flac")));
+    }
+
+    @Test
+    void transcodesOtherCodecsAndEverythingWhenRemuxIsDisabled() {
+        assertPlan(ExtractionPlan.Mode.TRANSCODE, "mp3", planner(true).plan("wav", media("pcm_s16le")));
+        assertPlan(ExtractionPlan.Mode.TRANSCODE, "mp3", planner(true).plan("mkv", media(null)));
+        assertPlan(ExtractionPlan.Mode.TRANSCODE, "mp3", planner(false).plan("mp4", media("aac")));
+        // A direct upload does not depend on remuxing
+        assertPlan(ExtractionPlan.Mode.DIRECT, "m4a", planner(false).plan("m4a", media("aac")));
+    }
+
+    private static void assertPlan(ExtractionPlan.Mode mode, String extension, ExtractionPlan plan) {
+        assertEquals(mode, plan.getMode());
+        assertEquals(extension, plan.getOutputExtension());
+    }
+
+    private static MediaInfo media(String audioCodec) {
+        return new MediaInfo("matroska", 60, 128_000, audioCodec, 44_100, 2);
+    }
+
+    private static ExtractionPlanner planner(boolean remuxEnabled) {
+        ExtractionPlanner planner = new ExtractionPlanner();
+        ReflectionTestUtils.setField(planner, "remuxEnabled", remuxEnabled);
+        return planner;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.transcriber.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileProcessingServiceTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    void parsesSilencesPrintedInExponentNotation() {
+        List<double[]> silences = FileProcessingService.parseSilences(Stream.of(
+                "Input #0, mp3, from 'speech.mp3':",
+                "[silencedetect @ 0x55d5c3a0] silence_start: 1.2e-05",
+                "[silencedetect @ 0x55d5c3a0] silence_end: 2.5 | silence_duration: 2.49999",
+                "[silencedetect @ 0x55d5c3a0] silence_start: -0.00133333",
+                "[silencedetect @ 0x55d5c3a0] silence_end: 1.04e+03 | silence_duration: 1.04e+03",
+                "[silencedetect @ 0x55d5c3a0] silence_start: 1200.5",
+                "size=N/A time=00:20:30.00 bitrate=N/A speed= 512x"), 1230);
+
+        assertEquals(3, silences.size());
+        assertArrayEquals(new double[]{0.000012, 2.5}, silences.get(0), EPSILON);
+        // A start just before zero is clamped
+        assertArrayEquals(new double[]{0, 1040}, silences.get(1), EPSILON);
+        // The silence running into the end of the file
+        assertArrayEquals(new double[]{1200.5, 1230}, silences.get(2), EPSILON);
+    }
+
+    @Test
+    void ignoresAnEndWithoutAStart() {
+        List<double[]> silences = FileProcessingService.parseSilences(Stream.of(
+                "[silencedetect @ 0x55d5c3a0] silence_end: 3 | silence_duration: 3",
+                "[silencedetect @ 0x55d5c3a0] silence_start: 10",
+                "[silencedetect @ 0x55d5c3a0] silence_end: 12 | silence_duration: 2"), 60);
+
+        assertEquals(1, silences.size());
+        assertArrayEquals(new double[]{10, 12}, silences.get(0), EPSILON);
+    }
+}
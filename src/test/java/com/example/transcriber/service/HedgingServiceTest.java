@@ -0,0 +1,93 @@
+package com.example.transcriber.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HedgingServiceTest {
+
+    private final HedgingService service = new HedgingService(new JobMetricsService(), 10);
+
+    HedgingServiceTest() {
+        ReflectionTestUtils.setField(service, "hedgingEnabled", true);
+        ReflectionTestUtils.setField(service, "hedgingPercentile", 0.95);
+        ReflectionTestUtils.setField(service, "hedgingMinSamples", 1);
+        ReflectionTestUtils.setField(service, "hedgingBudgetRatio", 1.0);
+        ReflectionTestUtils.setField(service, "hedgingMaxBurst", 5.0);
+    }
+
+    @Test
+    void scalesTheHedgeDelayWithTheLengthOfTheAudio() {
+        warmUp();
+
+        // 150 ms for 60 seconds is fast for its length, so no duplicate is sent
+        AtomicInteger calls = new AtomicInteger();
+        String result = service.withHedging("t1", 60,
+                () -> {
+                    calls.incrementAndGet();
+                    return Mono.delay(Duration.ofMillis(150)).thenReturn("long chunk");
+                })
+                .block();
+
+        assertEquals("long chunk", result);
+        assertEquals(1, calls.get());
+        assertEquals(0, service.getStats().getHedgesIssued());
+    }
+
+    @Test
+    void aFailedOriginalWaitsForTheRunningHedge() {
+        warmUp();
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = service.withHedging("t1", 1, () -> calls.incrementAndGet() == 1
+                        ? Mono.delay(Duration.ofMillis(100)).then(Mono.error(new IllegalStateException("engine reset")))
+                        : Mono.delay(Duration.ofMillis(200)).thenReturn("hedge"))
+                .block();
+
+        assertEquals("hedge", result);
+        assertEquals(1, service.getStats().getHedgesWon());
+    }
+
+    @Test
+    void failsWithTheOriginalsErrorWhenTheHedgeFailsToo() {
+        warmUp();
+        AtomicInteger calls = new AtomicInteger();
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> service.withHedging("t1", 1,
+                        () -> calls.incrementAndGet() == 1
+                                ? Mono.delay(Duration.ofMillis(100)).then(Mono.error(new IllegalStateException("original")))
+                                : Mono.delay(Duration.ofMillis(200)).then(Mono.error(new IllegalStateException("hedge"))))
+                .block());
+
+        assertEquals("original", error.getMessage());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void failsAtOnceWhenNoHedgeWasIssued() {
+        warmUp();
+        ReflectionTestUtils.setField(service, "hedgingBudgetRatio", 0.0);
+        ReflectionTestUtils.setField(service, "budgetTokens", 0.0);
+        AtomicInteger calls = new AtomicInteger();
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> service.withHedging("t1", 1, () -> {
+                    calls.incrementAndGet();
+                    return Mono.delay(Duration.ofMillis(100)).then(Mono.error(new IllegalStateException("original")));
+                })
+                .block(Duration.ofSeconds(5)));
+
+        assertEquals("original", error.getMessage());
+        assertEquals(1, calls.get());
+    }
+
+    // Hedges a one-second chunk after about 20 ms
+    private void warmUp() {
+        service.withHedging("t1", 1, () -> Mono.delay(Duration.ofMillis(20)).thenReturn("warm-up")).block();
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.transcriber.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobMetricsServiceTest {
+
+    @Test
+    void dropsTheOldestTasksBeyondTheLimit() {
+        JobMetricsService service = new JobMetricsService();
+        ReflectionTestUtils.setField(service, "jobMetricsMaxTasks", 2);
+
+        service.update("t1", m -> m.setHedgedRequests(1));
+        service.update("t2", m -> m.setHedgedRequests(2));
+        service.update("t1", m -> m.setHedgedRequests(3));
+        service.update("t3", m -> m.setHedgedRequests(4));
+
+        assertTrue(service.getMetrics("t1").isEmpty());
+        assertEquals(2, service.getMetrics("t2").orElseThrow().getHedgedRequests());
+        assertEquals(4, service.getMetrics("t3").orElseThrow().getHedgedRequests());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.transcriber.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Re-encodes a long generated source to mp3 with one ffmpeg process and with time ranges in parallel,
+ * and compares the wall time and the resulting durations. Not part of the regular test run:
+ * mvn test -Dtest=ParallelExtractionBenchmark [-Dbenchmark.minutes=60] [-Dbenchmark.processes=4]
+ * [-Dbenchmark.ffmpeg=/usr/bin/ffmpeg] [-Dbenchmark.ffprobe=/usr/bin/ffprobe]
+ */
+class ParallelExtractionBenchmark {
+
+    private static final int MINUTES = Integer.getInteger("benchmark.minutes", 60);
+    private static final int PROCESSES = Integer.getInteger("benchmark.processes", Runtime.getRuntime().availableProcessors());
+    private static final String FFMPEG = System.getProperty("benchmark.ffmpeg", "ffmpeg");
+    private static final String FFPROBE = System.getProperty("benchmark.ffprobe", "ffprobe");
+
+    @Test
+    void compareSequentialAndRanges() throws Exception {
+        Path directory = Files.createTempDirectory("extraction-benchmark");
+        try {
+            Path source = directory.resolve("source.mkv");
+            double durationSeconds = MINUTES * 60.0;
+            run(List.of(FFMPEG, "-v", "error", "-f", "lavfi", "-i",
+                    "anoisesrc=c=pink:r=44100:d=" + (int) durationSeconds,
+                    "-ac", "2", "-c:a", "aac", "-b:a", "128k", source.toString()));
+
+            FileProcessingService service = new FileProcessingService(null, null, null, null, null, null, null, Schedulers.boundedElastic());
+            ReflectionTestUtils.setField(service, "ffmpegPath", FFMPEG);
+
+            System.out.printf("%d min aac source, %d cores, %d processes%n",
+                    MINUTES, Runtime.getRuntime().availableProcessors(), PROCESSES);
+
+            Path sequential = directory.resolve("sequential.mp3");
+            long start = System.nanoTime();
+            run(List.of(FFMPEG, "-v", "error", "-y", "-i", source.toString(), "-vn",
+                    "-acodec", "libmp3lame", "-b:a", "128k", sequential.toString()));
+            double sequentialSeconds = (System.nanoTime() - start) / 1e9;
+
+            Path ranges = directory.resolve("ranges.mp3");
+            start = System.nanoTime();
+            service.transcodeInRanges(source.toString(), ranges.toString(), durationSeconds, PROCESSES);
+            double rangesSeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("1 process      wall %7.2fs  output %9.3fs%n", sequentialSeconds, probeDuration(sequential));
+            System.out.printf("%d processes    wall %7.2fs  output %9.3fs  speedup %.2fx%n",
+                    PROCESSES, rangesSeconds, probeDuration(ranges), sequentialSeconds / rangesSeconds);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static double probeDuration(Path file) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(FFPROBE, "-v", "error", "-show_entries", "format=duration",
+                "-of", "default=noprint_wrappers=1:nokey=1", file.toString()).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        process.waitFor();
+        return Double.parseDouble(output);
+    }
+
+    private static void run(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        if (process.waitFor() != 0) {
+            throw new IOException("Command failed: " + String.join(" ", command));
+        }
+    }
+}
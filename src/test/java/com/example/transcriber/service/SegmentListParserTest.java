@@ -0,0 +1,44 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.SegmentInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SegmentListParserTest {
+
+    @Test
+    void parsesSegmentsInLineOrder() {
+        List<SegmentInfo> segments = SegmentListParser.parse(List.of(
+                "output_part000.mp3,0.000000,25.025306",
+                "output_part001.mp3,25.025306,50.024490",
+                "output_part002.mp3,50.024490,60.029388",
+                ""));
+
+        assertEquals(3, segments.size());
+        assertEquals(0, segments.get(0).getIndex());
+        assertEquals("output_part001.mp3", segments.get(1).getFileName());
+        assertEquals(25.025306, segments.get(1).getStartSeconds(), 1e-9);
+        assertEquals(60.029388, segments.get(2).getEndSeconds(), 1e-9);
+        assertEquals(2, segments.get(2).getIndex());
+    }
+
+    @Test
+    void unquotesFileNames() {
+        List<SegmentInfo> segments = SegmentListParser.parse(List.of(
+                "\"part,2024 \"\"final\"\"000.m4a\",0.000000,30.000000"));
+
+        assertEquals("part,2024 \"final\"000.m4a", segments.get(0).getFileName());
+        assertEquals(30.0, segments.get(0).getEndSeconds(), 1e-9);
+    }
+
+    @Test
+    void rejectsMalformedLines() {
+        assertThrows(IllegalArgumentException.class, () -> SegmentListParser.parse(List.of("output_part000.mp3,0.0")));
+        assertThrows(IllegalArgumentException.class, () -> SegmentListParser.parse(List.of("output_part000.mp3,zero,1.0")));
+        assertThrows(IllegalArgumentException.class, () -> SegmentListParser.parse(List.of("\"output_part000.mp3,0.0,1.0")));
+    }
+}
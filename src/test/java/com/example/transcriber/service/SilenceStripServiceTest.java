@@ -0,0 +1,64 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.SpeechRegion;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SilenceStripServiceTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    void padsTheSpeechAroundEverySilenceAndLaysItOutBackToBack() {
+        List<SpeechRegion> regions = SilenceStripService.planSpeechRegions(
+                List.of(new double[]{10, 20}, new double[]{30, 45}), 60, 0.5);
+
+        assertEquals(3, regions.size());
+        assertRegion(regions.get(0), 0, 10.5, 0);
+        assertRegion(regions.get(1), 19.5, 30.5, 10.5);
+        assertRegion(regions.get(2), 44.5, 60, 21.5);
+    }
+
+    @Test
+    void mergesRegionsWhosePaddingClosesThePauseAndSkipsSilentEdges() {
+        List<SpeechRegion> regions = SilenceStripService.planSpeechRegions(
+                List.of(new double[]{0, 5}, new double[]{20, 20.6}, new double[]{50, 59.9}), 60, 0.5);
+
+        // The leading silence is cut, the short pause is kept and the tail is shorter than the padding
+        assertEquals(1, regions.size());
+        assertRegion(regions.get(0), 4.5, 50.5, 0);
+    }
+
+    @Test
+    void mapsStrippedTimesBackAcrossSeveralRegions() {
+        List<SpeechRegion> regions = SilenceStripService.planSpeechRegions(
+                List.of(new double[]{10, 20}, new double[]{30, 45}), 60, 0.5);
+
+        assertEquals(0, SilenceStripService.toOriginalSeconds(regions, 0), EPSILON);
+        assertEquals(5, SilenceStripService.toOriginalSeconds(regions, 5), EPSILON);
+        // Inside the padding before the first silence
+        assertEquals(10.25, SilenceStripService.toOriginalSeconds(regions, 10.25), EPSILON);
+        // A region boundary belongs to the region that starts there
+        assertEquals(19.5, SilenceStripService.toOriginalSeconds(regions, 10.5), EPSILON);
+        assertEquals(21, SilenceStripService.toOriginalSeconds(regions, 12), EPSILON);
+        assertEquals(44.5, SilenceStripService.toOriginalSeconds(regions, 21.5), EPSILON);
+        assertEquals(53, SilenceStripService.toOriginalSeconds(regions, 30), EPSILON);
+        // The encoder may make the stripped audio a little longer than the regions
+        assertEquals(60, SilenceStripService.toOriginalSeconds(regions, 37.2), EPSILON);
+    }
+
+    @Test
+    void keepsTheTimelineWithoutRegions() {
+        assertEquals(12.5, SilenceStripService.toOriginalSeconds(null, 12.5), EPSILON);
+        assertEquals(12.5, SilenceStripService.toOriginalSeconds(List.of(), 12.5), EPSILON);
+    }
+
+    private static void assertRegion(SpeechRegion region, double originalStart, double originalEnd, double strippedStart) {
+        assertEquals(originalStart, region.getOriginalStartSeconds(), EPSILON);
+        assertEquals(originalEnd, region.getOriginalEndSeconds(), EPSILON);
+        assertEquals(strippedStart, region.getStrippedStartSeconds(), EPSILON);
+    }
+}
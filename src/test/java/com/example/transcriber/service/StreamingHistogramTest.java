@@ -0,0 +1,46 @@
+package com.example.transcriber.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingHistogramTest {
+
+    @Test
+    void quantilesWithinBucketWidth() {
+        StreamingHistogram histogram = new StreamingHistogram(1_000_000);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.add(i / 1000.0);
+        }
+
+        assertEquals(0.5, histogram.quantile(0.5), 0.5 * 0.05);
+        assertEquals(0.9, histogram.quantile(0.9), 0.9 * 0.05);
+        assertEquals(1000, histogram.getObservations());
+    }
+
+    @Test
+    void emptyAndInvalidValues() {
+        StreamingHistogram histogram = new StreamingHistogram(100);
+        histogram.add(0);
+        histogram.add(-1);
+        histogram.add(Double.NaN);
+
+        assertTrue(Double.isNaN(histogram.quantile(0.5)));
+        assertEquals(0, histogram.getObservations());
+    }
+
+    @Test
+    void recentObservationsOutweighOldOnes() {
+        StreamingHistogram histogram = new StreamingHistogram(100);
+        for (int i = 0; i < 100; i++) {
+            histogram.add(1.0);
+        }
+        for (int i = 0; i < 80; i++) {
+            histogram.add(10.0);
+        }
+
+        // Without halving the median would still be 1.0
+        assertEquals(10.0, histogram.quantile(0.5), 10.0 * 0.05);
+    }
+}
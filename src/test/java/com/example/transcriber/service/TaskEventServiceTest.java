@@ -0,0 +1,49 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.TaskEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TaskEventServiceTest {
+
+    private final TaskEventService service = new TaskEventService();
+
+    TaskEventServiceTest() {
+        ReflectionTestUtils.setField(service, "taskEventBufferSize", 10);
+        ReflectionTestUtils.setField(service, "taskEventMaxTasks", 10);
+    }
+
+    @Test
+    void replaysWhatAReloadedPageMissed() {
+        // The page saw the first event, then reloaded while the task went on
+        long cursor = service.publish("t1", "alice", "STATUS: Extracting audio...").getId();
+        service.publish("t1", "alice", "STATUS: Transcribing...");
+        service.publish("t2", "bob", "STATUS: Transcribing...");
+        service.publish("t1", "alice", "DOWNLOAD: /download/t1");
+
+        List<String> replayed = service.subscribeToUser("alice", cursor)
+                .take(Duration.ofMillis(200))
+                .map(TaskEvent::getData)
+                .collectList()
+                .block();
+
+        assertEquals(List.of("STATUS: Transcribing...", "DOWNLOAD: /download/t1"), replayed);
+    }
+
+    @Test
+    void aNewNameSeesNoneOfTheEarlierEvents() {
+        long cursor = service.publish("t1", "alice", "STATUS: Extracting audio...").getId();
+        service.publish("t1", "alice", "DOWNLOAD: /download/t1");
+
+        // Why the page keeps its name across reloads: events are addressed to the name
+        assertEquals(0, service.subscribeToUser("someone-else", cursor)
+                .take(Duration.ofMillis(200))
+                .count()
+                .block());
+    }
+}
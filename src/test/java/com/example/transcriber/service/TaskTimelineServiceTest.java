@@ -0,0 +1,53 @@
+package com.example.transcriber.service;
+
+import com.example.transcriber.dto.TaskTimeline;
+import com.example.transcriber.dto.TraceEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaskTimelineServiceTest {
+
+    private final TaskTimelineService service = new TaskTimelineService();
+
+    TaskTimelineServiceTest() {
+        ReflectionTestUtils.setField(service, "taskTimelineMaxTasks", 10);
+        ReflectionTestUtils.setField(service, "taskTimelineMaxSpans", 100);
+    }
+
+    @Test
+    void sequentialStagesShareALaneAndConcurrentChunksDoNot() {
+        service.span("t1", TaskTimelineService.STAGE, "extract", Mono.delay(Duration.ofMillis(20)))
+                .then(service.span("t1", TaskTimelineService.STAGE, "split", Mono.delay(Duration.ofMillis(20))))
+                .then(Mono.when(
+                        service.span("t1", TaskTimelineService.CHUNK, "chunk 000", Mono.delay(Duration.ofMillis(50))),
+                        service.span("t1", TaskTimelineService.CHUNK, "chunk 001", Mono.delay(Duration.ofMillis(50)))))
+                .block();
+
+        TaskTimeline timeline = service.getTimeline("t1").orElseThrow();
+        assertEquals(4, timeline.getSpans().size());
+        assertTrue(timeline.getSpans().get(0).getDurationMicros() >= 20_000);
+
+        List<TraceEvent> spans = service.getChromeTrace("t1").orElseThrow().stream()
+                .filter(event -> "X".equals(event.getPh()))
+                .toList();
+        assertEquals(spans.get(0).getTid(), spans.get(1).getTid());
+        assertNotEquals(spans.get(2).getTid(), spans.get(3).getTid());
+    }
+
+    @Test
+    void recordsCancelledSpans() {
+        service.span("t2", TaskTimelineService.ENGINE, "request", Mono.never())
+                .timeout(Duration.ofMillis(10), Mono.empty())
+                .block();
+
+        assertEquals("cancel", service.getTimeline("t2").orElseThrow().getSpans().get(0).getOutcome());
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.transcriber.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TranscriptStitcherTest {
+
+    @Test
+    void dropsTheDuplicatedWords() {
+        String stitched = TranscriptStitcher.stitch(List.of(
+                "We met at the station and then we walked",
+                "and then we walked to the old harbour."), 3);
+
+        assertEquals("We met at the station and then we walked to the old harbour.", stitched);
+    }
+
+    @Test
+    void dropsWordsGarbledAtTheCuts() {
+        // The first chunk ends in the middle of "harbour", the second starts in the middle of "then"
+        String stitched = TranscriptStitcher.stitch(List.of(
+                "We met at the station and then we walked to the old har.",
+                "Hen we walked to the old harbour before noon."), 3);
+
+        assertEquals("We met at the station and then we walked to the old harbour before noon.", stitched);
+    }
+
+    @Test
+    void ignoresCaseAndPunctuationWhenAligning() {
+        String stitched = TranscriptStitcher.stitch(List.of(
+                "It was late, so the meeting ended.",
+                "So the meeting ended. Everyone went home."), 2);
+
+        assertEquals("It was late, so the meeting ended. Everyone went home.", stitched);
+    }
+
+    @Test
+    void joinsTextsWithoutSharedWords() {
+        assertEquals("first part second part", TranscriptStitcher.stitch(List.of("first part", "", "second part"), 3));
+        assertEquals("one two two three", TranscriptStitcher.stitch(List.of("one two", "two three"), 0));
+    }
+}